@@ -8,6 +8,7 @@ public class Actor
 {
     private String name;
     private String gender;
+    private boolean frozen; //true for the actors of an ActorRegistry, which cannot be changed
     
     /**
      * Constructor for objects of class Actor
@@ -30,12 +31,14 @@ public class Actor
     }
     
     /**
-     * setName() is a Setter for name
+     * setName() is a Setter for name. The actors of an ActorRegistry (for example the cast of a Movie) cannot be 
+     * changed; create a new Actor instead.
      *
      *@param    name    String name to be set
      */
     public void setName(String name)
     {
+        checkNotFrozen();
         this.name = name;
     }
     
@@ -50,14 +53,28 @@ public class Actor
     }
     
     /**
-     * setGender() is a Setter for gender
+     * setGender() is a Setter for gender. As with setName(), the actors of an ActorRegistry cannot be changed.
      *
      * @param   gender  String gender to be set
      */
     public void setGender(String gender)
     {
+        checkNotFrozen();
         this.gender = gender;
     }
+
+    /**
+     * Method freeze makes this actor impossible to change, once it is kept by an ActorRegistry
+     */
+    void freeze(){
+        frozen = true;
+    }
+
+    private void checkNotFrozen(){
+        if (frozen){
+            throw new IllegalStateException(name + " is kept by an ActorRegistry and cannot be changed");
+        }
+    }
     
     /**
      * Method toString() returns a string representation of the actor
@@ -0,0 +1,340 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * ActorIndex answers questions about actors, the other way round from Movie: which movies an actor is in (their
+ * filmography), with which types of role, and figures about those movies: how many there are, their mean and
+ * maximum feminist score and the fraction of leading roles.
+ *
+ * Actors are found by their id in the ActorRegistry of the movies (for the movies of a collection, the registry
+ * of its CatalogSnapshot), and the index has room for the highest id in the movies only. Each actor has a row of
+ * their own with the positions of their movies and the figures about them, calculated once, so the filmography of
+ * an actor is read in time proportional to its length. The index is built from a list of movies and does not follow
+ * later changes to them; update() makes a new index for a list where some movies were replaced or added. The rows
+ * are kept in chunks of CHUNK actors, and the new index shares the chunks of the actors whose movies did not
+ * change, so update() costs time proportional to the number of chunks and to the filmographies of the actors of
+ * the changed movies, not to the number of movies.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class ActorIndex
+{
+    public static final String LEAD_ROLE = Movie.LEADING; //type of role counted by getLeadShare()
+    private static final int CHUNK = 256; //actors in a chunk of rows
+    private static final Row EMPTY = new Row(new int[0], new String[0], null); //the row of an actor in no movie
+
+    private IntFunction<Movie> movieAt; //movieAt.apply(i) is the movie at position i of the list of the index
+    private Row[][] rows; //rows[id / CHUNK][id % CHUNK] is the row of actor id, null if they are in no movie
+    private boolean[] owned; //owned[c] is true if rows[c] is not shared with another index
+    private int actors; //highest id + 1
+
+    /**
+     * The movies of an actor and the figures about them
+     */
+    private static class Row
+    {
+        private int[] movies; //the positions of the movies of the actor, in order
+        private String[] types; //types[k] is the type of role of the actor in the movie at movies[k]
+        private double meanScore; //mean feminist score of the movies, NaN if there are none
+        private double maxScore; //maximum feminist score of the movies, NaN if there are none
+        private double leadShare; //fraction of LEAD_ROLE roles, NaN if there are none
+
+        /**
+         * Constructor for objects of class Row, which calculates the mean and highest feminist score and the share of
+         * leading roles of the actor
+         *
+         * @param movies the positions of the movies
+         * @param types the types of role
+         * @param movieAt gives the movie at a position
+         */
+        private Row(int[] movies, String[] types, IntFunction<Movie> movieAt)
+        {
+            this.movies = movies;
+            this.types = types;
+            double total = 0;
+            int scored = 0; //movies with a score (not NaN)
+            int leads = 0;
+            double max = Double.NaN;
+            for (int k = 0; k < movies.length; k++){
+                if (LEAD_ROLE.equals(types[k])){
+                    leads++;
+                }
+                double score = movieAt.apply(movies[k]).feministScore();
+                if (!Double.isNaN(score)){
+                    total += score;
+                    scored++;
+                    if (Double.isNaN(max) || score > max){
+                        max = score;
+                    }
+                }
+            }
+            meanScore = total / scored; //NaN if 0 / 0
+            maxScore = max;
+            leadShare = (double) leads / movies.length;
+        }
+    }
+
+    /**
+     * Constructor for objects of class ActorIndex
+     *
+     * @param movieList the movies, whose casts and feminist scores are read once
+     */
+    public ActorIndex(List<Movie> movieList)
+    {
+        Movie[] movies = movieList.toArray(new Movie[0]);
+        movieAt = i -> movies[i];
+        for (Movie m : movies){
+            for (int j = 0; j < m.getCastSize(); j++){
+                actors = Math.max(actors, m.getActorId(j) + 1);
+            }
+        }
+        int[] counts = new int[actors];
+        for (Movie m : movies){
+            for (int j = 0; j < m.getCastSize(); j++){
+                counts[m.getActorId(j)]++;
+            }
+        }
+        int[][] roleMovies = new int[actors][];
+        String[][] roleTypes = new String[actors][];
+        for (int id = 0; id < actors; id++){
+            roleMovies[id] = new int[counts[id]];
+            roleTypes[id] = new String[counts[id]];
+        }
+        int[] next = new int[actors]; //where the next movie of each actor goes
+        for (int i = 0; i < movies.length; i++){
+            Movie m = movies[i];
+            for (int j = 0; j < m.getCastSize(); j++){
+                int id = m.getActorId(j);
+                int k = next[id]++;
+                roleMovies[id][k] = i;
+                roleTypes[id][k] = m.getRoleType(j);
+            }
+        }
+        rows = new Row[(actors + CHUNK - 1) / CHUNK][];
+        owned = new boolean[rows.length];
+        for (int id = 0; id < actors; id++){
+            if (counts[id] > 0){
+                setRow(id, new Row(roleMovies[id], roleTypes[id], movieAt));
+            }
+        }
+    }
+
+    private ActorIndex()
+    {
+    }
+
+    /**
+     * Method setRow sets the row of an actor, after copying its chunk if it is shared with another index
+     *
+     * @param id the id of the actor
+     * @param row the row, or null if the actor is in no movie
+     */
+    private void setRow(int id, Row row){
+        int c = id / CHUNK;
+        if (rows[c] == null){
+            rows[c] = new Row[CHUNK];
+            owned[c] = true;
+        }
+        else if (!owned[c]){
+            rows[c] = rows[c].clone();
+            owned[c] = true;
+        }
+        rows[c][id % CHUNK] = row;
+    }
+
+    /**
+     * Method row returns the row of an actor the index knows, EMPTY if they are in no movie
+     */
+    private Row row(int id){
+        Row[] chunk = rows[id / CHUNK];
+        Row row = chunk == null ? null : chunk[id % CHUNK];
+        return row == null ? EMPTY : row;
+    }
+
+    /**
+     * Method update returns an index of a list of movies that is this index's list with some movies replaced by
+     * changed copies, at the same positions, and new movies added at the end (see CatalogSnapshot.updateIndexes()).
+     * Only the rows of the actors of the old and new casts of those movies are made again; the others are shared
+     * with this index, which does not change. The roles in the changed movies are found by sorting them by actor,
+     * so no array as long as the list of movies or the registry is needed.
+     *
+     * @param movieAt gives the movie at a position of the new list
+     * @param changed the positions of the replaced and added movies, sorted
+     * @param before before[c] is the movie that was at position changed[c], or null for an added movie
+     * @return the new index
+     */
+    ActorIndex update(IntFunction<Movie> movieAt, int[] changed, Movie[] before){
+        ActorIndex next = new ActorIndex();
+        next.movieAt = movieAt;
+        //the roles in the changed movies, numbered in the order of the positions, and the actors of the old casts
+        int numRoles = 0;
+        int numOldRoles = 0;
+        for (int c = 0; c < changed.length; c++){
+            numRoles += movieAt.apply(changed[c]).getCastSize();
+            numOldRoles += before[c] == null ? 0 : before[c].getCastSize();
+        }
+        long[] keys = new long[numRoles]; //id of the actor in the high half, number of the role in the low half
+        int[] rolePositions = new int[numRoles];
+        String[] roleTypes = new String[numRoles];
+        int[] affected = new int[numRoles + numOldRoles]; //ids of the actors whose rows are made again
+        int role = 0;
+        int numAffected = 0;
+        for (int c = 0; c < changed.length; c++){
+            Movie m = movieAt.apply(changed[c]);
+            for (int j = 0; j < m.getCastSize(); j++){
+                keys[role] = ((long) m.getActorId(j) << 32) | role;
+                rolePositions[role] = changed[c];
+                roleTypes[role++] = m.getRoleType(j);
+                affected[numAffected++] = m.getActorId(j);
+            }
+            for (int j = 0; before[c] != null && j < before[c].getCastSize(); j++){
+                affected[numAffected++] = before[c].getActorId(j);
+            }
+        }
+        Arrays.sort(keys);
+        Arrays.sort(affected);
+        next.actors = Math.max(actors, numAffected == 0 ? 0 : affected[numAffected - 1] + 1);
+        next.rows = Arrays.copyOf(rows, (next.actors + CHUNK - 1) / CHUNK);
+        next.owned = new boolean[next.rows.length];
+        int k = 0; //the roles of the actor in keys
+        for (int a = 0; a < numAffected; a++){
+            int id = affected[a];
+            if (a > 0 && affected[a - 1] == id){
+                continue;
+            }
+            int first = k;
+            while (k < keys.length && (int) (keys[k] >>> 32) == id){
+                k++;
+            }
+            Row old = known(id) ? row(id) : EMPTY;
+            next.setRow(id, next.merge(old, changed, keys, first, k, rolePositions, roleTypes));
+        }
+        return next;
+    }
+
+    /**
+     * Method merge makes the row of an actor again from their old row, without the movies that changed, and their
+     * roles in the changed movies, keeping the order of the positions
+     *
+     * @param old the old row of the actor
+     * @param changed the positions of the changed movies, sorted
+     * @param keys the roles in the changed movies, sorted by actor and then by position (see update())
+     * @param first the first role of the actor in keys
+     * @param last the role after their last one
+     * @param rolePositions the position of the movie of every role
+     * @param roleTypes the type of every role
+     * @return the new row, or null if the actor is in no movie
+     */
+    private Row merge(Row old, int[] changed, long[] keys, int first, int last, int[] rolePositions,
+                      String[] roleTypes){
+        int kept = 0;
+        for (int position : old.movies){
+            if (Arrays.binarySearch(changed, position) < 0){
+                kept++;
+            }
+        }
+        int size = kept + last - first;
+        if (size == 0){
+            return null;
+        }
+        int[] rowMovies = new int[size];
+        String[] rowTypes = new String[size];
+        int a = 0;
+        int b = first;
+        for (int k = 0; k < size; k++){
+            while (a < old.movies.length && Arrays.binarySearch(changed, old.movies[a]) >= 0){
+                a++;
+            }
+            int role = b < last ? (int) keys[b] : -1;
+            if (role < 0 || a < old.movies.length && old.movies[a] < rolePositions[role]){
+                rowMovies[k] = old.movies[a];
+                rowTypes[k] = old.types[a++];
+            }
+            else{
+                rowMovies[k] = rolePositions[role];
+                rowTypes[k] = roleTypes[role];
+                b++;
+            }
+        }
+        return new Row(rowMovies, rowTypes, movieAt);
+    }
+
+    /**
+     * Method getMovieCount returns the number of movies the actor is in
+     *
+     * @param id the id of the actor in the registry of the movies
+     * @return the number of movies, 0 for an actor the index does not know
+     */
+    public int getMovieCount(int id){
+        return known(id) ? row(id).movies.length : 0;
+    }
+
+    /**
+     * Method getFilmography returns the movies the actor is in, in the order of the list the index was built from
+     *
+     * @param id the id of the actor in the registry of the movies
+     * @return a new LinkedList with the movies, empty for an actor the index does not know
+     */
+    public LinkedList<Movie> getFilmography(int id){
+        LinkedList<Movie> filmography = new LinkedList<Movie>();
+        if (known(id)){
+            for (int position : row(id).movies){
+                filmography.add(movieAt.apply(position));
+            }
+        }
+        return filmography;
+    }
+
+    /**
+     * Method getRoleTypes returns the type of role the actor had in each movie of getFilmography(), in the same order
+     *
+     * @param id the id of the actor in the registry of the movies
+     * @return a new LinkedList with the types of role
+     */
+    public LinkedList<String> getRoleTypes(int id){
+        LinkedList<String> types = new LinkedList<String>();
+        if (known(id)){
+            for (String type : row(id).types){
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Method getMeanScore returns the mean feminist score of the movies the actor is in
+     *
+     * @param id the id of the actor in the registry of the movies
+     * @return the mean score, NaN if the actor is in no movie
+     */
+    public double getMeanScore(int id){
+        return known(id) ? row(id).meanScore : Double.NaN;
+    }
+
+    /**
+     * Method getMaxScore returns the highest feminist score of the movies the actor is in
+     *
+     * @param id the id of the actor in the registry of the movies
+     * @return the highest score, NaN if the actor is in no movie
+     */
+    public double getMaxScore(int id){
+        return known(id) ? row(id).maxScore : Double.NaN;
+    }
+
+    /**
+     * Method getLeadShare returns the fraction of the roles of the actor that are LEAD_ROLE roles
+     *
+     * @param id the id of the actor in the registry of the movies
+     * @return the fraction of leading roles, NaN if the actor is in no movie
+     */
+    public double getLeadShare(int id){
+        return known(id) ? row(id).leadShare : Double.NaN;
+    }
+
+    private boolean known(int id){
+        return id >= 0 && id < actors;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ActorRegistry gives every different actor (same name and gender, see Actor.equals()) one Actor object and a
+ * number, its id. Ids start at 0, are given in the order actors are first seen and never change, so a Movie can
+ * keep its cast as an array of ids, and actors can be compared, counted and joined by id instead of through
+ * Hashtables of Actors.
+ *
+ * Every CatalogSnapshot read from the files has a registry of its own, shared by the snapshots made from it by
+ * copyForChanges(), so the arrays of a snapshot that are indexed by id only have room for the actors of that
+ * collection, and the actors of an old collection are forgotten with it after a reload. A Movie created on its own,
+ * outside of a collection, has a small registry of its own. Actors are never removed from a registry.
+ *
+ * The Actor objects of a registry are its own copies, and cannot be changed (their setters throw an
+ * IllegalStateException), so they are safe to share between movies and threads and to use as keys. Actors can be
+ * interned by one thread while others look them up: getId() reads a ConcurrentHashMap and getActor() reads an
+ * array that is only replaced by a bigger copy, so lookups never wait, and only new actors are added under a lock.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class ActorRegistry
+{
+    private ConcurrentHashMap<Actor, Integer> ids; //key = interned actor, value = their id
+    private volatile Actor[] actors; //actors[id] is the actor with that id
+    private volatile int size;
+
+    /**
+     * Constructor for objects of class ActorRegistry
+     */
+    public ActorRegistry()
+    {
+        this(1024);
+    }
+
+    /**
+     * Constructor for objects of class ActorRegistry with room for the given number of actors before it grows
+     *
+     * @param capacity the expected number of actors
+     */
+    public ActorRegistry(int capacity)
+    {
+        ids = new ConcurrentHashMap<Actor, Integer>(Math.max(16, capacity * 2));
+        actors = new Actor[Math.max(1, capacity)];
+    }
+
+    /**
+     * Method intern returns the id of the given actor. If there is no actor with the same name and gender yet, a
+     * copy of the given Actor, which cannot be changed, becomes the one kept for them, and gets a new id.
+     *
+     * @param a the actor
+     * @return the id of the actor
+     */
+    public int intern(Actor a){
+        Integer id = ids.get(a);
+        if (id != null){
+            return id;
+        }
+        return add(a.getName(), a.getGender());
+    }
+
+    /**
+     * Method intern returns the id of the actor with the given name and gender, creating the actor if they are not
+     * in the registry yet.
+     *
+     * @param name the name of the actor
+     * @param gender the gender of the actor
+     * @return the id of the actor
+     */
+    public int intern(String name, String gender){
+        return intern(new Actor(name, gender));
+    }
+
+    /**
+     * Method add gives an id to a new actor. The actor is written to the array before it is put in ids, so a thread
+     * that finds an id in ids can always read the actor.
+     */
+    private synchronized int add(String name, String gender){
+        Actor a = new Actor(name, gender);
+        Integer known = ids.get(a); //added by another thread since the first look
+        if (known != null){
+            return known;
+        }
+        a.freeze();
+        int id = size;
+        if (id == actors.length){
+            Actor[] bigger = new Actor[id * 2];
+            System.arraycopy(actors, 0, bigger, 0, id);
+            bigger[id] = a;
+            actors = bigger;
+        }
+        else{
+            actors[id] = a;
+        }
+        size = id + 1;
+        ids.put(a, id);
+        return id;
+    }
+
+    /**
+     * Method getId returns the id of an actor, or -1 if there is no actor with the same name and gender
+     *
+     * @param a the actor
+     * @return the id of the actor, or -1
+     */
+    public int getId(Actor a){
+        Integer id = ids.get(a);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Method getActor returns the actor with the given id
+     *
+     * @param id the id, from intern()
+     * @return the actor
+     */
+    public Actor getActor(int id){
+        if (id < 0 || id >= size){
+            throw new ArrayIndexOutOfBoundsException("No actor with id " + id);
+        }
+        return actors[id];
+    }
+
+    /**
+     * size() returns the number of actors in the registry. Ids go from 0 to size() - 1.
+     *
+     * @return number of actors
+     */
+    public int size(){
+        return size;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Represents one line of the cast file ("nextBechdel_castGender.txt"): the title of a movie, the Actor
+ * who played in it and the type of their role.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class CastRow
+{
+    public static final int FIELDS = 6; //fields of a line of the cast file
+    private String title;
+    private Actor actor;
+    private String type;
+
+    /**
+     * Constructor for objects of class CastRow
+     */
+    public CastRow(String title, Actor actor, String type)
+    {
+        this.title = title;
+        this.actor = actor;
+        this.type = type;
+    }
+
+    /**
+     * Method parse creates a CastRow from a line of the cast file. Lines have the following formatting:
+     * "MOVIE","ACTOR","CHARACTER_NAME","TYPE","BILLING","GENDER"
+     * Example: "Trolls","Ricky Dillon","Aspen Heitz","Supporting","18","Male"
+     *
+     * @param line a line of the cast file
+     * @return the CastRow described by the line
+     */
+    public static CastRow parse(String line){
+        CsvTokenizer row = CsvTokenizer.lineTokenizer();
+        if (!row.parse(line)){
+            throw new IllegalArgumentException(row.getError() + ": " + line);
+        }
+        return parse(row);
+    }
+
+    /**
+     * Method parse creates a CastRow from a row of the cast file that was already split into fields (see 
+     * CsvTokenizer). The quotes around the fields are already removed, so titles and names may contain commas.
+     *
+     * @param row the row
+     * @return the CastRow described by the row
+     */
+    public static CastRow parse(CsvTokenizer row){
+        return parse(row, 0);
+    }
+
+    /**
+     * Method parse creates a CastRow from the fields of a row that start at the given one, for example the fields 
+     * after the change of a line of a delta file (see MovieCollection.applyDelta())
+     *
+     * @param row the row
+     * @param first index of the field with the title of the movie
+     * @return the CastRow described by the fields
+     */
+    public static CastRow parse(CsvTokenizer row, int first){
+        if (row.size() < first + FIELDS){
+            throw new IllegalArgumentException("A cast line has " + FIELDS + " fields, not " + (row.size() - first));
+        }
+        return new CastRow(row.getField(first), new Actor(row.getField(first + 1), row.getField(first + 5)), 
+                           row.getField(first + 3));
+    }
+
+    /**
+     * getTitle() is a getter for the title of the movie
+     *
+     * @return title of the movie
+     */
+    public String getTitle(){
+        return title;
+    }
+
+    /**
+     * getActor() is a getter for the actor
+     *
+     * @return the Actor of this row
+     */
+    public Actor getActor(){
+        return actor;
+    }
+
+    /**
+     * getType() is a getter for the type of role
+     *
+     * @return type of role
+     */
+    public String getType(){
+        return type;
+    }
+}
@@ -0,0 +1,441 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.function.IntFunction;
+
+/**
+ * CatalogSnapshot holds everything a MovieCollection knows at one point in time: its movies and actors, the title
+ * index, the TestBitmapIndex, the ranking and the ScoringEngine. A snapshot is filled by a single thread while the
+ * files are read (or copied from an older snapshot by copyForChanges()), and once it is published it is never
+ * changed again, by the collection or by anybody else. Any number of threads can therefore read a published
+ * snapshot at the same time without locks. The Movies and Actors of a published snapshot must be treated as read
+ * only too; a change to a movie is made on a copy of it, in a new snapshot. The ActorIndex and the NameIndexes of a
+ * changed snapshot are updated before it is published, so reading them never waits. The methods that fill a
+ * snapshot are package-private, so a snapshot from MovieCollection.getSnapshot() can only be read.
+ *
+ * A snapshot made by copyForChanges() shares with the older one everything its changes do not touch: the TitleMap,
+ * the bitmaps and the ranking are copied in chunks, only when a chunk changes, and the ActorIndex and the NameIndexes
+ * only make again the parts about the changed movies and actors. So a change costs time and memory proportional to
+ * the number of changed movies (and to the number of chunks, which is the size of the collection divided by a few
+ * hundred), not to the size of the collection. The lists of the movies and actors are only made when they are
+ * asked for (see getMovies()).
+ *
+ * The ids of the actors come from the ActorRegistry of the snapshot (see getRegistry()). A snapshot read from the
+ * files starts with a new, empty registry, and the snapshots made from it by copyForChanges() share it, so the
+ * indexes by id (the ActorIndex, the NameIndex of the actors) have room for the actors of this collection only.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class CatalogSnapshot
+{
+    private ActorRegistry registry; //ids of the actors of the movies
+    private volatile LinkedList<Movie> allMovies; //in the order of their positions; made when first asked for
+    private volatile LinkedList<Actor> allActors; //actors in at least one movie, by id; made when first asked for
+    private TitleMap movieIndex; //key = title, value = movie with that title and its position
+    private int size; //number of movies
+    private int[] movieCounts; //movieCounts[id] = number of movies of actor id, only while read from the files
+    private TestBitmapIndex testIndex; //test results of the movies by column, and the movie at every position
+    private MovieRanking ranking; //the movies from most to least feminist
+    private ScoringEngine scoringEngine; //figures of the movies for scoring models
+    private ActorIndex actorIndex; //movies of every actor
+    private NameIndex<Movie> titleIndex; //titles for searching, by position; null if built without them
+    private NameIndex<Actor> actorNameIndex; //actor names for searching, by id; null as titleIndex
+    private int namedActors; //the actors with lower ids are in actorNameIndex
+    private long version; //0 for the snapshot read from the files, then one more for every change
+
+    /**
+     * Constructor for objects of class CatalogSnapshot. The snapshot starts empty; after adding the movies and the
+     * roles, call buildIndexes() before publishing it.
+     */
+    CatalogSnapshot()
+    {
+        registry = new ActorRegistry();
+        allMovies = new LinkedList<Movie>();
+        movieIndex = new TitleMap();
+        movieCounts = new int[registry.size()];
+    }
+
+    /**
+     * Constructor for objects of class CatalogSnapshot that starts empty with the given version, for a snapshot
+     * that was saved to a file (see SnapshotFile)
+     *
+     * @param version the version of the saved snapshot
+     */
+    CatalogSnapshot(long version)
+    {
+        this();
+        this.version = version;
+    }
+
+    /**
+     * Constructor for objects of class CatalogSnapshot that shares the registry of another one and has nothing else,
+     * for copyForChanges()
+     */
+    private CatalogSnapshot(ActorRegistry registry, long version)
+    {
+        this.registry = registry;
+        this.version = version;
+    }
+
+    /**
+     * Method copyForChanges returns a new, unpublished snapshot with the same content as this one, one version
+     * later, where the movies with the given titles are copies (see Movie(Movie)) that can be changed. The indexes
+     * are copies that share their parts with the indexes of this snapshot, and still point to the old movies until
+     * updateIndexes() is called; only the TitleMap points to the copies already. Only the changed movies are copied,
+     * and the TitleMap, bitmaps and ranking are copied in constant time or one reference per chunk, so this takes
+     * time and memory proportional to the number of titles, not to the size of the collection.
+     *
+     * @param titles the titles of the movies that will be changed
+     * @param copies filled with key = old movie, value = its copy in the new snapshot
+     * @return the new snapshot
+     */
+    CatalogSnapshot copyForChanges(Iterable<String> titles, IdentityHashMap<Movie, Movie> copies){
+        CatalogSnapshot next = new CatalogSnapshot(registry, version + 1);
+        next.movieIndex = movieIndex.copy();
+        for (String title : titles){
+            Movie m = movieIndex.get(title);
+            if (m != null && !copies.containsKey(m)){
+                Movie copy = new Movie(m);
+                copies.put(m, copy);
+                next.movieIndex.put(title, copy, movieIndex.getPosition(title));
+            }
+        }
+        next.size = size;
+        next.actorIndex = actorIndex; //never changed, only replaced by updateIndexes()
+        next.titleIndex = titleIndex;
+        next.actorNameIndex = actorNameIndex;
+        next.namedActors = namedActors;
+        next.testIndex = testIndex.copy();
+        next.ranking = ranking.copy();
+        next.scoringEngine = new ScoringEngine(next.testIndex);
+        return next;
+    }
+
+    /**
+     * Method buildIndexes builds the indexes that are used to answer queries, once the movies and roles are added.
+     */
+    void buildIndexes(){
+        buildIndexes(true);
+    }
+
+    /**
+     * Method buildIndexes builds the indexes that are used to answer queries, once the movies and roles are added.
+     * The NameIndexes are only built if the snapshot will be searched by name; a shard (see 
+     * MovieCollection.loadShard()) is not. From then on, the movie counts of the actors come from the ActorIndex.
+     *
+     * @param searchable true to build the NameIndexes
+     */
+    void buildIndexes(boolean searchable){
+        testIndex = new TestBitmapIndex(allMovies);
+        ranking = new MovieRanking(allMovies);
+        scoringEngine = new ScoringEngine(testIndex);
+        actorIndex = new ActorIndex(allMovies);
+        allActors = actorList();
+        movieCounts = null;
+        if (searchable){
+            titleIndex = new NameIndex<Movie>(allMovies, Movie::getTitle);
+            nameNewActors();
+        }
+    }
+
+    /**
+     * Method actorList returns the actors that are in at least one movie, in the order of their ids, which is the 
+     * order in which the snapshot (or the snapshot it was copied from) first saw them. It is made from the movie 
+     * counts instead of being changed role by role, so that removing an actor does not search a list.
+     *
+     * @return the actors
+     */
+    private LinkedList<Actor> actorList(){
+        LinkedList<Actor> actors = new LinkedList<Actor>();
+        for (int id = 0; id < registry.size(); id++){
+            if (getMovieCount(id) > 0){
+                actors.add(registry.getActor(id));
+            }
+        }
+        return actors;
+    }
+
+    /**
+     * Method nameNewActors adds to the NameIndex of the actors the actors of the registry that are not in it yet,
+     * making the index if there is none. The index looks the actors up by id in the current ActorIndex, so actors
+     * who are in no movie are left out of the searches without taking their names out.
+     */
+    private void nameNewActors(){
+        int[] ids = new int[registry.size() - namedActors];
+        String[] names = new String[ids.length];
+        for (int i = 0; i < ids.length; i++){
+            ids[i] = namedActors + i;
+            names[i] = registry.getActor(ids[i]).getName();
+        }
+        ActorIndex actors = actorIndex;
+        IntFunction<Actor> valueOf = id -> actors.getMovieCount(id) > 0 ? registry.getActor(id) : null;
+        actorNameIndex = actorNameIndex == null ? new NameIndex<Actor>(ids, names, valueOf)
+                                                : actorNameIndex.add(ids, names, valueOf);
+        namedActors += ids.length;
+    }
+
+    /**
+     * Method addMovie adds a movie at the next position, and to the TitleMap unless a movie with the same title is
+     * already there. The cast of the movie is moved to the registry of the snapshot if it used another one (see 
+     * getRegistry()).
+     *
+     * @param m the Movie to add
+     */
+    void addMovie(Movie m){
+        m.useRegistry(registry);
+        if (testIndex == null){
+            allMovies.add(m); //a snapshot that is read; a changed one adds its movies in updateIndexes()
+        }
+        movieIndex.putIfAbsent(m.getTitle(), m, size++);
+    }
+
+    /**
+     * Method addRole adds an actor to a movie, and counts the movie for the actor (see getMovieCount()). The actor is 
+     * interned in the registry of the snapshot, so the actors of the snapshot and the movies keep the Actor object of
+     * the registry.
+     *
+     * @param m the Movie
+     * @param a the Actor to add
+     * @param type the type of role
+     */
+    void addRole(Movie m, Actor a, String type){
+        addRole(m, registry.intern(a), type);
+    }
+
+    /**
+     * Method addRole adds the actor with the given id in the registry of the snapshot to a movie, and counts the 
+     * movie for the actor while the snapshot is read (a changed snapshot counts them in updateIndexes())
+     *
+     * @param m the Movie
+     * @param id the id of the actor
+     * @param type the type of role
+     */
+    void addRole(Movie m, int id, String type){
+        if (m.addActor(id, type) && movieCounts != null){
+            //actors should not be repeated
+            if (id >= movieCounts.length){
+                movieCounts = Arrays.copyOf(movieCounts, Math.max(id + 1, movieCounts.length * 2));
+            }
+            movieCounts[id]++;
+        }
+    }
+
+    /**
+     * Method addActor sets the number of movies of an actor without adding them to a movie, for a snapshot that is 
+     * loaded from a file where the roles are added to the movies directly.
+     *
+     * @param id the id of the actor in the registry of the snapshot
+     * @param movies the number of movies the actor is in
+     */
+    void addActor(int id, int movies){
+        if (id >= movieCounts.length){
+            movieCounts = Arrays.copyOf(movieCounts, Math.max(id + 1, movieCounts.length * 2));
+        }
+        movieCounts[id] = movies;
+    }
+
+    /**
+     * Method removeRole removes an actor from a movie. If they are not in any other movie, they leave the actors of 
+     * the snapshot when the indexes are brought up to date (see updateIndexes()).
+     *
+     * @param m the Movie
+     * @param a the Actor to remove
+     */
+    void removeRole(Movie m, Actor a){
+        if (m.removeActor(a) != null && movieCounts != null){
+            movieCounts[registry.getId(a)]--;
+        }
+    }
+
+    /**
+     * Method getMovieCount returns the number of movies of this snapshot the actor with the given id is in
+     *
+     * @param id the id of the actor in the registry of the snapshot
+     * @return the number of movies, 0 if the actor is in none
+     */
+    public int getMovieCount(int id){
+        if (movieCounts == null){
+            return actorIndex.getMovieCount(id);
+        }
+        return id >= 0 && id < movieCounts.length ? movieCounts[id] : 0;
+    }
+
+    /**
+     * Method updateIndexes brings the indexes and the ranking of a snapshot made by copyForChanges() up to date,
+     * once its copied movies were changed and new movies were added. If most of the collection changed, the
+     * ranking is built again instead. The ActorIndex is updated for the actors of the changed and added movies
+     * only (see ActorIndex.update()). The title index finds the movies by position, so it only needs the titles of
+     * the added movies, and the index of the actor names only the names of the actors the registry did not have.
+     *
+     * @param copies key = old movie, value = its changed copy
+     * @param oldScores key = old movie, value = its score in the ranking
+     * @param added movies that were added with addMovie(), in order
+     */
+    void updateIndexes(IdentityHashMap<Movie, Movie> copies, IdentityHashMap<Movie, Double> oldScores,
+                              LinkedList<Movie> added){
+        int first = testIndex.size(); //position of the first added movie
+        boolean rebuildRanking = (copies.size() + added.size()) * 8 > size;
+        //the positions of the changed movies, sorted, with the movies that were there
+        long[] byPosition = new long[copies.size()]; //position in the high half, number in olds in the low half
+        Movie[] olds = copies.keySet().toArray(new Movie[0]);
+        for (int c = 0; c < olds.length; c++){
+            byPosition[c] = ((long) movieIndex.getPosition(olds[c].getTitle()) << 32) | c;
+        }
+        Arrays.sort(byPosition);
+        int[] changed = new int[olds.length + added.size()];
+        Movie[] before = new Movie[changed.length];
+        for (int c = 0; c < olds.length; c++){
+            Movie old = olds[(int) byPosition[c]];
+            Movie copy = copies.get(old);
+            changed[c] = (int) (byPosition[c] >>> 32);
+            before[c] = old;
+            testIndex.replace(changed[c], copy);
+            if (!rebuildRanking && !ranking.remove(old, oldScores.get(old))){
+                rebuildRanking = true;
+            }
+            if (!rebuildRanking){
+                ranking.add(copy);
+            }
+        }
+        int next = olds.length;
+        for (Movie m : added){
+            changed[next++] = testIndex.size();
+            testIndex.add(m);
+            if (!rebuildRanking){
+                ranking.add(m);
+            }
+        }
+        if (rebuildRanking){
+            ranking = new MovieRanking(testIndex.getMovies());
+        }
+        actorIndex = actorIndex.update(testIndex::getMovie, changed, before);
+        if (titleIndex != null){
+            int[] ids = new int[added.size()];
+            String[] titles = new String[ids.length];
+            int i = 0;
+            for (Movie m : added){
+                ids[i] = first + i;
+                titles[i++] = m.getTitle();
+            }
+            titleIndex = titleIndex.add(ids, titles, testIndex::getMovie);
+            nameNewActors();
+        }
+    }
+
+    /**
+     * getRegistry() returns the ActorRegistry the ids of the actors of this snapshot come from. Movies that are 
+     * added to the snapshot should be created with it (see Movie(String, ActorRegistry)).
+     *
+     * @return the registry
+     */
+    ActorRegistry getRegistry(){
+        return registry;
+    }
+
+    /**
+     * getMovie() returns the movie with the given title, or null if there is none
+     *
+     * @param title the title
+     * @return the movie
+     */
+    public Movie getMovie(String title){
+        return movieIndex.get(title);
+    }
+
+    /**
+     * getMovies() returns the movies of the snapshot, in the order of their positions. The list is made the first
+     * time it is asked for, from the TestBitmapIndex, and must not be changed.
+     *
+     * @return the movies
+     */
+    public LinkedList<Movie> getMovies(){
+        LinkedList<Movie> movies = allMovies;
+        if (movies == null){
+            movies = testIndex.getMovies();
+            allMovies = movies;
+        }
+        return movies;
+    }
+
+    /**
+     * getActors() returns the actors of the snapshot, in the order they were first seen. After a change, the list is
+     * made the first time it is asked for, from the ActorIndex, and it must not be changed.
+     *
+     * @return the actors
+     */
+    public LinkedList<Actor> getActors(){
+        LinkedList<Actor> actors = allActors;
+        if (actors == null){
+            actors = actorList();
+            allActors = actors;
+        }
+        return actors;
+    }
+
+    /**
+     * getTestIndex() returns the TestBitmapIndex of the snapshot
+     *
+     * @return the index
+     */
+    public TestBitmapIndex getTestIndex(){
+        return testIndex;
+    }
+
+    /**
+     * getRanking() returns the ranking of the snapshot
+     *
+     * @return the ranking
+     */
+    public MovieRanking getRanking(){
+        return ranking;
+    }
+
+    /**
+     * getActorIndex() returns the ActorIndex of the snapshot. It is built with the other indexes when the files are 
+     * read, and updated by updateIndexes() before a changed snapshot is published, so reading it never waits.
+     *
+     * @return the index
+     */
+    public ActorIndex getActorIndex(){
+        return actorIndex;
+    }
+
+    /**
+     * getTitleIndex() returns the NameIndex of the titles of the movies of the snapshot. It is built with the other 
+     * indexes when the files are read, and updated by updateIndexes() before a changed snapshot is published.
+     *
+     * @return the index, or null for a snapshot built without it (see buildIndexes(boolean))
+     */
+    public NameIndex<Movie> getTitleIndex(){
+        return titleIndex;
+    }
+
+    /**
+     * getActorNameIndex() returns the NameIndex of the names of the actors of the snapshot, built as the one of
+     * getTitleIndex()
+     *
+     * @return the index, or null for a snapshot built without it
+     */
+    public NameIndex<Actor> getActorNameIndex(){
+        return actorNameIndex;
+    }
+
+    /**
+     * getScoringEngine() returns the ScoringEngine of the snapshot
+     *
+     * @return the engine
+     */
+    public ScoringEngine getScoringEngine(){
+        return scoringEngine;
+    }
+
+    /**
+     * getVersion() returns the version of the snapshot: 0 when read from the files, one more after every change
+     *
+     * @return the version
+     */
+    public long getVersion(){
+        return version;
+    }
+}
@@ -0,0 +1,473 @@
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * CsvTokenizer splits the lines of the test results file and of the cast file into fields, following RFC 4180:
+ * fields are separated by commas, and a field in double quotes may contain commas, new lines and double quotes,
+ * which are written twice (""). The quotes around a field are not part of it. A double quote inside a field
+ * without quotes is kept as it is. Lines may end with "\n" or "\r\n".
+ *
+ * A CsvTokenizer reads one row at a time, either from a Reader with next() or from a single line with parse().
+ * The characters of the fields are kept in buffers that are reused for every row, so reading a row creates no
+ * objects; a String is only created for the fields asked for with getField(), and fieldEquals() compares a field
+ * to a String without creating one.
+ *
+ * Malformed rows (a closing quote followed by something other than a comma or the end of the line, or a quote that
+ * is never closed) are skipped by next() and handed to a RejectHandler with their line number and the reason.
+ * Readers can reject well formed rows too, for example rows with too few fields, with reject(). Blank lines are
+ * skipped.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class CsvTokenizer
+{
+    private static final int MAX_REPORTED = 200; //characters of a rejected row given to the RejectHandler
+    private static final int RECORD = 0; //results of readRecord()
+    private static final int END = 1;
+    private static final int MALFORMED = 2;
+    private static final ThreadLocal<CsvTokenizer> LINES = ThreadLocal.withInitial(() -> new CsvTokenizer());
+
+    /**
+     * RejectHandler receives the rows that could not be read
+     */
+    public interface RejectHandler
+    {
+        void reject(String source, int line, String row, String reason);
+    }
+
+    /**
+     * PRINT prints the rejected rows, with the file and the line number
+     */
+    public static final RejectHandler PRINT = (source, line, row, reason) ->
+        System.out.println(source + ", line " + line + ": " + reason + ": " + row);
+
+    private Reader in; //null when parsing a single line
+    private String source;
+    private RejectHandler rejects;
+    private char[] buf; //characters read and not parsed yet are buf[pos] to buf[limit - 1]
+    private int pos;
+    private int limit;
+    private char[] chars = new char[256]; //characters of the fields of the row, without quotes
+    private int length;
+    private int[] starts = new int[16]; //field i is chars[starts[i]] to chars[ends[i] - 1]
+    private int[] ends = new int[16];
+    private int size; //number of fields
+    private char[] raw = new char[256]; //the row as it is in the file, for rejected rows
+    private int rawLength;
+    private int line; //lines read so far
+    private int rowLine; //line where the row starts
+    private int records; //rows read, including rejected ones
+    private int rejected;
+    private String error;
+
+    /**
+     * Constructor for objects of class CsvTokenizer that read single lines with parse()
+     */
+    public CsvTokenizer()
+    {
+        this.buf = new char[256];
+        this.source = "line";
+        this.rejects = PRINT;
+    }
+
+    /**
+     * Constructor for objects of class CsvTokenizer that read rows from a Reader with next()
+     *
+     * @param in the reader; it is read in large blocks, so it does not need to be buffered
+     * @param source the name of the file, for the rejected rows
+     * @param rejects receives the rows that could not be read
+     */
+    public CsvTokenizer(Reader in, String source, RejectHandler rejects)
+    {
+        this.in = in;
+        this.buf = new char[1 << 16];
+        this.source = source;
+        this.rejects = rejects;
+    }
+
+    /**
+     * Method lineTokenizer returns a CsvTokenizer of the current thread for parse(), so that single lines can be
+     * split without creating a CsvTokenizer each time. It must not be kept after the fields are read, as the next
+     * call on the same thread reuses it.
+     *
+     * @return the CsvTokenizer of the current thread
+     */
+    public static CsvTokenizer lineTokenizer(){
+        return LINES.get();
+    }
+
+    /**
+     * Method next reads the next row. Blank lines are skipped, and so are malformed rows, which are handed to the
+     * RejectHandler.
+     *
+     * @return true if there is a row, false at the end of the input
+     */
+    public boolean next() throws IOException{
+        while (true){
+            int result = readRecord();
+            if (result == END){
+                return false;
+            }
+            records++;
+            if (result == MALFORMED){
+                skipLine();
+                reject(error);
+            }
+            else if (size > 1 || ends[0] > 0 || rawLength > 0){
+                return true;
+            }
+            else{
+                records--; //blank line
+            }
+        }
+    }
+
+    /**
+     * Method parse splits a single line into fields
+     *
+     * @param text the line
+     * @return true if the line is well formed; otherwise getError() tells why
+     */
+    public boolean parse(String text){
+        in = null;
+        if (buf.length < text.length()){
+            buf = new char[Math.max(text.length(), buf.length * 2)];
+        }
+        text.getChars(0, text.length(), buf, 0);
+        pos = 0;
+        limit = text.length();
+        line = 0;
+        try{
+            int result = readRecord();
+            if (result == END){ //an empty line has one empty field
+                length = 0;
+                size = 1;
+                starts[0] = 0;
+                ends[0] = 0;
+            }
+            return result != MALFORMED;
+        }
+        catch(IOException ex){ //not thrown without a Reader
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Method readRecord reads one row into the buffers. Runs of characters that are neither quotes, commas nor ends
+     * of lines are copied at once.
+     *
+     * @return RECORD, END if there is nothing left to read, or MALFORMED (and sets error)
+     */
+    private int readRecord() throws IOException{
+        size = 0;
+        length = 0;
+        rawLength = 0;
+        rowLine = line + 1;
+        int fieldStart = 0;
+        boolean quoted = false; //inside a quoted field
+        boolean closed = false; //right after the closing quote of a field
+        if (pos == limit && !fill()){
+            return END;
+        }
+        while (true){
+            if (pos == limit && !fill()){
+                if (quoted){
+                    error = "quoted field is not closed";
+                    return MALFORMED;
+                }
+                line++;
+                endField(fieldStart);
+                return RECORD;
+            }
+            int start = pos;
+            char c;
+            if (quoted){
+                while (pos < limit && (c = buf[pos]) != '"' && c != '\n'){
+                    pos++;
+                }
+                append(start, pos - start);
+                if (pos == limit){
+                    continue;
+                }
+                c = buf[pos++];
+                if (c == '\n'){
+                    line++;
+                    addRaw(c);
+                    addChar(c);
+                }
+                else if (peek() == '"'){
+                    pos++;
+                    addRaw('"');
+                    addRaw('"');
+                    addChar('"'); //escaped quote
+                }
+                else{
+                    addRaw('"');
+                    quoted = false;
+                    closed = true;
+                }
+                continue;
+            }
+            if (!closed){
+                while (pos < limit && (c = buf[pos]) != ',' && c != '\n' && c != '\r' && c != '"'){
+                    pos++;
+                }
+                append(start, pos - start);
+                if (pos == limit){
+                    continue;
+                }
+            }
+            c = buf[pos++];
+            if (c == ','){
+                addRaw(',');
+                endField(fieldStart);
+                fieldStart = length;
+                closed = false;
+            }
+            else if (c == '\n' || c == '\r' && peek() == '\n'){
+                if (c == '\r'){
+                    pos++;
+                }
+                line++;
+                endField(fieldStart);
+                return RECORD;
+            }
+            else if (closed){
+                addRaw(c);
+                error = "unexpected character after a closing quote";
+                return MALFORMED;
+            }
+            else if (c == '"' && length == fieldStart && (rawLength == 0 || raw[rawLength - 1] == ',')){
+                addRaw('"');
+                quoted = true;
+            }
+            else{ //a quote inside a field, or a \r that does not end the line
+                addRaw(c);
+                addChar(c);
+            }
+        }
+    }
+
+    /**
+     * Method fill reads the next block of the input into buf, once all of it is parsed
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException{
+        pos = 0;
+        limit = in == null ? -1 : in.read(buf, 0, buf.length);
+        if (limit <= 0){
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private int read() throws IOException{
+        if (pos == limit && !fill()){
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException{
+        if (pos == limit && !fill()){
+            return -1;
+        }
+        return buf[pos];
+    }
+
+    /**
+     * Method append adds n characters of buf, from start, to the current field and to the row
+     */
+    private void append(int start, int n){
+        if (n == 0){
+            return;
+        }
+        if (length + n > chars.length){
+            chars = Arrays.copyOf(chars, Math.max(length + n, chars.length * 2));
+        }
+        if (rawLength + n > raw.length){
+            raw = Arrays.copyOf(raw, Math.max(rawLength + n, raw.length * 2));
+        }
+        System.arraycopy(buf, start, chars, length, n);
+        System.arraycopy(buf, start, raw, rawLength, n);
+        length += n;
+        rawLength += n;
+    }
+
+    /**
+     * Method skipLine skips the rest of a malformed row, up to the end of the line, keeping it for the report
+     */
+    private void skipLine() throws IOException{
+        int c;
+        while ((c = read()) >= 0 && c != '\n'){
+            addRaw((char) c);
+        }
+        if (c == '\n'){
+            line++;
+        }
+        if (rawLength > 0 && raw[rawLength - 1] == '\r'){
+            rawLength--;
+        }
+    }
+
+    private void addChar(char c){
+        if (length == chars.length){
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        chars[length++] = c;
+    }
+
+    private void addRaw(char c){
+        if (rawLength == raw.length){
+            raw = Arrays.copyOf(raw, rawLength * 2);
+        }
+        raw[rawLength++] = c;
+    }
+
+    private void endField(int fieldStart){
+        if (size == starts.length){
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = fieldStart;
+        ends[size] = length;
+        size++;
+    }
+
+    /**
+     * Method reject hands the current row to the RejectHandler and counts it as rejected
+     *
+     * @param reason why the row is rejected
+     */
+    public void reject(String reason){
+        rejected++;
+        rejects.reject(source, rowLine, new String(raw, 0, Math.min(rawLength, MAX_REPORTED)), reason);
+    }
+
+    /**
+     * size() returns the number of fields of the current row
+     *
+     * @return number of fields
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Method getField returns a field of the current row, without quotes
+     *
+     * @param i index of the field, from 0 to size() - 1
+     * @return the field
+     */
+    public String getField(int i){
+        checkField(i);
+        return new String(chars, starts[i], ends[i] - starts[i]);
+    }
+
+    /**
+     * Method getFieldLength returns the number of characters of a field of the current row
+     *
+     * @param i index of the field, from 0 to size() - 1
+     * @return number of characters
+     */
+    public int getFieldLength(int i){
+        checkField(i);
+        return ends[i] - starts[i];
+    }
+
+    /**
+     * Method fieldEquals tells whether a field of the current row is equal to a String, without creating one
+     *
+     * @param i index of the field, from 0 to size() - 1
+     * @param s the String
+     * @return true if the field has the same characters as s
+     */
+    public boolean fieldEquals(int i, String s){
+        checkField(i);
+        int start = starts[i];
+        if (s == null || ends[i] - start != s.length()){
+            return false;
+        }
+        for (int j = 0; j < s.length(); j++){
+            if (chars[start + j] != s.charAt(j)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkField(int i){
+        if (i < 0 || i >= size){
+            throw new ArrayIndexOutOfBoundsException(i + " >= " + size);
+        }
+    }
+
+    /**
+     * getLineNumber() returns the line of the input where the current row starts, 1 for the first line
+     *
+     * @return line number
+     */
+    public int getLineNumber(){
+        return rowLine;
+    }
+
+    /**
+     * getRecords() returns the number of rows read by next(), including the rejected ones but not blank lines
+     *
+     * @return number of rows
+     */
+    public int getRecords(){
+        return records;
+    }
+
+    /**
+     * getRejected() returns the number of rows handed to the RejectHandler
+     *
+     * @return number of rejected rows
+     */
+    public int getRejected(){
+        return rejected;
+    }
+
+    /**
+     * getError() returns why the last line given to parse() is malformed
+     *
+     * @return the reason
+     */
+    public String getError(){
+        return error;
+    }
+
+    /**
+     * Method main for testing
+     *
+     */
+    public static void main(String[] args) throws IOException{
+        CsvTokenizer row = new CsvTokenizer();
+        String[] lines = {"\"Trolls\",\"Ricky Dillon\",\"Aspen Heitz\",\"Supporting\",\"18\",\"Male\"",
+                          "\"Crouching Tiger, Hidden Dragon\",\"Chow Yun-fat\"", "\"The \"\"Best\"\" Movie\",,x",
+                          "Movie 0,1,0,1", "", "\"Bad\"x,1", "\"Open,1"};
+        for (String text : lines){
+            if (row.parse(text)){
+                String fields = "";
+                for (int i = 0; i < row.size(); i++){
+                    fields += "[" + row.getField(i) + "]";
+                }
+                System.out.println(text + " -> " + fields);
+            }
+            else{
+                System.out.println(text + " -> " + row.getError());
+            }
+        }
+        String file = "title,a\n\"Two\nlines\",1\r\n\r\n\"Bad\"x,2\nLast,3";
+        CsvTokenizer reader = new CsvTokenizer(new StringReader(file), "file", PRINT);
+        while (reader.next()){
+            System.out.println("line " + reader.getLineNumber() + ": [" + reader.getField(0) + "] " + reader.size()
+                               + " fields");
+        }
+        System.out.println("Rows: " + reader.getRecords() + ", rejected: " + reader.getRejected());
+    }
+}
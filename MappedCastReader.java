@@ -0,0 +1,299 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * MappedCastReader reads the cast file ("nextBechdel_castGender.txt") through a memory mapped view of the file
+ * instead of a Scanner. It walks over the bytes of each line, finds the quoted fields, and only creates Strings
+ * for the fields that are kept (title, actor, type and gender). Titles are reused while consecutive lines are
+ * about the same movie, and types and genders are shared between lines, so parsing a line creates almost no
+ * objects. The file is mapped one window at a time, so files larger than the heap can be read. Lines with fewer
+ * than six fields are skipped and handed to a RejectHandler with their line number, as CsvTokenizer does.
+ * Lines have the following formatting: "MOVIE","ACTOR","CHARACTER_NAME","TYPE","BILLING","GENDER"
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class MappedCastReader
+{
+    private static final int WINDOW_SIZE = 64 << 20; //bytes mapped at a time
+    private static final int MAX_SHARED_VALUES = 64; //types and genders shared before falling back to new Strings
+    private static final int[] KEPT = {0, 1, 3, 5}; //title, actor, type, gender
+    private static final int MAX_REPORTED = 200; //bytes of a rejected line given to the RejectHandler
+
+    /**
+     * Handler receives every line of the cast file, in order.
+     */
+    public interface Handler
+    {
+        void row(String title, String name, String type, String gender);
+    }
+
+    private Charset charset;
+    private byte[] scratch = new byte[256];
+    private int[] fieldStart = new int[6];
+    private int[] fieldLength = new int[6];
+    private boolean[] fieldEscaped = new boolean[6];
+    private byte[] lastTitle = new byte[0];
+    private int lastTitleLength = -1;
+    private String lastTitleString;
+    private ArrayList<byte[]> sharedBytes = new ArrayList<byte[]>();
+    private ArrayList<String> sharedStrings = new ArrayList<String>();
+    private int malformed;
+    private int records; //lines read after the header, including malformed ones but not blank lines
+    private int line; //lines of the file read so far
+    private int lineBreaks; //new lines inside quoted fields of the line found by lineEnd()
+    private String source;
+    private CsvTokenizer.RejectHandler rejects;
+
+    /**
+     * Constructor for objects of class MappedCastReader, for files in UTF-8
+     */
+    public MappedCastReader()
+    {
+        this(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor for objects of class MappedCastReader
+     *
+     * @param charset the encoding of the file
+     */
+    public MappedCastReader(Charset charset)
+    {
+        this.charset = charset;
+    }
+
+    /**
+     * Method read reads the whole cast file, skipping the header, and hands every line to the handler.
+     * Lines with fewer than six fields are skipped, counted (see getMalformed()) and printed.
+     *
+     * @param castsFile the cast file
+     * @param handler receives the fields of every line
+     */
+    public void read(String castsFile, Handler handler) throws IOException{
+        read(castsFile, handler, CsvTokenizer.PRINT);
+    }
+
+    /**
+     * Method read reads the whole cast file, skipping the header, and hands every line to the handler.
+     * Lines with fewer than six fields are skipped, counted (see getMalformed()) and handed to rejects.
+     *
+     * @param castsFile the cast file
+     * @param handler receives the fields of every line
+     * @param rejects receives the lines that could not be read
+     */
+    public void read(String castsFile, Handler handler, CsvTokenizer.RejectHandler rejects) throws IOException{
+        this.source = castsFile;
+        this.rejects = rejects;
+        line = 0;
+        FileChannel channel = FileChannel.open(Paths.get(castsFile), StandardOpenOption.READ);
+        try{
+            long size = channel.size();
+            long windowStart = 0;
+            boolean header = true;
+            while (windowStart < size){
+                long windowSize = Math.min(WINDOW_SIZE, size - windowStart);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+                boolean lastWindow = windowStart + windowSize == size;
+                int p = 0;
+                while (p < windowSize){
+                    int end = lineEnd(window, p, (int) windowSize);
+                    if (end == windowSize && !lastWindow){
+                        break; //line continues in the next window
+                    }
+                    line += 1 + lineBreaks;
+                    if (header){
+                        header = false;
+                    }
+                    else{
+                        parseLine(window, p, end, line - lineBreaks, handler);
+                    }
+                    p = end + 1;
+                }
+                if (p == 0 && !lastWindow){
+                    throw new IOException("Line longer than " + WINDOW_SIZE + " bytes in " + castsFile);
+                }
+                windowStart += p;
+            }
+        }
+        finally{
+            channel.close();
+        }
+    }
+
+    /**
+     * getMalformed() returns the number of lines skipped because they had fewer than six fields
+     *
+     * @return number of malformed lines
+     */
+    public int getMalformed(){
+        return malformed;
+    }
+
+    /**
+     * getRecords() returns the number of lines read after the header, including the malformed ones but not blank
+     * lines, as CsvTokenizer.getRecords() without the header
+     *
+     * @return number of lines
+     */
+    public int getRecords(){
+        return records;
+    }
+
+    /**
+     * Method lineEnd returns the index of the next new line at or after p, or limit if there is none.
+     * New lines inside quoted fields are part of the field, and are counted in lineBreaks.
+     */
+    private int lineEnd(MappedByteBuffer buf, int p, int limit){
+        boolean quoted = false;
+        lineBreaks = 0;
+        while (p < limit){
+            byte b = buf.get(p);
+            if (b == '"'){
+                quoted = !quoted;
+            }
+            else if (b == '\n' && !quoted){
+                return p;
+            }
+            else if (b == '\n'){
+                lineBreaks++;
+            }
+            p++;
+        }
+        return limit;
+    }
+
+    /**
+     * Method parseLine finds the fields of the line from start to end and hands the kept ones to the handler.
+     */
+    private void parseLine(MappedByteBuffer buf, int start, int end, int lineNumber, Handler handler){
+        if (end > start && buf.get(end - 1) == '\r'){
+            end--;
+        }
+        if (end == start){
+            return; //blank line
+        }
+        records++;
+        int field = 0;
+        int p = start;
+        while (p <= end && field < 6){
+            if (p < end && buf.get(p) == '"'){
+                int q = p + 1;
+                boolean escaped = false;
+                while (q < end){
+                    if (buf.get(q) == '"'){
+                        if (q + 1 < end && buf.get(q + 1) == '"'){
+                            escaped = true;
+                            q += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    q++;
+                }
+                fieldStart[field] = p + 1;
+                fieldLength[field] = q - p - 1;
+                fieldEscaped[field] = escaped;
+                p = q + 1;
+                while (p < end && buf.get(p) != ','){
+                    p++; //ignore anything between the closing quote and the comma
+                }
+            }
+            else{
+                int q = p;
+                while (q < end && buf.get(q) != ','){
+                    q++;
+                }
+                fieldStart[field] = p;
+                fieldLength[field] = q - p;
+                fieldEscaped[field] = false;
+                p = q;
+            }
+            field++;
+            p++; //skip the comma
+        }
+        if (field < 6){
+            malformed++;
+            int length = Math.min(end - start, MAX_REPORTED);
+            if (scratch.length < length){
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buf.get(start, scratch, 0, length);
+            rejects.reject(source, lineNumber, new String(scratch, 0, length, charset), 
+                           "a cast line has " + CastRow.FIELDS + " fields");
+            return;
+        }
+        handler.row(title(buf), string(buf, KEPT[1]), shared(buf, KEPT[2]), shared(buf, KEPT[3]));
+    }
+
+    /**
+     * Method title returns the title of the current line, reusing the String of the previous line if it is the same.
+     */
+    private String title(MappedByteBuffer buf){
+        int length = fieldLength[0];
+        if (length == lastTitleLength && sameBytes(buf, fieldStart[0], lastTitle, length)){
+            return lastTitleString;
+        }
+        if (lastTitle.length < length){
+            lastTitle = new byte[Math.max(length, lastTitle.length * 2)];
+        }
+        buf.get(fieldStart[0], lastTitle, 0, length);
+        lastTitleLength = length;
+        lastTitleString = decode(lastTitle, length, fieldEscaped[0]);
+        return lastTitleString;
+    }
+
+    /**
+     * Method shared returns the String for a field with few different values, so that every line with the
+     * same value gets the same String.
+     */
+    private String shared(MappedByteBuffer buf, int field){
+        int length = fieldLength[field];
+        for (int i = 0; i < sharedBytes.size(); i++){
+            byte[] value = sharedBytes.get(i);
+            if (value.length == length && sameBytes(buf, fieldStart[field], value, length)){
+                return sharedStrings.get(i);
+            }
+        }
+        String s = string(buf, field);
+        if (sharedBytes.size() < MAX_SHARED_VALUES && !fieldEscaped[field]){
+            byte[] value = new byte[length];
+            buf.get(fieldStart[field], value, 0, length);
+            sharedBytes.add(value);
+            sharedStrings.add(s);
+        }
+        return s;
+    }
+
+    /**
+     * Method string creates a new String with the value of a field.
+     */
+    private String string(MappedByteBuffer buf, int field){
+        int length = fieldLength[field];
+        if (scratch.length < length){
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buf.get(fieldStart[field], scratch, 0, length);
+        return decode(scratch, length, fieldEscaped[field]);
+    }
+
+    private String decode(byte[] bytes, int length, boolean escaped){
+        String s = new String(bytes, 0, length, charset);
+        return escaped ? s.replace("\"\"", "\"") : s;
+    }
+
+    private static boolean sameBytes(MappedByteBuffer buf, int start, byte[] bytes, int length){
+        for (int i = 0; i < length; i++){
+            if (buf.get(start + i) != bytes[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.*;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics counts and times what the program does: how long loading, joining the casts to the movies, queries,
+ * ranking and scoring take, and how many rows of the files were read, rejected or skipped. There are two kinds of
+ * metrics: a Counter adds up numbers, and a Timer keeps the number of times something was timed, the total and
+ * longest time, and a histogram of the times. Both are created once, usually in a static final field, with
+ * counter() and timer(), and are kept until the program ends.
+ *
+ * Metrics are off unless setEnabled(true) is called (or the program is started with -Dbechdel.metrics=true). When
+ * they are off, start() returns 0 without reading the clock and every other method returns at once, so the timed
+ * code only pays for reading one field.
+ *
+ * The figures can be written to a file as JSON or in the text format of Prometheus (see writeTo()).
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class Metrics
+{
+    public static final String PREFIX = "bechdel_"; //start of the names in the Prometheus format
+    //upper bounds of the histogram buckets, in nanoseconds: about 1us, 4us, 16us, ... 17s, then everything else
+    private static final long[] BUCKETS = new long[13];
+    static{
+        for (int i = 0; i < BUCKETS.length; i++){
+            BUCKETS[i] = 1024L << (2 * i);
+        }
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean("bechdel.metrics");
+    private static ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private static ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+    /**
+     * Counter adds up a number, for example the number of rows read
+     */
+    public static class Counter
+    {
+        private String name;
+        private String help;
+        private LongAdder total = new LongAdder();
+
+        private Counter(String name, String help)
+        {
+            this.name = name;
+            this.help = help;
+        }
+
+        /**
+         * Method add adds n to the counter, if metrics are enabled
+         *
+         * @param n the number to add
+         */
+        public void add(long n){
+            if (enabled){
+                total.add(n);
+            }
+        }
+
+        /**
+         * Method increment adds 1 to the counter, if metrics are enabled
+         */
+        public void increment(){
+            if (enabled){
+                total.increment();
+            }
+        }
+
+        /**
+         * get() returns the total of the counter
+         *
+         * @return the total
+         */
+        public long get(){
+            return total.sum();
+        }
+    }
+
+    /**
+     * Timer keeps the times taken by something, for example a query
+     */
+    public static class Timer
+    {
+        private String name;
+        private String help;
+        private LongAdder count = new LongAdder();
+        private LongAdder totalNanos = new LongAdder();
+        private AtomicLong maxNanos = new AtomicLong();
+        private AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1); //the last one has no bound
+
+        private Timer(String name, String help)
+        {
+            this.name = name;
+            this.help = help;
+        }
+
+        /**
+         * Method stop records the time since start, a value returned by Metrics.start(). Nothing is recorded if
+         * start is 0, that is if metrics were disabled when it was returned.
+         *
+         * @param start the value of Metrics.start() when the timed code started
+         */
+        public void stop(long start){
+            if (start != 0){
+                record(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Method record records one time, if metrics are enabled
+         *
+         * @param nanos the time, in nanoseconds
+         */
+        public void record(long nanos){
+            if (!enabled){
+                return;
+            }
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            int i = 0;
+            while (i < BUCKETS.length && nanos > BUCKETS[i]){
+                i++;
+            }
+            buckets.incrementAndGet(i);
+        }
+
+        /**
+         * getCount() returns the number of times recorded
+         *
+         * @return number of times
+         */
+        public long getCount(){
+            return count.sum();
+        }
+
+        /**
+         * getTotalNanos() returns the sum of the times recorded, in nanoseconds
+         *
+         * @return total time
+         */
+        public long getTotalNanos(){
+            return totalNanos.sum();
+        }
+
+        /**
+         * getMaxNanos() returns the longest time recorded, in nanoseconds
+         *
+         * @return longest time
+         */
+        public long getMaxNanos(){
+            return maxNanos.get();
+        }
+    }
+
+    /**
+     * Method counter returns the counter with the given name, creating it the first time
+     *
+     * @param name the name, made of lower case letters, digits and '_'
+     * @param help what is counted, for the exported figures
+     * @return the counter
+     */
+    public static Counter counter(String name, String help){
+        return counters.computeIfAbsent(name, n -> new Counter(n, help));
+    }
+
+    /**
+     * Method timer returns the timer with the given name, creating it the first time
+     *
+     * @param name the name, made of lower case letters, digits and '_'
+     * @param help what is timed, for the exported figures
+     * @return the timer
+     */
+    public static Timer timer(String name, String help){
+        return timers.computeIfAbsent(name, n -> new Timer(n, help));
+    }
+
+    /**
+     * Method start returns the time to give to Timer.stop() when the timed code ends, or 0 if metrics are disabled
+     *
+     * @return the current time in nanoseconds, or 0
+     */
+    public static long start(){
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * isEnabled() returns whether metrics are recorded
+     *
+     * @return true if metrics are recorded
+     */
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Method setEnabled starts or stops recording metrics. The figures recorded so far are kept.
+     *
+     * @param on true to record metrics
+     */
+    public static void setEnabled(boolean on){
+        enabled = on;
+    }
+
+    /**
+     * Method reset sets every counter and timer back to 0
+     */
+    public static void reset(){
+        for (Counter c : counters.values()){
+            c.total.reset();
+        }
+        for (Timer t : timers.values()){
+            t.count.reset();
+            t.totalNanos.reset();
+            t.maxNanos.set(0);
+            for (int i = 0; i < t.buckets.length(); i++){
+                t.buckets.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Method toJson returns every counter and timer as a JSON object, with times in seconds:
+     * {"counters": {"name": total, ...}, "timers": {"name": {"count": n, "sum": s, "max": s,
+     * "buckets": {"0.000001024": n, ..., "+Inf": n}}, ...}}
+     * Bucket counts are for the times up to each bound, as in Prometheus.
+     *
+     * @return the JSON text
+     */
+    public static String toJson(){
+        StringBuilder json = new StringBuilder("{\"counters\": {");
+        String separator = "";
+        for (Counter c : new TreeMap<String, Counter>(counters).values()){
+            json.append(separator).append('"').append(c.name).append("\": ").append(c.get());
+            separator = ", ";
+        }
+        json.append("}, \"timers\": {");
+        separator = "";
+        for (Timer t : new TreeMap<String, Timer>(timers).values()){
+            json.append(separator).append('"').append(t.name).append("\": {\"count\": ").append(t.getCount())
+                .append(", \"sum\": ").append(seconds(t.getTotalNanos()))
+                .append(", \"max\": ").append(seconds(t.getMaxNanos())).append(", \"buckets\": {");
+            long cumulative = 0;
+            for (int i = 0; i <= BUCKETS.length; i++){
+                cumulative += t.buckets.get(i);
+                String bound = i < BUCKETS.length ? seconds(BUCKETS[i]) : "+Inf";
+                json.append(i > 0 ? ", " : "").append('"').append(bound).append("\": ").append(cumulative);
+            }
+            json.append("}}");
+            separator = ", ";
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Method toPrometheus returns every counter and timer in the text format of Prometheus. Counters are named
+     * PREFIX + name + "_total", and timers are histograms named PREFIX + name + "_seconds".
+     *
+     * @return the text
+     */
+    public static String toPrometheus(){
+        StringBuilder text = new StringBuilder();
+        for (Counter c : new TreeMap<String, Counter>(counters).values()){
+            String name = PREFIX + c.name + "_total";
+            text.append("# HELP ").append(name).append(' ').append(c.help).append('\n');
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(c.get()).append('\n');
+        }
+        for (Timer t : new TreeMap<String, Timer>(timers).values()){
+            String name = PREFIX + t.name + "_seconds";
+            text.append("# HELP ").append(name).append(' ').append(t.help).append('\n');
+            text.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i <= BUCKETS.length; i++){
+                cumulative += t.buckets.get(i);
+                String bound = i < BUCKETS.length ? seconds(BUCKETS[i]) : "+Inf";
+                text.append(name).append("_bucket{le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+            }
+            text.append(name).append("_sum ").append(seconds(t.getTotalNanos())).append('\n');
+            text.append(name).append("_count ").append(t.getCount()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String seconds(long nanos){
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * Method writeTo writes the figures to a file: as JSON if the name ends with ".json", otherwise in the text
+     * format of Prometheus (for example for the textfile collector of the node exporter). The file is written
+     * under another name first and then renamed, so it is never read half written.
+     *
+     * @param fileName the file
+     */
+    public static void writeTo(String fileName) throws IOException{
+        File file = new File(fileName).getAbsoluteFile();
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer out = new BufferedWriter(new FileWriter(temp))){
+            out.write(fileName.endsWith(".json") ? toJson() : toPrometheus());
+        }
+        if (!temp.renameTo(file)){
+            throw new IOException("Could not rename " + temp + " to " + file);
+        }
+    }
+}
@@ -4,26 +4,104 @@ import java.lang.Math;
 /**
  * Represents an object of type Movie.
  * A Movie object has a title, some Actors, and results for the twelve Bechdel tests.
+ * The methods that change a movie are not public: only the classes of the collection call them, on movies that are
+ * not yet in a published snapshot, so the movies a MovieCollection hands out cannot be changed.
  *
  * @author Miraya and Natasha [and Stella]
  * @version 15/12/22
  */
 public class Movie implements Comparable<Movie>
 {
+    //index of each test in the test results, as read from "nextBechdel_allTests.txt"
+    public static final int BECHDEL = 1;
+    public static final int PIERCE = 2;
+    public static final int LANDAU = 3;
+    public static final int FELDMAN = 4;
+    public static final int VILLAREAL = 5;
+    public static final int HAGEN = 6;
+    public static final int KO = 7;
+    public static final int VILLAROBOS = 8;
+    public static final int WAITHE = 9;
+    public static final int KOEZE_DOTTLE = 10;
+    public static final int UPHOLD = 11;
+    public static final int WHITE = 12;
+    public static final int REES_DAVIES = 13;
+
+    public static final String FEMALE = "Female"; //gender counted by getFemaleCount()
+    public static final String MALE = "Male"; //gender counted by getMaleCount()
+    public static final String LEADING = "Leading"; //type of role counted by getLeadCount()
+
     private String title;
-    private Hashtable<Actor, String> roles; //key = actor, value = type of role
-    private Vector<String> result; //test results 0 or 1
-    private final double minDiff = 0.0001; //for comparing double values
+    private static final int MIN_SLOT_TABLE = 8; //casts larger than this find actors through slotTable
+    private static final int CAST_REGISTRY_SIZE = 16; //room for actors in the registry of a movie created on its own
+    private ActorRegistry registry; //where the ids of the cast come from, the registry of the collection if any
+    private int[] actorIds; //ids of the actors in the cast, in the order they were added
+    private int[] slotTable; //open addressing table of (index in actorIds + 1) by actor id, null for small casts
+    private String[] roleTypes; //roleTypes[i] is the type of role of actor actorIds[i]
+    private int castSize; //number of actors in the cast
+    private int femaleCount; //actors of the cast whose gender is FEMALE
+    private int maleCount; //actors of the cast whose gender is MALE
+    private int leadCount; //actors of the cast with a LEADING role
+    private int femaleLeadCount; //FEMALE actors with a LEADING role
+    private String[] typeNames; //the different types of role in the cast, null if there are no actors yet
+    private int[] typeCounts; //typeCounts[i] is the number of roles of type typeNames[i]
+    private long passed; //bit i is set if test i was passed (result "0")
+    private long failed; //bit i is set if test i was failed (result "1")
+    private int numResults; //number of test results
+    private Hashtable<Integer, String> otherResults; //results that are not "0", "1" or empty, usually null
+    private static final ScoringModel FEMINIST = ScoringModel.feminist(); //weights of feministScore()
+    private double score; //feminist score, if scoreValid
+    private volatile boolean scoreValid; //false until the score is computed, and again whenever results or cast change
 
     /**
-     * Constructor for objects of class Movie. 
+     * Constructor for objects of class Movie. The movie has a registry of its own for the ids of its actors.
      */
     public Movie(String title)
     {
         // initialise instance variables
+        this(title, new ActorRegistry(CAST_REGISTRY_SIZE));
+    }
+
+    /**
+     * Constructor for objects of class Movie whose actors are interned in the given registry, for example the 
+     * registry of the CatalogSnapshot the movie is added to.
+     */
+    Movie(String title, ActorRegistry registry)
+    {
         this.title = title;
-        roles = new Hashtable<Actor, String>();
-        result = new Vector<String>(); 
+        this.registry = registry;
+        actorIds = new int[4];
+        roleTypes = new String[4];
+    }
+
+    /**
+     * Constructor for objects of class Movie that copies another movie: its title, its cast (the same Actor objects)
+     * and its test results. Changing the copy does not change the other movie.
+     */
+    public Movie(Movie other)
+    {
+        this.title = other.title;
+        this.registry = other.registry;
+        actorIds = other.actorIds.clone();
+        if (other.slotTable != null){
+            slotTable = other.slotTable.clone();
+        }
+        roleTypes = other.roleTypes.clone();
+        castSize = other.castSize;
+        femaleCount = other.femaleCount;
+        maleCount = other.maleCount;
+        leadCount = other.leadCount;
+        femaleLeadCount = other.femaleLeadCount;
+        if (other.typeNames != null){
+            typeNames = other.typeNames.clone();
+            typeCounts = other.typeCounts.clone();
+        }
+        passed = other.passed;
+        failed = other.failed;
+        numResults = other.numResults;
+        if (other.otherResults != null){
+            otherResults = new Hashtable<Integer, String>(other.otherResults);
+        }
     }
 
     /**
@@ -46,20 +124,328 @@ public class Movie implements Comparable<Movie>
      * @param line String representing the information of each Actor
      * @return The Actor that was just added to this movie
      */
-    public Actor addOneActor(String line){
-        String[] actorPieces = line.split(",");
-        String movieTitle = actorPieces[0].substring(1, actorPieces[0].length()-1); //removing quotation marks
-        if(movieTitle.equals(this.title)){
-            String name = actorPieces[1].substring(1, actorPieces[1].length()-1);
-            String gender = actorPieces[5].substring(1, actorPieces[5].length()-1);
-            String type = actorPieces[3].substring(1, actorPieces[3].length()-1);
-            Actor a = new Actor(name, gender);
-            roles.put(a, type); //adding to hashtable
-            return a;
+    Actor addOneActor(String line){
+        CastRow row = CastRow.parse(line);
+        if(row.getTitle().equals(this.title)){
+            return addActor(row.getActor(), row.getType());
         }
         return null;
     }
 
+    /**
+     * Method addActor adds an already created Actor to the actors of this movie, with the given type of role. The 
+     * actor is interned in the registry of the movie (see ActorRegistry), so the movie keeps the Actor object of the 
+     * registry, which is another object with the same name and gender that cannot be changed. If the actor is already in the cast, only the type of role 
+     * changes.
+     *
+     * @param a the Actor to add
+     * @param type the type of role, for example "Leading" or "Supporting"
+     * @return The Actor that was just added to this movie
+     */
+    Actor addActor(Actor a, String type){
+        int id = registry.intern(a);
+        addActor(id, type);
+        return registry.getActor(id);
+    }
+
+    /**
+     * Method addActor adds the actor with the given id in the registry of the movie to the actors of this movie, with 
+     * the given type of role. If the actor is already in the cast, only the type of role changes.
+     *
+     * @param id the id of the actor
+     * @param type the type of role
+     * @return true if the actor was not in the cast before
+     */
+    boolean addActor(int id, String type){
+        int i = indexOf(id);
+        boolean added = i < 0;
+        if (added){
+            if (castSize == actorIds.length){
+                actorIds = Arrays.copyOf(actorIds, castSize * 2);
+                roleTypes = Arrays.copyOf(roleTypes, castSize * 2);
+            }
+            i = castSize++;
+            actorIds[i] = id;
+            if (slotTable != null && castSize * 2 <= slotTable.length){
+                putSlot(id, i);
+            }
+            else if (castSize > MIN_SLOT_TABLE){
+                buildSlotTable();
+            }
+        }
+        else{
+            count(id, roleTypes[i], -1);
+        }
+        roleTypes[i] = type;
+        count(id, type, 1);
+        scoreValid = false;
+        return added;
+    }
+
+    /**
+     * Method removeActor removes an Actor from the actors of this movie.
+     *
+     * @param a the Actor to remove
+     * @return the type of role the actor had, or null if the actor was not in this movie
+     */
+    String removeActor(Actor a){
+        int id = registry.getId(a);
+        int i = id < 0 ? -1 : indexOf(id);
+        if (i < 0){
+            return null;
+        }
+        String type = roleTypes[i];
+        count(id, type, -1);
+        castSize--;
+        System.arraycopy(actorIds, i + 1, actorIds, i, castSize - i);
+        System.arraycopy(roleTypes, i + 1, roleTypes, i, castSize - i);
+        roleTypes[castSize] = null;
+        if (slotTable != null){
+            buildSlotTable(); //the actors after i moved
+        }
+        scoreValid = false;
+        return type;
+    }
+
+    /**
+     * Method count adds delta to the cast counters for one role
+     *
+     * @param id the id of the actor
+     * @param type the type of role
+     * @param delta 1 for a role that is added, -1 for a role that is removed
+     */
+    private void count(int id, String type, int delta){
+        String gender = registry.getActor(id).getGender();
+        boolean female = FEMALE.equals(gender);
+        boolean lead = LEADING.equals(type);
+        if (female){
+            femaleCount += delta;
+        }
+        else if (MALE.equals(gender)){
+            maleCount += delta;
+        }
+        if (lead){
+            leadCount += delta;
+            if (female){
+                femaleLeadCount += delta;
+            }
+        }
+        if (typeNames == null){
+            typeNames = new String[2];
+            typeCounts = new int[2];
+        }
+        int t = 0;
+        while (t < typeNames.length && typeNames[t] != null && !typeNames[t].equals(type)){
+            t++;
+        }
+        if (t == typeNames.length){
+            typeNames = Arrays.copyOf(typeNames, t * 2);
+            typeCounts = Arrays.copyOf(typeCounts, t * 2);
+        }
+        typeNames[t] = type;
+        typeCounts[t] += delta;
+    }
+
+    /**
+     * Method indexOf returns the index in actorIds of the actor with the given id, or -1. Small casts are scanned;
+     * larger ones use slotTable, so that building a cast of n actors takes time proportional to n.
+     */
+    private int indexOf(int id){
+        if (slotTable == null){
+            for (int i = 0; i < castSize; i++){
+                if (actorIds[i] == id){
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = slotTable.length - 1;
+        for (int h = hashSlot(id) & mask; slotTable[h] != 0; h = (h + 1) & mask){
+            if (actorIds[slotTable[h] - 1] == id){
+                return slotTable[h] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int hashSlot(int id){
+        return (id * 0x9E3779B1) >>> 7;
+    }
+
+    private void putSlot(int id, int i){
+        int mask = slotTable.length - 1;
+        int h = hashSlot(id) & mask;
+        while (slotTable[h] != 0){
+            h = (h + 1) & mask;
+        }
+        slotTable[h] = i + 1;
+    }
+
+    /**
+     * Method buildSlotTable builds slotTable again for the current cast, or drops it if the cast became small
+     */
+    private void buildSlotTable(){
+        if (castSize <= MIN_SLOT_TABLE){
+            slotTable = null;
+            return;
+        }
+        slotTable = new int[Integer.highestOneBit(castSize) * 4];
+        for (int i = 0; i < castSize; i++){
+            putSlot(actorIds[i], i);
+        }
+    }
+
+    /**
+     * Method useRegistry moves the cast of this movie to another registry, giving its actors the ids they have 
+     * there. Called by CatalogSnapshot.addMovie(), so every movie of a snapshot uses the registry of the snapshot.
+     *
+     * @param other the registry
+     */
+    void useRegistry(ActorRegistry other){
+        if (other == registry){
+            return;
+        }
+        for (int i = 0; i < castSize; i++){
+            actorIds[i] = other.intern(registry.getActor(actorIds[i]));
+        }
+        registry = other;
+        if (slotTable != null){
+            buildSlotTable();
+        }
+    }
+
+    /**
+     * getRegistry() returns the registry the ids of the cast come from
+     *
+     * @return the registry
+     */
+    ActorRegistry getRegistry(){
+        return registry;
+    }
+
+    /**
+     * Method hasActor returns whether an actor (same name and gender) is in the cast of this movie
+     *
+     * @param a the actor
+     * @return true if the actor is in the cast
+     */
+    public boolean hasActor(Actor a){
+        int id = registry.getId(a);
+        return id >= 0 && indexOf(id) >= 0;
+    }
+
+    /**
+     * getCastSize() returns the number of actors in the cast of this movie
+     *
+     * @return number of actors
+     */
+    public int getCastSize(){
+        return castSize;
+    }
+
+    /**
+     * getFemaleCount() returns the number of actors in the cast whose gender is FEMALE
+     *
+     * @return number of female actors
+     */
+    public int getFemaleCount(){
+        return femaleCount;
+    }
+
+    /**
+     * getMaleCount() returns the number of actors in the cast whose gender is MALE
+     *
+     * @return number of male actors
+     */
+    public int getMaleCount(){
+        return maleCount;
+    }
+
+    /**
+     * getOtherGenderCount() returns the number of actors in the cast whose gender is neither FEMALE nor MALE, for 
+     * example "Unknown"
+     *
+     * @return number of other actors
+     */
+    public int getOtherGenderCount(){
+        return castSize - femaleCount - maleCount;
+    }
+
+    /**
+     * getLeadCount() returns the number of actors in the cast with a LEADING role
+     *
+     * @return number of leading roles
+     */
+    public int getLeadCount(){
+        return leadCount;
+    }
+
+    /**
+     * getFemaleLeadCount() returns the number of FEMALE actors in the cast with a LEADING role
+     *
+     * @return number of female leading roles
+     */
+    public int getFemaleLeadCount(){
+        return femaleLeadCount;
+    }
+
+    /**
+     * Method getRoleTypeCount returns the number of actors in the cast with the given type of role
+     *
+     * @param type the type of role, for example "Supporting"
+     * @return number of roles of that type
+     */
+    public int getRoleTypeCount(String type){
+        if (typeNames != null){
+            for (int t = 0; t < typeNames.length && typeNames[t] != null; t++){
+                if (typeNames[t].equals(type)){
+                    return typeCounts[t];
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Method getActorId returns the id in the registry of the movie of the i-th actor of the cast, in the order the 
+     * actors were added
+     *
+     * @param i index in the cast, from 0 to getCastSize() - 1
+     * @return the id of the actor
+     */
+    public int getActorId(int i){
+        checkCastIndex(i);
+        return actorIds[i];
+    }
+
+    /**
+     * Method getCastMember returns the i-th actor of the cast, in the order the actors were added
+     *
+     * @param i index in the cast, from 0 to getCastSize() - 1
+     * @return the actor
+     */
+    public Actor getCastMember(int i){
+        checkCastIndex(i);
+        return registry.getActor(actorIds[i]);
+    }
+
+    /**
+     * Method getRoleType returns the type of role of the i-th actor of the cast
+     *
+     * @param i index in the cast, from 0 to getCastSize() - 1
+     * @return the type of role
+     */
+    public String getRoleType(int i){
+        checkCastIndex(i);
+        return roleTypes[i];
+    }
+
+    private void checkCastIndex(int i){
+        if (i < 0 || i >= castSize){
+            throw new ArrayIndexOutOfBoundsException(i + " >= " + castSize);
+        }
+    }
+
     /**
      * Method addAllActors Reads the input file ("nextBechdel_castGender.txt"), and adds all its Actors
      * to this movie. Each line in the movie has the following formatting: Input String has the following 
@@ -69,15 +455,18 @@ public class Movie implements Comparable<Movie>
      *
      * @param actorsFile The file containing information on each actor who acted in the movie.
      */
-    public void addAllActors(String actorsFile){
-        try{
-            Scanner reader = new Scanner(new File(actorsFile));
-            String line = reader.nextLine(); //discard header
-            while (reader.hasNext()){
-                line = reader.nextLine();
-                addOneActor(line);
+    void addAllActors(String actorsFile){
+        try (Reader in = new FileReader(actorsFile)){
+            CsvTokenizer row = new CsvTokenizer(in, actorsFile, CsvTokenizer.PRINT);
+            row.next(); //discard header
+            while (row.next()){
+                if (row.size() < CastRow.FIELDS){
+                    row.reject("a cast line has " + CastRow.FIELDS + " fields");
+                }
+                else if (row.fieldEquals(0, this.title)){
+                    addActor(registry.intern(row.getField(1), row.getField(5)), row.getField(3));
+                }
             }
-            reader.close();
         }
         catch(IOException ex){
             System.out.println(ex);
@@ -85,57 +474,236 @@ public class Movie implements Comparable<Movie>
     }
 
     /**
-     * getAllActors() is a getter for all actors
+     * getAllActors() returns the actors of this movie with their type of role. The cast is stored as ids of 
+     * an ActorRegistry, so the Hashtable is a new copy built from them, and changing it does not change this 
+     * movie; use addActor() and removeActor() instead, or getCastSize() and getCastMember() to read the cast 
+     * without building a Hashtable.
      *
-     * @return hashtable with all actor names
+     * @return hashtable with key = actor, value = type of role
      */
     public Hashtable<Actor,String> getAllActors()
     {
+        Hashtable<Actor, String> roles = new Hashtable<Actor, String>(Math.max(11, castSize * 2));
+        for (int i = 0; i < castSize; i++){
+            roles.put(registry.getActor(actorIds[i]), roleTypes[i]);
+        }
         return roles; 
     }
 
     /**
      * getActors returns a Linked List with all the actor names who played in this movie. It returns an 
-     * empty Linked List if there are no actors in the movie. This method uses the instance variable roles (hashtable)
-     * to populate the LinkedList. Therefore roles must be initialised and filled with values before calling this method. 
-
+     * empty Linked List if there are no actors in the movie. The names are in the order the actors were added.
      *
      * @return    linked list with all actor names
      */
     public LinkedList<String> getActors()
     {
         LinkedList<String> actors = new LinkedList<String>();
-        if (roles.size() > 0){
-            Enumeration<Actor> allNames = roles.keys(); //creating object to iterate through keys of hashtable 
-            for (int i = 0; i < roles.size(); i++){
-                String x = allNames.nextElement().getName();
-                actors.add(x);
-            }
+        for (int i = 0; i < castSize; i++){
+            actors.add(registry.getActor(actorIds[i]).getName());
         }
         return actors;
     }
 
     /**
-     * Method getAllTestResults returns a Vector with all the Bechdel test results for this movie
-
+     * Method getAllTestResults returns a Vector with all the Bechdel test results for this movie. The results are 
+     * stored as bits, so the Vector is a new copy built from them, and changing it does not change this movie.
      *
      * @return returns a Vector with all the Bechdel test results for this movie
-
      */
     public Vector<String> getAllTestResults(){
+        Vector<String> result = new Vector<String>(numResults);
+        for (int i = 0; i < numResults; i++){
+            result.add(testResult(i));
+        }
         return result;
     }
 
     /**
-     * Method setTestResults populates the test results vector with 0s and 1s. Each represents the result 
+     * Method testResult returns the result of the n-th test, as it was read from the file: "0" if it was 
+     * passed and "1" if it was failed. The first result read from "nextBechdel_allTests.txt" is empty.
+     *
+     * @param n index of the test
+     * @return the result of the n-th test
+     */
+    public String testResult(int n){
+        checkTestIndex(n);
+        if ((passed & (1L << n)) != 0){
+            return "0";
+        }
+        if ((failed & (1L << n)) != 0){
+            return "1";
+        }
+        if (otherResults == null || !otherResults.containsKey(n)){
+            return "";
+        }
+        return otherResults.get(n);
+    }
+
+    /**
+     * Method passedTest returns whether the movie passed the n-th test (its result is "0")
+     *
+     * @param n index of the test
+     * @return true if the n-th test was passed
+     */
+    public boolean passedTest(int n){
+        checkTestIndex(n);
+        return (passed & (1L << n)) != 0;
+    }
+
+    /**
+     * Method failedTest returns whether the movie failed the n-th test (its result is "1")
+     *
+     * @param n index of the test
+     * @return true if the n-th test was failed
+     */
+    public boolean failedTest(int n){
+        checkTestIndex(n);
+        return (failed & (1L << n)) != 0;
+    }
+
+    /**
+     * getPassedMask() returns the tests passed by this movie as bits: bit n is set if the n-th test was passed.
+     * A movie passed at least one of a group of tests if (getPassedMask() & mask) != 0.
+     *
+     * @return the passed tests as a bit mask
+     */
+    public long getPassedMask(){
+        return passed;
+    }
+
+    /**
+     * getFailedMask() returns the tests failed by this movie as bits: bit n is set if the n-th test was failed.
+     *
+     * @return the failed tests as a bit mask
+     */
+    public long getFailedMask(){
+        return failed;
+    }
+
+    /**
+     * getNumTestResults() returns the number of test results of this movie
+     *
+     * @return number of test results
+     */
+    public int getNumTestResults(){
+        return numResults;
+    }
+
+    /**
+     * Method setTestResults populates the test results with 0s and 1s. Each represents the result 
      * of the corresponding test on the movie. This information will be read from the file "nextBechdel_allTests.txt"
+     * A movie can have at most 64 test results.
      *
      * @param results string consisting of 0s and 1s. Each of these values denotes the result of the corresponding test on the movie
      */
-    public void setTestResults(String results){
-        String[] splitResults = results.split(","); //test results separated by commas in file
-        for(int i = 0; i < splitResults.length; i++){
-            result.add(splitResults[i]);
+    void setTestResults(String results){
+        CsvTokenizer row = CsvTokenizer.lineTokenizer(); //test results separated by commas in file
+        if (!row.parse(results)){
+            throw new IllegalArgumentException(row.getError() + ": " + results);
+        }
+        setTestResults(row, -1);
+    }
+
+    /**
+     * Method setTestResults adds the test results of a row of the test results file, which are the fields after 
+     * the title. As in the file, where the title is the first column, the title counts as an empty first result, 
+     * so that results have the index of their column (Movie.BECHDEL is 1). Empty fields at the end of the row are 
+     * not results, as with String.split().
+     *
+     * @param row the row, already read
+     * @param titleField index of the field with the title, or -1 if every field is a result
+     */
+    void setTestResults(CsvTokenizer row, int titleField){
+        int last = row.size() - 1;
+        while (last > titleField && row.getFieldLength(last) == 0){
+            last--;
+        }
+        if (numResults + last - Math.max(titleField, 0) + 1 > 64){
+            throw new IllegalArgumentException("A movie can have at most 64 test results: " + (last + 1));
+        }
+        for (int i = Math.max(titleField, 0); i <= last; i++){
+            if (i == titleField){
+                //counts as an empty result
+            }
+            else if (row.getFieldLength(i) == 1 && row.fieldEquals(i, "0")){
+                passed |= 1L << numResults;
+            }
+            else if (row.getFieldLength(i) == 1 && row.fieldEquals(i, "1")){
+                failed |= 1L << numResults;
+            }
+            else if (row.getFieldLength(i) > 0){
+                if (otherResults == null){
+                    otherResults = new Hashtable<Integer, String>();
+                }
+                otherResults.put(numResults, row.getField(i));
+            }
+            numResults++;
+        }
+        scoreValid = false;
+    }
+
+    /**
+     * Method replaceTestResults removes all the test results of this movie and sets the given ones instead.
+     *
+     * @param results string consisting of 0s and 1s, as for setTestResults()
+     */
+    void replaceTestResults(String results){
+        passed = 0;
+        failed = 0;
+        numResults = 0;
+        otherResults = null;
+        setTestResults(results);
+    }
+
+    /**
+     * Method replaceTestResults removes all the test results of this movie and sets the ones of a row instead, as 
+     * setTestResults(row, titleField) does.
+     *
+     * @param row the row, already read
+     * @param titleField index of the field with the title, or -1 if every field is a result
+     */
+    void replaceTestResults(CsvTokenizer row, int titleField){
+        passed = 0;
+        failed = 0;
+        numResults = 0;
+        otherResults = null;
+        setTestResults(row, titleField);
+    }
+
+    /**
+     * Method replaceTestResults removes all the test results of this movie and sets those of another movie instead
+     *
+     * @param other the movie whose results are copied
+     */
+    void replaceTestResults(Movie other){
+        passed = other.passed;
+        failed = other.failed;
+        numResults = other.numResults;
+        otherResults = other.otherResults == null ? null : new Hashtable<Integer, String>(other.otherResults);
+        scoreValid = false;
+    }
+
+    /**
+     * Method restoreTestResults replaces the test results of this movie with ones in the form they are stored in, 
+     * for a movie that is loaded from a snapshot file (see SnapshotFile).
+     *
+     * @param passed the passed tests as bits
+     * @param failed the failed tests as bits
+     * @param numResults the number of results
+     * @param otherResults results that are not "0", "1" or empty, or null if there are none
+     */
+    void restoreTestResults(long passed, long failed, int numResults, Hashtable<Integer, String> otherResults){
+        this.passed = passed;
+        this.failed = failed;
+        this.numResults = numResults;
+        this.otherResults = otherResults;
+        scoreValid = false;
+    }
+
+    private void checkTestIndex(int n){
+        if (n < 0 || n >= numResults){
+            throw new ArrayIndexOutOfBoundsException(n + " >= " + numResults);
         }
     }
 
@@ -146,7 +714,7 @@ public class Movie implements Comparable<Movie>
      * @return String returns a string representation of this movie
      */
     public String toString(){
-        return "Movie: " + title + "\t" + "Number of actors: " + roles.size();
+        return "Movie: " + title + "\t" + "Number of actors: " + castSize;
     }
 
     /**
@@ -163,36 +731,82 @@ public class Movie implements Comparable<Movie>
         }
     }
 
+    /**
+     * Returns a hash code of this movie, made from its title, so that movies that are equal have the same hash code.
+     * The old movies and their copies in a new snapshot have the same title, so maps that must tell them apart use
+     * IdentityHashMap (see CatalogSnapshot.copyForChanges()).
+     * 
+     * @return the hash code of the title
+     */
+    public int hashCode() {
+        return title.hashCode();
+    }
+
     /**
      * feministScore() is a method that calculates the feminist score for each movie. The following
      * tests have been used to calculate the score: White Test, Feldman Test, Ko Test, Pierce Test. Tests have been weighted 
      * differently based on which aspects were more important in determining if a movie is 'feminist'
-     * or not. This method calls 2 helper methods, numTestsPassed() and femaleActorCount().
+     * or not. The score adds the weights of the tests passed, the fraction of tests passed (numTestsPassed()) and 
+     * the fraction of female actors (femaleActorCount()); the weights are those of ScoringModel.feminist().
+     * The score is calculated once and kept until the test results or the cast change through this class 
+     * (setTestResults(), addOneActor(), addActor(), removeActor()). The actors of the cast cannot be changed (see 
+     * ActorRegistry).
      * 
      * @return double the calculated feminist score for the movie
      */
     public double feministScore(){
-        double count = 0;
-        String pierce = this.result.elementAt(2);
-        if(pierce.equals("0")){
-            count += 2;
-        }
-        String feldman = this.result.elementAt(4);
-        if(feldman.equals("0")){
-            count += 4;
-        }
-        String ko = this.result.elementAt(7);
-        if(ko.equals("0")){
-            count += 1;
-        } else {
-            count -= 0.5; //penalty for not passing Ko
+        if (!scoreValid){
+            score = computeFeministScore();
+            scoreValid = true;
         }
-        String white = this.result.elementAt(12);
-        if(white.equals("0")){
-            count += 3;
+        return score;
+    }
+
+    /**
+     * Method scoreChanged tells this movie that its actors were changed without going through its methods, so that
+     * its feminist score is calculated again the next time it is needed.
+     */
+    void scoreChanged(){
+        scoreValid = false;
+    }
+
+    /**
+     * Method castChanged counts the cast counters (getFemaleCount() and the others) again, and makes the feminist 
+     * score be calculated again the next time it is needed. The actors of the cast cannot be changed with their 
+     * setters any more, so this is never needed for them.
+     */
+    void castChanged(){
+        femaleCount = 0;
+        maleCount = 0;
+        leadCount = 0;
+        femaleLeadCount = 0;
+        typeNames = null;
+        typeCounts = null;
+        for (int i = 0; i < castSize; i++){
+            count(actorIds[i], roleTypes[i], 1);
         }
-        count += (this.numTestsPassed() + this.femaleActorCount());
-        return count;
+        scoreValid = false;
+    }
+
+    /**
+     * Method restoreScore sets the feminist score of this movie to one that was calculated before, with the same 
+     * test results and cast, for a movie that is loaded from a snapshot file (see SnapshotFile).
+     *
+     * @param score the feminist score
+     */
+    void restoreScore(double score){
+        this.score = score;
+        scoreValid = true;
+    }
+
+    /**
+     * Method computeFeministScore calculates the feminist score from the test results and the cast, with the 
+     * weights of ScoringModel.feminist().
+     *
+     * @return double the feminist score
+     */
+    private double computeFeministScore(){
+        return FEMINIST.score(passed, femaleActorCount(), castSize);
     }
 
     /**
@@ -201,25 +815,21 @@ public class Movie implements Comparable<Movie>
      * -1. If the scores are equal, the method returns a positive integer, negative integer, or 0 depending on whether this movie's title 
      * comes lexographically after, before or same as the other movie title. If the feminist score for 
      * a movie cannot be calculated, then the movies are only compared based on the alphabetical order of the titles. 
-     * Since this method compares the values of doubles, it uses minDiff to ensure accurate comparison. 
+     * The scores are compared as in MovieRanking.compareScores(). 
      *
      * @param other the Movie to be compared to this Movie
      * @return int 0, negative integer or positive integer. 
      */
     public int compareTo(Movie other){
         //if feminist score cannot be calculated
-        if (this.roles.size() == 0 || other.roles.size() == 0){
+        if (this.castSize == 0 || other.castSize == 0){
             return this.title.compareTo(other.title);
         }
-        double thisScore = this.feministScore();
-        double otherScore = other.feministScore();
-        if (Math.abs(thisScore - otherScore) <= minDiff) {
+        int byScore = MovieRanking.compareScores(other.feministScore(), this.feministScore()); //best ranked first
+        if (byScore == 0) {
             return this.title.compareTo(other.title);
         }
-        else if(thisScore - otherScore > minDiff){
-            return 1;
-        }
-        return -1;
+        return byScore;
     }
 
     /**
@@ -229,31 +839,21 @@ public class Movie implements Comparable<Movie>
      * @return  double   fraction of number of tests passed divided by total number of tests
      */
     public double numTestsPassed(){
-        double counter = 0;
-        for(int i = 0; i < result.size();i++){
-            if(result.elementAt(i).equals("0")){
-                counter++;
-            }
-        }
+        double counter = Long.bitCount(passed);
         double fraction = counter/13;
         return fraction;
     }
 
     /**
      * Method femaleActorCount is a helper method for feministScore(). This method finds the number 
-     * of female actors in the movie's cast and divides this by the total number of actors. 
+     * of female actors in the movie's cast and divides this by the total number of actors. The number of female 
+     * actors is kept up to date as actors are added and removed, so nothing is counted here.
      *
      * @return double    fraction of number of female actors divided by total number of actors
      */
     public double femaleActorCount(){
-        Enumeration<Actor> allActors = roles.keys(); //creating object to iterate through keys of hashtable
-        double count = 0;
-        for (int i = 0; i < roles.size(); i++){
-            if(allActors.nextElement().getGender().equals("Female")){
-                count++;
-            }
-        }
-        return count/roles.size();
+        double count = femaleCount;
+        return count/castSize;
     }
 
     /**
@@ -0,0 +1,143 @@
+import java.io.*;
+import java.util.LinkedList;
+
+/**
+ * MovieBenchmark times the main operations of the project on collections built from generated files of growing
+ * size (see MovieDataGenerator): building a MovieCollection with each reader and from a snapshot file, every
+ * findAllMoviesPassed* query (through findAllMovies(), which does not keep answers, so that each run looks at the
+ * movies; a query answered from the QueryCache is timed on its own line), feministScore(), compareTo(),
+ * rankMovies() and topK(). Every operation is run a few times to warm up before it is timed, and the average time
+ * per run is printed. The files are the same on every run, so results can be compared between versions of the code.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class MovieBenchmark
+{
+    private static final int CAST_SIZE = 10;
+    private static final int WARMUP_RUNS = 3;
+    private static final int MIN_RUNS = 5;
+    private static final long MIN_NANOS = 200000000L; //keep running an operation for at least 0.2s
+
+    private static volatile Object sink; //results are stored here so that the operations are not optimised away
+
+    /**
+     * Operation is one timed operation
+     */
+    private interface Operation
+    {
+        Object run();
+    }
+
+    /**
+     * Method time runs an operation a few times to warm up and then enough times to last MIN_NANOS, and prints the
+     * average time per run.
+     *
+     * @param name the name printed with the time
+     * @param size the number of movies
+     * @param op the operation
+     * @return the average time per run, in nanoseconds
+     */
+    private static long time(String name, int size, Operation op){
+        for (int i = 0; i < WARMUP_RUNS; i++){
+            sink = op.run();
+        }
+        int runs = 0;
+        long start = System.nanoTime();
+        long elapsed = 0;
+        while (runs < MIN_RUNS || elapsed < MIN_NANOS){
+            sink = op.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        }
+        long average = elapsed / runs;
+        System.out.println(size + "\t" + name + "\t" + format(average));
+        return average;
+    }
+
+    private static String format(long nanos){
+        if (nanos >= 1000000){
+            return (nanos / 1000) / 1000.0 + " ms";
+        }
+        if (nanos >= 1000){
+            return nanos / 1000.0 + " us";
+        }
+        return nanos + " ns";
+    }
+
+    /**
+     * Method benchmark generates files with the given number of movies and times every operation on them.
+     *
+     * @param dir the directory for the generated files
+     * @param size the number of movies
+     */
+    public static void benchmark(File dir, final int size) throws IOException{
+        File tests = new File(dir, "bench_allTests_" + size + ".txt");
+        File casts = new File(dir, "bench_castGender_" + size + ".txt");
+        MovieDataGenerator g = new MovieDataGenerator(size, CAST_SIZE, 42);
+        g.writeTests(tests.getPath());
+        g.writeCasts(casts.getPath());
+        final String t = tests.getPath();
+        final String c = casts.getPath();
+
+        time("load (sequential)", size, () -> new MovieCollection(t, c));
+        time("load (parallel)", size, () -> MovieCollection.loadInParallel(t, c));
+        time("load (mapped)", size, () -> MovieCollection.loadMapped(t, c));
+        File snapshot = new File(dir, "bench_snapshot_" + size + ".bin");
+        new MovieCollection(t, c).saveSnapshot(snapshot.getPath());
+        final String sn = snapshot.getPath();
+        time("load (snapshot)", size, () -> MovieCollection.loadSnapshot(sn, t, c));
+
+        final MovieCollection collection = new MovieCollection(t, c);
+        final MovieQuery porL = MovieQuery.passed(Movie.PIERCE).or(MovieQuery.passed(Movie.LANDAU));
+        final MovieQuery wNotRD = MovieQuery.passed(Movie.WHITE).and(MovieQuery.failed(Movie.REES_DAVIES));
+        time("findAllMovies(passed(7))", size, () -> collection.findAllMovies(MovieQuery.passed(7)));
+        time("findAllMovies(passed(BECHDEL))", size, () -> collection.findAllMovies(MovieQuery.passed(Movie.BECHDEL)));
+        time("findAllMovies(PIERCE or LANDAU)", size, () -> collection.findAllMovies(porL));
+        time("findAllMovies(WHITE and not REES_DAVIES)", size, () -> collection.findAllMovies(wNotRD));
+        time("findAllMoviesPassedPorL() (cache hit)", size, () -> collection.findAllMoviesPassedPorL());
+
+        final Movie[] movies = collection.getMovies().toArray(new Movie[0]);
+        time("feministScore() (all movies, uncached)", size, () -> {
+            double total = 0;
+            for (Movie m : movies){
+                m.scoreChanged();
+                total += m.feministScore();
+            }
+            return total;
+        });
+        time("compareTo() (all neighbours)", size, () -> {
+            int total = 0;
+            for (int i = 1; i < movies.length; i++){
+                total += movies[i - 1].compareTo(movies[i]);
+            }
+            return total;
+        });
+        time("rankMovies()", size, () -> collection.rankMovies());
+        time("topK(100)", size, () -> collection.topK(100));
+
+        tests.delete();
+        casts.delete();
+        snapshot.delete();
+    }
+
+    /**
+     * Method main runs the benchmarks. Arguments: [directory for the generated files] [numbers of movies...]
+     * By default the files go to the temporary directory, with 1000, 4000 and 16000 movies.
+     *
+     */
+    public static void main(String[] args) throws IOException{
+        File dir = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        int[] sizes = {1000, 4000, 16000};
+        if (args.length > 1){
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++){
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println("movies\toperation\ttime per run");
+        for (int i = 0; i < sizes.length; i++){
+            benchmark(dir, sizes[i]);
+        }
+    }
+}
@@ -1,6 +1,11 @@
 import java.util.LinkedList;
-import java.util.Scanner;
+import java.util.List;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Arrays;
 import java.io.*;
+import java.nio.charset.Charset;
 import javafoundations.*;
 import java.util.NoSuchElementException;
 
@@ -8,6 +13,9 @@ import java.util.NoSuchElementException;
  * MovieCollection is a class that represents an object that is a collection of Movie objects. A MovieCollection 
  * has a list of Movies and a list of Actors. 
  * It contains methods that are applied to MovieCollections. 
+ * The movies, actors and indexes are kept in a CatalogSnapshot that is never changed once the collection publishes 
+ * it. Changes (applyDelta()) build a new snapshot from a copy and then replace the old one in a single step, so any 
+ * number of threads can query the collection at the same time, without locks, while it is being changed. 
  * 
  * @author Miraya and Natasha
  * @version 15/12/22
@@ -15,46 +23,115 @@ import java.util.NoSuchElementException;
 public class MovieCollection
 {
     // instance variables
-    private LinkedList<Movie> allMovies;
-    private LinkedList<Actor> allActors;
+    public static final int CACHE_SIZE = 64; //number of answers kept by answer()
+    public static final double MAX_REJECTED_SHARE = 0.1; //reload() fails if more of the lines of a file are malformed
+    private volatile CatalogSnapshot snapshot; //movies, actors and indexes; replaced as a whole, never changed
+    private QueryCache cache = new QueryCache(CACHE_SIZE); //answers of answer(), forgotten when snapshot changes
     private String testFile;
     private String castFile;
+    private CsvTokenizer.RejectHandler rejects; //receives the malformed lines of the files
+    private int shard; //if shards > 1, only the movies with shardOf(title, shards) == shard are read
+    private int shards = 1;
+    private int[] positions; //for a shard, positions[i] is the position of its i-th movie among all movies of the file
+
+    //metrics of loading, changing and ranking the collection (see Metrics), recorded only when metrics are enabled.
+    //The row counters mean the same for every way of loading: rows after the header, without blank lines, and the
+    //parsed rows include the rejected ones
+    private static final Metrics.Timer LOAD_TESTS = Metrics.timer("load_tests", "Time to read the test results file");
+    private static final Metrics.Timer LOAD_CASTS = Metrics.timer("load_casts", 
+        "Time to read the cast file and join it to the movies");
+    private static final Metrics.Timer BUILD_INDEXES = Metrics.timer("build_indexes", 
+        "Time to build the indexes and the ranking");
+    private static final Metrics.Timer LOAD_SNAPSHOT = Metrics.timer("load_snapshot", "Time to load a snapshot file");
+    private static final Metrics.Timer APPLY_DELTA = Metrics.timer("apply_delta", "Time to apply a file of changes");
+    private static final Metrics.Timer RANK = Metrics.timer("rank", "Time to read movies from the ranking");
+    private static final Metrics.Counter TESTS_PARSED = Metrics.counter("tests_rows_parsed", 
+        "Rows of the test results file read, including rejected ones");
+    private static final Metrics.Counter TESTS_REJECTED = Metrics.counter("tests_rows_rejected", 
+        "Rows of the test results file skipped because they are malformed");
+    private static final Metrics.Counter CASTS_PARSED = Metrics.counter("cast_rows_parsed", 
+        "Rows of the cast file read, including rejected ones");
+    private static final Metrics.Counter CASTS_REJECTED = Metrics.counter("cast_rows_rejected", 
+        "Rows of the cast file skipped because they are malformed");
+    private static final Metrics.Counter CASTS_UNMATCHED = Metrics.counter("cast_rows_unmatched", 
+        "Rows of the cast file skipped because their movie has no test results");
 
     /**
      * Constructor for objects of class MovieCollection. Calls readMovies() and readCasts() methods to populate the instance variables. 
      */
     public MovieCollection(String testsFileName, String castsFileName)
+    {
+        this(testsFileName, castsFileName, CsvTokenizer.PRINT, true);
+    }
+
+    /**
+     * Constructor for objects of class MovieCollection. Malformed lines of the files are skipped and handed to 
+     * rejects, with their line number, instead of being printed.
+     */
+    public MovieCollection(String testsFileName, String castsFileName, CsvTokenizer.RejectHandler rejects)
+    {
+        this(testsFileName, castsFileName, rejects, true);
+    }
+
+    /**
+     * Constructor for objects of class MovieCollection. If read is true the files are read line by line with 
+     * readMovies() and readCasts(), otherwise the collection is left empty for one of the other readers to fill.
+     */
+    private MovieCollection(String testsFileName, String castsFileName, CsvTokenizer.RejectHandler rejects, 
+                            boolean read)
     {
         // initialising instance variables
-        allMovies = new LinkedList<Movie>();
-        allActors = new LinkedList<Actor>();
         this.testFile = testsFileName;
         this.castFile = castsFileName;
-        this.readMovies();
-        this.readCasts();
+        this.rejects = rejects;
+        if (read){
+            CatalogSnapshot building = new CatalogSnapshot();
+            try{
+                this.readMovies(building);
+                this.readCasts(building);
+            }
+            catch(IOException ex1){
+                System.out.println(ex1);
+            }
+            catch (NoSuchElementException ex2){
+                System.out.println(ex2);
+            }
+            buildIndexes(building);
+            this.snapshot = building;
+        }
     }
 
     /**
-     * Method readMovies Reads the input file, and uses its first column (movie title) to create all 
-     * movie objects. Adds the included information on the Bechdel test results to each movie. It then adds the movie 
-     * to the LinkedList of Movies. 
-     * This program will throw an IOException if the file is not found. This program will throw a NoSuchElementException 
-     * if the file has no lines. If the file has only one line, the method will not add any movies to the allMovies LinkedList. 
+     * Method loadInParallel creates a MovieCollection whose files are split into chunks and parsed on all cores
+     * (see ParallelLoader). The result is the same as the one of the constructor, which reads one line at a time.
      *
+     * @param testsFileName the test results file
+     * @param castsFileName the cast file
+     * @return a MovieCollection with the movies and actors of both files
      */
-    private void readMovies(){
+    public static MovieCollection loadInParallel(String testsFileName, String castsFileName){
+        MovieCollection collection = new MovieCollection(testsFileName, castsFileName, CsvTokenizer.PRINT, false);
+        CatalogSnapshot building = new CatalogSnapshot();
+        collection.readInParallel(building, new ParallelLoader());
+        buildIndexes(building);
+        collection.snapshot = building;
+        return collection;
+    }
+
+    /**
+     * Method loadMapped creates a MovieCollection whose cast file is read through a memory mapped view of the file
+     * (see MappedCastReader) instead of a Scanner. This creates far fewer objects per line, and the cast file does 
+     * not need to fit in memory. The test results file is read with readMovies().
+     *
+     * @param testsFileName the test results file
+     * @param castsFileName the cast file
+     * @return a MovieCollection with the movies and actors of both files
+     */
+    public static MovieCollection loadMapped(String testsFileName, String castsFileName){
+        MovieCollection collection = new MovieCollection(testsFileName, castsFileName, CsvTokenizer.PRINT, false);
+        CatalogSnapshot building = new CatalogSnapshot();
         try{
-            Scanner reader = new Scanner(new File(this.testFile));
-            String line = reader.nextLine(); //discard header
-            while (reader.hasNext()){
-                line = reader.nextLine();
-                String[] moviePieces = line.split(","); //file contents are separated by commas
-                Movie m = new Movie(moviePieces[0]); //getting title
-                int length = moviePieces[0].length(); 
-                m.setTestResults(line.substring(length, line.length())); //calling setTestResults using the string with test results
-                allMovies.add(m);
-            }
-            reader.close();
+            collection.readMovies(building);
         }
         catch(IOException ex1){
             System.out.println(ex1);
@@ -62,6 +139,179 @@ public class MovieCollection
         catch (NoSuchElementException ex2){
             System.out.println(ex2);
         }
+        collection.readMappedCasts(building);
+        buildIndexes(building);
+        collection.snapshot = building;
+        return collection;
+    }
+
+    /**
+     * Method loadShard creates a MovieCollection with only the movies of one shard: the ones whose title has 
+     * shardOf(title, shards) == shard, with their casts. Each movie remembers its position among all the movies of 
+     * the file (see getShardPositions()), so that the answers of all the shards can be put back in the order of the 
+     * whole collection (see ShardedCollection). A shard is not searched by name, so its NameIndexes are not built.
+     *
+     * @param testsFileName the test results file
+     * @param castsFileName the cast file
+     * @param shard the shard, from 0 to shards - 1
+     * @param shards the number of shards
+     * @return a MovieCollection with the movies and actors of the shard
+     */
+    static MovieCollection loadShard(String testsFileName, String castsFileName, int shard, int shards){
+        MovieCollection collection = new MovieCollection(testsFileName, castsFileName, CsvTokenizer.PRINT, false);
+        collection.shard = shard;
+        collection.shards = shards;
+        collection.positions = new int[16];
+        CatalogSnapshot building = new CatalogSnapshot();
+        try{
+            collection.readMovies(building);
+            collection.readCasts(building);
+        }
+        catch(IOException ex1){
+            System.out.println(ex1);
+        }
+        catch (NoSuchElementException ex2){
+            System.out.println(ex2);
+        }
+        buildIndexes(building, false); //shards are not searched by name
+        collection.snapshot = building;
+        return collection;
+    }
+
+    /**
+     * Method shardOf returns the shard of a movie, from its title
+     *
+     * @param title the title of the movie
+     * @param shards the number of shards
+     * @return the shard, from 0 to shards - 1
+     */
+    static int shardOf(String title, int shards){
+        return Math.floorMod(title.hashCode(), shards);
+    }
+
+    /**
+     * Method getShardPositions returns, for a collection made by loadShard(), the position of every movie of 
+     * getMovies() among all the movies of the file. The array is shared and must not be changed.
+     *
+     * @return the positions, in the order of getMovies(), or null if the collection is not a shard
+     */
+    int[] getShardPositions(){
+        return positions;
+    }
+
+    /**
+     * Method loadSnapshot creates a MovieCollection from a snapshot file written by saveSnapshot() (see 
+     * SnapshotFile), which is much faster than reading the text files. If the snapshot file cannot be loaded, 
+     * because it is missing, damaged or of another format version, the error is printed and the text files are 
+     * read instead.
+     *
+     * @param snapshotFileName the snapshot file
+     * @param testsFileName the test results file, read if the snapshot cannot be loaded
+     * @param castsFileName the cast file, read if the snapshot cannot be loaded
+     * @return a MovieCollection with the movies and actors of the snapshot or of the text files
+     */
+    public static MovieCollection loadSnapshot(String snapshotFileName, String testsFileName, String castsFileName){
+        try{
+            long start = Metrics.start();
+            MovieCollection collection = new MovieCollection(testsFileName, castsFileName, CsvTokenizer.PRINT, false);
+            collection.snapshot = SnapshotFile.load(snapshotFileName);
+            LOAD_SNAPSHOT.stop(start);
+            return collection;
+        }
+        catch(IOException ex1){
+            System.out.println(ex1);
+        }
+        return new MovieCollection(testsFileName, castsFileName);
+    }
+
+    /**
+     * Method saveSnapshot saves the current movies, actors, test results and feminist scores of this collection to 
+     * a snapshot file that loadSnapshot() can read. This program will print an IOException if the file cannot be 
+     * written.
+     *
+     * @param snapshotFileName the snapshot file
+     */
+    public void saveSnapshot(String snapshotFileName){
+        try{
+            SnapshotFile.save(snapshot, snapshotFileName);
+        }
+        catch(IOException ex1){
+            System.out.println(ex1);
+        }
+    }
+
+    /**
+     * Method buildIndexes builds the indexes and the ranking of a snapshot once all its movies and actors are added
+     *
+     * @param building the snapshot
+     */
+    private static void buildIndexes(CatalogSnapshot building){
+        buildIndexes(building, true);
+    }
+
+    /**
+     * Method buildIndexes builds the indexes and the ranking of a snapshot once all its movies and actors are added,
+     * and the NameIndexes if it will be searched by name
+     *
+     * @param building the snapshot
+     * @param searchable true to build the NameIndexes
+     */
+    private static void buildIndexes(CatalogSnapshot building, boolean searchable){
+        long start = Metrics.start();
+        building.buildIndexes(searchable);
+        BUILD_INDEXES.stop(start);
+    }
+
+    /**
+     * Method readMovies Reads the input file, and uses its first column (movie title) to create all 
+     * movie objects. Adds the included information on the Bechdel test results to each movie. It then adds the movie 
+     * to the LinkedList of Movies. 
+     * The lines are split with a CsvTokenizer, so titles in quotes may contain commas. Lines that are malformed, or 
+     * that have more than 64 test results, are skipped and handed to the collection's RejectHandler.
+     * This program will throw an IOException if the file is not found. This program will throw a NoSuchElementException 
+     * if the file has no lines. If the file has only one line, the method will not add any movies to the allMovies LinkedList. 
+     *
+     * @param building the snapshot the movies are added to
+     * @return the number of lines read (without the header and blank lines) and the number of them rejected
+     */
+    private int[] readMovies(CatalogSnapshot building) throws IOException{
+        long start = Metrics.start();
+        try (Reader in = new FileReader(this.testFile)){
+            CsvTokenizer row = new CsvTokenizer(in, this.testFile, this.rejects);
+            if (!row.next()){ //discard header
+                throw new NoSuchElementException(this.testFile + " has no lines");
+            }
+            int position = 0; //of the movie among all the movies of the file
+            int kept = 0;
+            while (row.next()){
+                Movie m = new Movie(row.getField(0), building.getRegistry()); //getting title
+                try{
+                    m.setTestResults(row, 0); //the other fields are the test results
+                }
+                catch (IllegalArgumentException ex){
+                    row.reject(ex.getMessage());
+                    continue;
+                }
+                if (shards > 1 && shardOf(m.getTitle(), shards) != shard){
+                    position++; //a movie of another shard
+                    continue;
+                }
+                if (positions != null){
+                    if (kept == positions.length){
+                        positions = Arrays.copyOf(positions, kept * 2);
+                    }
+                    positions[kept++] = position;
+                }
+                position++;
+                building.addMovie(m);
+            }
+            TESTS_PARSED.add(row.getRecords() - 1);
+            TESTS_REJECTED.add(row.getRejected());
+            return new int[] {row.getRecords() - 1, row.getRejected()};
+        }
+        finally{
+            LOAD_TESTS.stop(start);
+        }
     }
 
     /**
@@ -70,32 +320,179 @@ public class MovieCollection
      * Ricky Dillon","Aspen Heitz","Supporting","18","Male". It creates an Actor using this information and adds it to 
      * the LinkedList allActors. If many movies have the same actors, the actor is added to the Actor LinkedList only once. 
      * If a movie does not have any test results it is ignored.
+     * Each line is matched to its movie through the snapshot's title index, and repeated actors are found through a 
+     * hashtable, so the file is read in a single pass with a constant amount of work per line. The lines are split 
+     * with a CsvTokenizer, which reuses its buffers, and the title and type of role of the previous line are reused 
+     * when they are the same, so a line only creates the Strings of the actor. Lines that are malformed or have 
+     * fewer than six fields are skipped and handed to the collection's RejectHandler.
      * This program will throw an IOException if the file is not found. This program will throw a NoSuchElementException 
      * if the file has no lines. If the file has only one line, the method will not add any actors to the allActors LinkedList.
      *
+     * @param building the snapshot the actors are added to
+     * @return the number of lines read (without the header and blank lines) and the number of them rejected
+     */
+    private int[] readCasts(CatalogSnapshot building) throws IOException{
+        long start = Metrics.start();
+        try (Reader in = new FileReader(this.castFile)){
+            CsvTokenizer row = new CsvTokenizer(in, this.castFile, this.rejects);
+            if (!row.next()){ //discard header
+                throw new NoSuchElementException(this.castFile + " has no lines");
+            }
+            String title = null;
+            String type = null;
+            Movie m = null;
+            while (row.next()){
+                if (row.size() < CastRow.FIELDS){
+                    row.reject("a cast line has " + CastRow.FIELDS + " fields");
+                    continue;
+                }
+                if (!row.fieldEquals(0, title)){
+                    title = row.getField(0);
+                    m = building.getMovie(title);
+                }
+                if (m == null){
+                    CASTS_UNMATCHED.increment();
+                    continue;
+                }
+                if (!row.fieldEquals(3, type)){
+                    type = row.getField(3);
+                }
+                building.addRole(m, building.getRegistry().intern(row.getField(1), row.getField(5)), type);
+            }
+            CASTS_PARSED.add(row.getRecords() - 1);
+            CASTS_REJECTED.add(row.getRejected());
+            return new int[] {row.getRecords() - 1, row.getRejected()};
+        }
+        finally{
+            LOAD_CASTS.stop(start);
+        }
+    }
+
+    /**
+     * Method readInParallel parses both files with the given loader and then adds the movies and the casts to the
+     * collection in the order of the files, the same way readMovies() and readCasts() do. Malformed rows are handed 
+     * to the collection's RejectHandler, in the order of the files.
+     *
+     * @param building the snapshot the movies and actors are added to
+     * @param loader the ParallelLoader that parses the files
+     */
+    private void readInParallel(CatalogSnapshot building, ParallelLoader loader){
+        try{
+            long start = Metrics.start();
+            List<Movie> movies = loader.readMovies(this.testFile, building.getRegistry(), this.rejects);
+            for (Movie m : movies){
+                building.addMovie(m);
+            }
+            TESTS_PARSED.add(loader.getRecords());
+            TESTS_REJECTED.add(loader.getRejected());
+            LOAD_TESTS.stop(start);
+            start = Metrics.start();
+            List<CastRow> rows = loader.readCasts(this.castFile, this.rejects);
+            for (CastRow row : rows){
+                Movie m = building.getMovie(row.getTitle());
+                if (m != null){
+                    building.addRole(m, row.getActor(), row.getType());
+                }
+                else{
+                    CASTS_UNMATCHED.increment();
+                }
+            }
+            CASTS_PARSED.add(loader.getRecords());
+            CASTS_REJECTED.add(loader.getRejected());
+            LOAD_CASTS.stop(start);
+        }
+        catch(IOException ex1){
+            System.out.println(ex1);
+        }
+        catch (NoSuchElementException ex2){
+            System.out.println(ex2);
+        }
+    }
+
+    /**
+     * Method readMappedCasts reads the cast file with a MappedCastReader and adds every actor to its movie, the same 
+     * way readCasts() does. Lines about movies without test results are ignored, and malformed lines are handed to the 
+     * collection's RejectHandler.
+     *
+     * @param building the snapshot the actors are added to
      */
-    private void readCasts(){
+    private void readMappedCasts(CatalogSnapshot building){
+        long start = Metrics.start();
         try{
-            Scanner reader = new Scanner(new File(this.castFile));
-            String line = reader.nextLine(); //discard header
-            while (reader.hasNext()){
-                line = reader.nextLine();
-                String[] castPieces = line.split(",");
-                String title = castPieces[0].substring(1, castPieces[0].length()-1); //remove quotes
-                for (int i = 0; i < this.allMovies.size(); i++){
-                    if (allMovies.get(i).getTitle().equals(title)){ 
-                        Actor a = allMovies.get(i).addOneActor(line);
-                        //actors should not be repeated
-                        if (!(allActors.contains(a))){
-                            allActors.add(a);
-                        }
+            MappedCastReader reader = new MappedCastReader(Charset.defaultCharset());
+            reader.read(this.castFile, (title, name, type, gender) -> {
+                Movie m = building.getMovie(title);
+                if (m != null){
+                    building.addRole(m, building.getRegistry().intern(name, gender), type);
+                }
+                else{
+                    CASTS_UNMATCHED.increment();
+                }
+            }, this.rejects);
+            CASTS_PARSED.add(reader.getRecords());
+            CASTS_REJECTED.add(reader.getMalformed());
+        }
+        catch(IOException ex1){
+            System.out.println(ex1);
+        }
+        LOAD_CASTS.stop(start);
+    }
+
+    /**
+     * Method applyDelta applies a file of changes to this collection, updating only the movies it mentions and the 
+     * indexes and ranking entries of those movies, instead of reading the whole collection again. The first line of 
+     * the file is a header. Each following line starts with a change and is followed by data in the format of the 
+     * other files:
+     *   TESTS,TITLE,0,1,...                        adds a movie, or replaces the test results of an existing one
+     *   ADD_CAST,"MOVIE","ACTOR",...,"GENDER"      adds an actor to a movie, as a line of the cast file
+     *   REMOVE_CAST,"MOVIE","ACTOR",...,"GENDER"   removes an actor (same name and gender) from a movie
+     * Cast changes for movies that are not in the collection are ignored. Lines with an unknown change are printed 
+     * and skipped; malformed lines, and lines without a title after the change, are skipped and handed to the 
+     * collection's RejectHandler. This program will print an IOException if the file is not found.
+     * The changes are made on copies of the movies in a new snapshot, which replaces the current one when all the 
+     * changes are done; until then, queries see the collection as it was before. Changes are applied one at a time.
+     * The new snapshot shares with the current one everything the changes do not touch (see 
+     * CatalogSnapshot.copyForChanges()), so a call costs time and memory proportional to the number of changed 
+     * movies, plus a small part of the size of the collection for the chunks of the bitmaps and the ranking.
+     *
+     * @param deltaFileName the file of changes
+     */
+    public synchronized void applyDelta(String deltaFileName){
+        long start = Metrics.start();
+        LinkedList<Change> changes = new LinkedList<Change>();
+        LinkedList<String> titles = new LinkedList<String>();
+        try (Reader in = new FileReader(deltaFileName)){
+            CsvTokenizer row = new CsvTokenizer(in, deltaFileName, this.rejects);
+            if (!row.next()){ //discard header
+                throw new NoSuchElementException(deltaFileName + " has no lines");
+            }
+            while (row.next()){
+                Change change = new Change(row.getField(0));
+                if (!change.kind.equals("TESTS") && !change.kind.equals("ADD_CAST") 
+                    && !change.kind.equals("REMOVE_CAST")){
+                    System.out.println("Unknown change on line " + row.getLineNumber() + ": " + change.kind);
+                    continue;
+                }
+                if (row.size() < 2 || row.getFieldLength(1) == 0){
+                    row.reject("a change is followed by the title of a movie");
+                    continue;
+                }
+                try{
+                    if (change.kind.equals("TESTS")){
+                        change.results = new Movie(row.getField(1), this.snapshot.getRegistry());
+                        change.results.setTestResults(row, 1); //the fields after the title are the test results
                     }
-                    else if(castPieces.length == 1){
-                        System.out.println("Movie " + title + " does not have any test results.");
+                    else{
+                        change.role = CastRow.parse(row, 1);
                     }
                 }
+                catch (IllegalArgumentException ex){
+                    row.reject(ex.getMessage());
+                    continue;
+                }
+                titles.add(row.getField(1));
+                changes.add(change);
             }
-            reader.close();
         }
         catch(IOException ex1){
             System.out.println(ex1);
@@ -103,24 +500,235 @@ public class MovieCollection
         catch (NoSuchElementException ex2){
             System.out.println(ex2);
         }
+        if (changes.size() > 0){
+            this.snapshot = applyChanges(this.snapshot, changes, titles);
+        }
+        APPLY_DELTA.stop(start);
+    }
+
+    /**
+     * Change is one line of a delta file, read by applyDelta()
+     */
+    private static class Change
+    {
+        private String kind; //TESTS, ADD_CAST or REMOVE_CAST
+        private Movie results; //for TESTS, a movie that is not in the collection with the title and results
+        private CastRow role; //for ADD_CAST and REMOVE_CAST, the role
+
+        private Change(String kind)
+        {
+            this.kind = kind;
+        }
     }
 
     /**
-     * getActors() returns the LinkedList of Actors in the collection
+     * Method reload reads both files again, for example after the data team replaced them with new ones, and 
+     * replaces all the movies and actors of this collection with theirs in a single step. The new snapshot is built 
+     * while the current one keeps answering queries, so readers never wait and never see a collection that is half 
+     * read. Malformed lines are skipped and handed to the collection's RejectHandler, as when the collection was 
+     * created. If a file cannot be read or has no lines, if the test results file has no movies, or if more than 
+     * MAX_REJECTED_SHARE of the lines of a file are malformed (for example a file that is still being written, or 
+     * a file of another format), the collection keeps its movies and an IOException is thrown. 
+     * Changes made with applyDelta() are replaced too. Reloads and changes are made one at a time. See MovieReloader 
+     * to reload the collection whenever the files change.
+     *
+     * @throws IOException if a file cannot be read, or the new movies are empty or have too many malformed lines
+     */
+    public synchronized void reload() throws IOException{
+        CatalogSnapshot building = new CatalogSnapshot(this.snapshot.getVersion() + 1);
+        try{
+            checkRejected(this.testFile, this.readMovies(building));
+            checkRejected(this.castFile, this.readCasts(building));
+        }
+        catch (NoSuchElementException ex2){
+            throw new IOException(ex2.getMessage(), ex2);
+        }
+        if (building.getMovies().size() == 0){
+            throw new IOException(this.testFile + " has no movies");
+        }
+        buildIndexes(building);
+        this.snapshot = building;
+    }
+
+    /**
+     * Method checkRejected throws an IOException if more than MAX_REJECTED_SHARE of the lines of a file were rejected
+     *
+     * @param fileName the file
+     * @param counts the number of lines read and the number of them rejected, from readMovies() or readCasts()
+     */
+    private static void checkRejected(String fileName, int[] counts) throws IOException{
+        if (counts[1] > counts[0] * MAX_REJECTED_SHARE){
+            throw new IOException(fileName + " has " + counts[1] + " malformed lines out of " + counts[0]);
+        }
+    }
+
+    /**
+     * getTestsFileName() returns the name of the test results file of the collection
+     *
+     * @return the test results file
+     */
+    public String getTestsFileName(){
+        return testFile;
+    }
+
+    /**
+     * getCastsFileName() returns the name of the cast file of the collection
+     *
+     * @return the cast file
+     */
+    public String getCastsFileName(){
+        return castFile;
+    }
+
+    /**
+     * Method applyChanges makes a new snapshot from the current one and the changes of a delta file
+     *
+     * @param current the current snapshot, which is not changed
+     * @param changes the changes, read by applyDelta()
+     * @param titles the titles of the movies the changes are about
+     * @return the new snapshot
+     */
+    private static CatalogSnapshot applyChanges(CatalogSnapshot current, LinkedList<Change> changes, 
+                                                LinkedList<String> titles){
+        //key = movie of current, value = its copy
+        IdentityHashMap<Movie, Movie> copies = new IdentityHashMap<Movie, Movie>();
+        CatalogSnapshot next = current.copyForChanges(titles, copies);
+        IdentityHashMap<Movie, Double> oldScores = new IdentityHashMap<Movie, Double>(); //key = movie of current
+        for (Movie old : copies.keySet()){
+            oldScores.put(old, MovieRanking.scoreOf(copies.get(old)));
+        }
+        LinkedList<Movie> added = new LinkedList<Movie>();
+        for (Change change : changes){
+            if (change.kind.equals("TESTS")){
+                String title = change.results.getTitle();
+                Movie m = next.getMovie(title);
+                if (m == null){
+                    m = new Movie(title, next.getRegistry());
+                    m.replaceTestResults(change.results);
+                    next.addMovie(m);
+                    added.add(m);
+                }
+                else{
+                    m.replaceTestResults(change.results);
+                }
+            }
+            else{
+                Movie m = next.getMovie(change.role.getTitle());
+                if (m != null && change.kind.equals("ADD_CAST")){
+                    next.addRole(m, change.role.getActor(), change.role.getType());
+                }
+                else if (m != null){
+                    next.removeRole(m, change.role.getActor());
+                }
+            }
+        }
+        next.updateIndexes(copies, oldScores, added);
+        return next;
+    }
+
+    /**
+     * Method answer answers a request (for example MovieRequest.passedBechdel()) about the current movies. The 
+     * answers of the last CACHE_SIZE different requests are kept until the collection is changed, so a request that 
+     * is asked again is answered without looking at the movies, and everyone who asks it gets the same list. 
+     * Unlike the findAllMovies* methods, the list cannot be changed. The findAllMoviesPassed* methods go through 
+     * the same cache, and return the same lists.
+     *
+     * @param request the request
+     * @return the movies, as a list that cannot be changed
+     */
+    public List<Movie> answer(MovieRequest request){
+        return cache.get(snapshot, request);
+    }
+
+    /**
+     * getQueryCache() returns the cache of the answers of answer(), with its hit and miss figures
+     *
+     * @return the cache
+     */
+    public QueryCache getQueryCache(){
+        return cache;
+    }
+
+    /**
+     * getSnapshot() returns the current snapshot of the collection. Several queries made on the same snapshot see 
+     * the same data, even if the collection is changed in the meantime.
+     *
+     * @return the current snapshot
+     */
+    public CatalogSnapshot getSnapshot(){
+        return snapshot;
+    }
+
+    /**
+     * getActors() returns the LinkedList of Actors in the collection. The list is a copy, so changing it does not 
+     * change the collection.
      * 
      * @return LinkedList<Actor> all actors in the collection
      */
     public LinkedList<Actor> getActors(){
-        return allActors;
+        return new LinkedList<Actor>(snapshot.getActors());
+    }
+
+    /**
+     * getFilmography() returns the movies of the collection the given actor (same name and gender) is in, from the 
+     * ActorIndex of the collection, without looking at the other movies.
+     *
+     * @param a the actor
+     * @return a LinkedList with the movies of the actor, empty if the actor is not in the collection
+     */
+    public LinkedList<Movie> getFilmography(Actor a){
+        CatalogSnapshot current = snapshot;
+        return current.getActorIndex().getFilmography(current.getRegistry().getId(a));
     }
 
     /**
-     * getMovies() Returns all the movies in a LinkedList
+     * getActorIndex() returns the ActorIndex of the collection, with the movies, types of role, mean and highest 
+     * feminist scores and share of leading roles of every actor, by their id in the collection (see getActorId())
+     *
+     * @return the ActorIndex
+     */
+    public ActorIndex getActorIndex(){
+        return snapshot.getActorIndex();
+    }
+
+    /**
+     * getActorId() returns the id of an actor (same name and gender) in the collection, to use with getActorIndex().
+     * The ids of the actors change when the collection is reloaded from its files.
+     *
+     * @param a the actor
+     * @return the id of the actor, or -1 if the actor was never in the collection
+     */
+    public int getActorId(Actor a){
+        return snapshot.getRegistry().getId(a);
+    }
+
+    /**
+     * getMovies() Returns all the movies in a LinkedList. The list is a copy, so changing it does not change the 
+     * collection.
      * 
      * @return a LinkedList with all the movies, each complete with its title, actors and Bechdel test results.
      */
     public LinkedList<Movie> getMovies(){
-        return allMovies;
+        return new LinkedList<Movie>(snapshot.getMovies());
+    }
+
+    /**
+     * getTitleIndex() returns the NameIndex of the titles of the collection, to find movies by their exact title, 
+     * the start of their title or a title with typing mistakes
+     *
+     * @return the index, or null for a collection made by loadShard()
+     */
+    public NameIndex<Movie> getTitleIndex(){
+        return snapshot.getTitleIndex();
+    }
+
+    /**
+     * getActorNameIndex() returns the NameIndex of the names of the actors of the collection
+     *
+     * @return the index, or null for a collection made by loadShard()
+     */
+    public NameIndex<Actor> getActorNameIndex(){
+        return snapshot.getActorNameIndex();
     }
 
     /**
@@ -130,8 +738,8 @@ public class MovieCollection
      */
     public LinkedList<String> getActorNames(){
         LinkedList<String> actorNames = new LinkedList<String>();
-        for(int i = 0; i < allActors.size(); i++){
-            actorNames.add(allActors.get(i).getName());
+        for(Actor a : snapshot.getActors()){
+            actorNames.add(a.getName());
         }
         return actorNames;
     }
@@ -143,111 +751,121 @@ public class MovieCollection
      */
     public LinkedList<String> getMovieTitles(){
         LinkedList<String> movieTitles = new LinkedList<String>();
-        for(int i = 0; i < allMovies.size(); i++){
-            movieTitles.add(allMovies.get(i).getTitle());
+        for(Movie m : snapshot.getMovies()){
+            movieTitles.add(m.getTitle());
         }
         return movieTitles;
     }
 
     /**
      *  findAllMoviesPassedTestNum() Returns a list of all Movies that pass the n-th test. If the given n 
-     *  is invalid (less than 0 or greater than 12) an informative message will be printed and an empty LinkedList of 
-     *  Movies will be returned. If there are no movies in the MovieCollection, an informative message will be printed
-     *  and an empty LinkedList will be returned. 
+     *  is invalid (less than Movie.BECHDEL or greater than Movie.REES_DAVIES, the columns of the tests) an 
+     *  informative message will be printed and an empty list of Movies will be returned. If there are no 
+     *  movies in the MovieCollection, an informative message will be printed and an empty list will be 
+     *  returned. The answer comes from the QueryCache of answer() when the same question was asked since the 
+     *  last change, and is shared with everyone who asked it, so the list cannot be changed.
      *  
-     *  @param n - integer identifying the n-th test in the list of 12 Bechdel alternatives, starting from zero
+     *  @param n - integer identifying the n-th test, from Movie.BECHDEL (1) to Movie.REES_DAVIES (13)
      * 
      *@return A list of all Movies which have passed the n-th test
      */
-    public LinkedList<Movie> findAllMoviesPassedTestNum(int n){
-        LinkedList<Movie> passedMovies = new LinkedList<Movie>();
-        if(n > 12 && n < 0){
+    public List<Movie> findAllMoviesPassedTestNum(int n){
+        List<Movie> passedMovies = Collections.emptyList();
+        CatalogSnapshot s = snapshot;
+        if(n < Movie.BECHDEL || n > Movie.REES_DAVIES){
             System.out.println("Invalid testing number.");
         } 
-        else if (allMovies.size() == 0){
+        else if (s.getTestIndex().size() == 0){
             System.out.println("There are no movies in this MovieCollection.");
         }
         else {
-            LinkedList<Movie> titles = allMovies;
-            for(int i = 0; i < titles.size(); i++){
-                String ans = titles.get(i).getAllTestResults().elementAt(n);
-                if(ans.equals("0")){
-                    passedMovies.add(titles.get(i));
-                }
-            }
+            passedMovies = cache.get(s, MovieRequest.passedTest(n));
         }
         return passedMovies;
     }
 
     /**
      * findAllMoviesPassedPorL() Returns a list of all Movies that pass the Pierce test or the Landau test. If there are 
-     * no movies in the MovieCollection, an informative message will be printed and an empty LinkedList will be returned. 
+     * no movies in the MovieCollection, an informative message will be printed and an empty list will be returned. 
+     * As findAllMoviesPassedTestNum(), it goes through the QueryCache and returns its answer, which cannot be changed.
      * 
-     * @return a linked list of all Movies that pass the Pierce test or the Landau test
+     * @return a list of all Movies that pass the Pierce test or the Landau test
      */
-    public LinkedList<Movie> findAllMoviesPassedPorL(){
-        LinkedList<Movie> passedMovies = new LinkedList<Movie>();
-        if (allMovies.size() == 0){
+    public List<Movie> findAllMoviesPassedPorL(){
+        List<Movie> passedMovies = Collections.emptyList();
+        CatalogSnapshot s = snapshot;
+        if (s.getTestIndex().size() == 0){
             System.out.println("There are no movies in this MovieCollection.");
         }
         else{
-            for(int i = 0; i < allMovies.size(); i++){
-                String pierce = allMovies.get(i).getAllTestResults().elementAt(2);
-                String landau = allMovies.get(i).getAllTestResults().elementAt(3);
-                if(pierce.equals("0") || landau.equals("0")){
-                    passedMovies.add(allMovies.get(i));
-                }
-            }
+            passedMovies = cache.get(s, MovieRequest.passedPorL());
         }
         return passedMovies;
     }
 
     /**
-     * findAllMoviesPassedBechdel() returns a linked list of Movies that pass the Bechdel test. If there are 
-     * no movies in the MovieCollection, an informative message will be printed and an empty LinkedList will be 
-     * returned.
+     * findAllMoviesPassedBechdel() returns a list of Movies that pass the Bechdel test. If there are 
+     * no movies in the MovieCollection, an informative message will be printed and an empty list will be 
+     * returned. As findAllMoviesPassedTestNum(), it goes through the QueryCache and returns its answer, which 
+     * cannot be changed.
      * 
-     * @return a linked list of all Movies that pass the Bechdel test
+     * @return a list of all Movies that pass the Bechdel test
      */
-    public LinkedList<Movie> findAllMoviesPassedBechdel(){
-        LinkedList<Movie> passedMovies = new LinkedList<Movie>();
-        if (allMovies.size() == 0){
+    public List<Movie> findAllMoviesPassedBechdel(){
+        List<Movie> passedMovies = Collections.emptyList();
+        CatalogSnapshot s = snapshot;
+        if (s.getTestIndex().size() == 0){
             System.out.println("There are no movies in this MovieCollection.");
         }
         else{
-            for(int i = 0; i < allMovies.size(); i++){
-                String ans = allMovies.get(i).getAllTestResults().elementAt(1);
-                if(ans.equals("0")){
-                    passedMovies.add(allMovies.get(i));
-                }
-            }
+            passedMovies = cache.get(s, MovieRequest.passedBechdel());
         }
         return passedMovies;
     }
 
     /**
-     * findAllMoviesPassedWnotRD() returns a linked list of Movies that pass the White test but not the Rees-Davies test.
-     * If there are no movies in the MovieCollection, an informative message will be printed and an empty LinkedList 
-     * will be returned.
-     * @return a linked list of Movies that pass the White test but not the Rees-Davies test. 
+     * findAllMoviesPassedWnotRD() returns a list of Movies that pass the White test but not the Rees-Davies test.
+     * If there are no movies in the MovieCollection, an informative message will be printed and an empty list 
+     * will be returned. As findAllMoviesPassedTestNum(), it goes through the QueryCache and returns its answer, which
+     * cannot be changed.
+     * @return a list of Movies that pass the White test but not the Rees-Davies test. 
      */
-    public LinkedList<Movie> findAllMoviesPassedWnotRD(){
-        LinkedList<Movie> passedMovies = new LinkedList<Movie>();
-        if (allMovies.size() == 0){
+    public List<Movie> findAllMoviesPassedWnotRD(){
+        List<Movie> passedMovies = Collections.emptyList();
+        CatalogSnapshot s = snapshot;
+        if (s.getTestIndex().size() == 0){
             System.out.println("There are no movies in this MovieCollection.");
         }
         else{
-            for(int i = 0; i < allMovies.size(); i++){
-                String white = allMovies.get(i).getAllTestResults().elementAt(12);
-                String rees = allMovies.get(i).getAllTestResults().elementAt(13);
-                if(white.equals("0") && rees.equals("1")){
-                    passedMovies.add(allMovies.get(i));
-                }
-            }
+            passedMovies = cache.get(s, MovieRequest.passedWnotRD());
         }
         return passedMovies;
     }
 
+    /**
+     * findAllMovies() returns a linked list of the Movies that match the given query, for example 
+     * MovieQuery.passed(Movie.PIERCE).or(MovieQuery.passed(Movie.LANDAU)).and(MovieQuery.femaleShareAbove(0.5)).
+     * All movies are checked together, using the bitmaps and cast figures of the collection's TestBitmapIndex.
+     * 
+     * @param query the query
+     * @return a linked list of the Movies that match the query, in the order of the collection
+     */
+    public LinkedList<Movie> findAllMovies(MovieQuery query){
+        return snapshot.getTestIndex().select(query);
+    }
+
+    /**
+     * findAllMovies() returns a linked list of the Movies that match the given query. If parallel is true, parts of 
+     * the collection are checked at the same time on several threads, which helps for very large collections.
+     * 
+     * @param query the query
+     * @param parallel whether to use several threads
+     * @return a linked list of the Movies that match the query, in the order of the collection
+     */
+    public LinkedList<Movie> findAllMovies(MovieQuery query, boolean parallel){
+        return snapshot.getTestIndex().select(query, parallel);
+    }
+
     /**
      * toString() returns a String representation of the Movie collection. It returns the number of Movies and the
      * Movies themselves. If there are no movies in the MovieCollection it returns a String informing the user. 
@@ -255,13 +873,14 @@ public class MovieCollection
      * @return A String representation of the Movie collection
      */
     public String toString(){
+        LinkedList<Movie> allMovies = snapshot.getMovies();
         String s = "The movie collection has " + allMovies.size() + " movies:\n";
         if (allMovies.size() == 0){
             String z = "This movie collection has no movies.";
             return z;
         }
-        for(int i = 0; i < allMovies.size(); i++){
-            s+= allMovies.get(i) + "\n";
+        for(Movie m : allMovies){
+            s+= m + "\n";
         }
         return s;
     }
@@ -271,27 +890,132 @@ public class MovieCollection
      * highest score to lowest score. It breaks ties between movies that have the same score by ranking the movies based on 
      * the reverse alphabetical order of their titles. If the MovieCollection has no movies, an empty PriorityQueue is 
      * returned and an informative message is printed. 
+     * The movies are added in the order of the collection's ranking, whose scores were calculated when the files were 
+     * read, so each movie goes straight to its place in the queue.
      *
      * @return PriorityQueue<Movie> of movies in order of most to least feminist
      */
     public PriorityQueue<Movie> rankMovies(){
+        long start = Metrics.start();
         PriorityQueue<Movie> queue = new PriorityQueue<Movie>();
-        if (allMovies.size() == 0){
+        MovieRanking ranking = snapshot.getRanking();
+        if (ranking.size() == 0){
             System.out.println("There are no movies in this MovieCollection");
         }
         else{
-            for (int i=0; i < allMovies.size(); i++){
-                queue.enqueue(allMovies.get(i));
+            for (int r = 0; r < ranking.size(); r++){
+                queue.enqueue(ranking.getMovie(r));
             }
         }
+        RANK.stop(start);
         return queue;
     }
 
+    /**
+     * Method getRanking returns the movies from most to least feminist. Movies with a cast are in the order in which 
+     * rankMovies() dequeues them; movies without a cast have no score and come last, in reverse alphabetical order, 
+     * while Movie.compareTo(), which rankMovies() uses, places them by their title only. The ranking is kept by the 
+     * collection, so no scores are calculated.
+     *
+     * @return a LinkedList of the movies in order of most to least feminist
+     */
+    public LinkedList<Movie> getRanking(){
+        long start = Metrics.start();
+        MovieRanking ranking = snapshot.getRanking();
+        LinkedList<Movie> movies = ranking.getMovies(0, ranking.size());
+        RANK.stop(start);
+        return movies;
+    }
+
+    /**
+     * Method scoreMovies scores every movie of the collection with a ScoringModel other than the one of 
+     * Movie.feministScore(), for example to compare different weightings of the tests.
+     *
+     * @param model the scoring model
+     * @return the scores, in the order of getMovies()
+     */
+    public double[] scoreMovies(ScoringModel model){
+        return snapshot.getScoringEngine().score(model);
+    }
+
+    /**
+     * Method getScoringEngine returns the ScoringEngine of the collection, which can score all movies with many 
+     * ScoringModels at once.
+     *
+     * @return the ScoringEngine of the collection
+     */
+    public ScoringEngine getScoringEngine(){
+        return snapshot.getScoringEngine();
+    }
+
+    /**
+     * Method topK returns the k most feminist movies of the collection, from most to least feminist. They are read 
+     * from the collection's ranking, so no queue of the whole collection is built.
+     *
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies
+     */
+    public LinkedList<Movie> topK(int k){
+        long start = Metrics.start();
+        LinkedList<Movie> top = snapshot.getRanking().getMovies(0, k);
+        RANK.stop(start);
+        return top;
+    }
+
+    /**
+     * Method bottomK returns the k least feminist movies of the collection, from least to most feminist.
+     *
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies
+     */
+    public LinkedList<Movie> bottomK(int k){
+        long start = Metrics.start();
+        LinkedList<Movie> bottom = new LinkedList<Movie>();
+        MovieRanking ranking = snapshot.getRanking();
+        for (int r = ranking.size() - 1; r >= Math.max(0, ranking.size() - k); r--){
+            bottom.add(ranking.getMovie(r));
+        }
+        RANK.stop(start);
+        return bottom;
+    }
+
+    /**
+     * Method rankPage returns one page of the ranking: the movies with ranks from first to first + count - 1, 
+     * where rank 0 is the most feminist movie. For example rankPage(100, 100) returns ranks 100 to 199.
+     *
+     * @param first the first rank of the page
+     * @param count the number of movies in the page
+     * @return a LinkedList with the movies of the page, fewer than count at the end of the ranking
+     */
+    public LinkedList<Movie> rankPage(int first, int count){
+        long start = Metrics.start();
+        LinkedList<Movie> page = snapshot.getRanking().getMovies(first, first + count);
+        RANK.stop(start);
+        return page;
+    }
+
+    /**
+     * Method topK returns the k most feminist movies among the ones that match the query, from most to least 
+     * feminist, keeping only k movies at a time (see TopMovies).
+     *
+     * @param query the query the movies must match
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies
+     */
+    public LinkedList<Movie> topK(MovieQuery query, int k){
+        LinkedList<Movie> selected = findAllMovies(query);
+        long start = Metrics.start();
+        LinkedList<Movie> top = TopMovies.top(selected, k);
+        RANK.stop(start);
+        return top;
+    }
+
     /**
      * Method main for testing
      *
      */
     public static void main(String[] args){
+        Metrics.setEnabled(true);
         System.out.println("Creating movie collection m1");
         MovieCollection m1 = new MovieCollection("data/nextBechdel_allTests.txt", "data/nextBechdel_castGender.txt");
 
@@ -316,7 +1040,7 @@ public class MovieCollection
         
 
         System.out.println("Testing findAllMoviesPassedBechdel()");
-        LinkedList<Movie> bechdel = m1.findAllMoviesPassedBechdel();
+        List<Movie> bechdel = m1.findAllMoviesPassedBechdel();
         System.out.println("Number of movies that passed Bechdel: " + bechdel.size());
         System.out.println("Printing the movies that passed Bechdel: ");
         if (!(bechdel.size() == 0)){
@@ -331,7 +1055,7 @@ public class MovieCollection
         System.out.println();
 
         System.out.println("Testing findAllMoviesPassedPorL()");
-        LinkedList<Movie> pOrL = m1.findAllMoviesPassedPorL();
+        List<Movie> pOrL = m1.findAllMoviesPassedPorL();
         System.out.println("Number of movies that passed Peirce or Landau: " + pOrL.size());
         System.out.println("Printing the movies that passed Peirce or Landau: ");
         if (!(pOrL.size() == 0)){
@@ -346,7 +1070,7 @@ public class MovieCollection
         System.out.println();
         
         System.out.println("Testing findAllMoviesPassedWnotRD()");
-        LinkedList<Movie> wNotRD = m1.findAllMoviesPassedWnotRD();
+        List<Movie> wNotRD = m1.findAllMoviesPassedWnotRD();
         System.out.println("Number of movies that passed White but not Rees-Davis: " + wNotRD.size());
         System.out.println("Printing the movies that passed but not Rees-Davis: ");
         if (!(wNotRD.size() == 0)){
@@ -361,8 +1085,8 @@ public class MovieCollection
         
         System.out.println("Printing the movies and their feminist scores");
 
-        for(int i=0; i < m1.allMovies.size(); i++){
-            System.out.println(m1.allMovies.get(i).getTitle() + "   Score: " + m1.allMovies.get(i).feministScore());
+        for(Movie m : m1.getMovies()){
+            System.out.println(m.getTitle() + "   Score: " + m.feministScore());
         }
 
         System.out.println();
@@ -371,5 +1095,9 @@ public class MovieCollection
         PriorityQueue<Movie> q1 = m1.rankMovies();
         System.out.println("Order in which movies will be dequeued: ");
         System.out.println(q1);
+
+        System.out.println();
+        System.out.println("Metrics: ");
+        System.out.println(Metrics.toPrometheus());
     }
 }
\ No newline at end of file
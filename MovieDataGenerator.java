@@ -0,0 +1,102 @@
+import java.io.*;
+import java.util.Random;
+
+/**
+ * MovieDataGenerator writes synthetic test and cast files in the same format as "nextBechdel_allTests.txt" and
+ * "nextBechdel_castGender.txt", so that a MovieCollection of any size can be built without the real data.
+ * The same seed and sizes always produce the same files.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class MovieDataGenerator
+{
+    private static final String[] TYPES = {"Leading", "Supporting"};
+    private static final String[] GENDERS = {"Female", "Male", "Unknown"};
+    private static final String TESTS_HEADER = "movie,bechdel,peirce,landau,feldman,villareal,hagen,ko,villarobos,"
+        + "waithe,koeze-dottle,uphold,white,rees-davies";
+    private static final String CAST_HEADER = "\"MOVIE\",\"ACTOR\",\"CHARACTER_NAME\",\"TYPE\",\"BILLING\",\"GENDER\"";
+
+    private int numMovies;
+    private int castSize;
+    private int numActors;
+    private long seed;
+
+    /**
+     * Constructor for objects of class MovieDataGenerator
+     *
+     * @param numMovies number of movies to generate
+     * @param castSize number of cast lines to generate for each movie
+     * @param seed seed for the random choices, so that the output is repeatable
+     */
+    public MovieDataGenerator(int numMovies, int castSize, long seed)
+    {
+        this.numMovies = numMovies;
+        this.castSize = castSize;
+        this.numActors = Math.max(1, numMovies * castSize / 4); //each actor appears in about 4 movies
+        this.seed = seed;
+    }
+
+    /**
+     * Method title returns the title of the i-th generated movie
+     *
+     * @param i index of the movie
+     * @return the title of the movie
+     */
+    public static String title(int i){
+        return "Movie " + i;
+    }
+
+    /**
+     * Method writeTests writes the test results file. Each line has a title followed by 13 results (0 = passed).
+     *
+     * @param fileName the file to write
+     */
+    public void writeTests(String fileName) throws IOException{
+        Random random = new Random(seed);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+        writer.println(TESTS_HEADER);
+        for (int i = 0; i < numMovies; i++){
+            StringBuilder line = new StringBuilder(title(i));
+            for (int t = 0; t < 13; t++){
+                line.append(',').append(random.nextInt(2));
+            }
+            writer.println(line);
+        }
+        writer.close();
+    }
+
+    /**
+     * Method writeCasts writes the cast file, with castSize lines for every movie, grouped by movie.
+     *
+     * @param fileName the file to write
+     */
+    public void writeCasts(String fileName) throws IOException{
+        Random random = new Random(seed + 1);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+        writer.println(CAST_HEADER);
+        for (int i = 0; i < numMovies; i++){
+            for (int c = 0; c < castSize; c++){
+                int actor = random.nextInt(numActors);
+                writer.println("\"" + title(i) + "\",\"Actor " + actor + "\",\"Character " + c + "\",\""
+                    + TYPES[c < 2 ? 0 : 1] + "\",\"" + (c + 1) + "\",\"" + GENDERS[actor % GENDERS.length] + "\"");
+            }
+        }
+        writer.close();
+    }
+
+    /**
+     * Method main writes a pair of files. Arguments: testsFile castsFile numMovies castSize [seed]
+     *
+     */
+    public static void main(String[] args) throws IOException{
+        if (args.length < 4){
+            System.out.println("Usage: MovieDataGenerator testsFile castsFile numMovies castSize [seed]");
+            return;
+        }
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+        MovieDataGenerator g = new MovieDataGenerator(Integer.parseInt(args[2]), Integer.parseInt(args[3]), seed);
+        g.writeTests(args[0]);
+        g.writeCasts(args[1]);
+    }
+}
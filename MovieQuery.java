@@ -0,0 +1,408 @@
+import java.util.TreeSet;
+
+/**
+ * Represents a question about movies, such as "passed Pierce or Landau, and more than half of the cast is female".
+ * Queries are built from passed(n), failed(n) and the cast conditions femaleShareAbove(x) and castSizeAtLeast(n),
+ * combined with and(), or() and not(). Test numbers are the constants of Movie, for example Movie.PIERCE.
+ *
+ * A MovieQuery can be checked against one Movie with matches(), or against every movie of a TestBitmapIndex at once
+ * with evaluate(): tests are answered from the index's bitmaps and cast conditions from the cast figures the index
+ * keeps for every movie, 64 movies per step, so the movies themselves are never visited.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public abstract class MovieQuery
+{
+    /**
+     * Method passed returns a query that is true for movies that passed the n-th test
+     *
+     * @param n index of the test, from 0 to 63, for example Movie.PIERCE
+     * @return the query
+     */
+    public static MovieQuery passed(int n){
+        return new Result(n, true);
+    }
+
+    /**
+     * Method failed returns a query that is true for movies that failed the n-th test
+     *
+     * @param n index of the test, from 0 to 63, for example Movie.REES_DAVIES
+     * @return the query
+     */
+    public static MovieQuery failed(int n){
+        return new Result(n, false);
+    }
+
+    /**
+     * Method femaleShareAbove returns a query that is true for movies where the fraction of female actors in the
+     * cast (see Movie.femaleActorCount()) is greater than share. It is false for movies without a cast.
+     *
+     * @param share fraction between 0 and 1
+     * @return the query
+     */
+    public static MovieQuery femaleShareAbove(double share){
+        return new FemaleShare(share);
+    }
+
+    /**
+     * Method castSizeAtLeast returns a query that is true for movies with at least n actors
+     *
+     * @param n number of actors
+     * @return the query
+     */
+    public static MovieQuery castSizeAtLeast(int n){
+        return new CastSize(n);
+    }
+
+    /**
+     * Method and returns a query that is true when both this and the other query are true
+     */
+    public MovieQuery and(MovieQuery other){
+        return new Combination(this, other, '&');
+    }
+
+    /**
+     * Method or returns a query that is true when this or the other query is true
+     */
+    public MovieQuery or(MovieQuery other){
+        return new Combination(this, other, '|');
+    }
+
+    /**
+     * Method andNot returns a query that is true when this query is true and the other one is false
+     */
+    public MovieQuery andNot(MovieQuery other){
+        return and(other.not());
+    }
+
+    /**
+     * Method not returns a query that is true when this query is false
+     */
+    public MovieQuery not(){
+        return new Not(this);
+    }
+
+    /**
+     * Method matches checks this query against one movie. Tests the movie has no result for count as neither
+     * passed nor failed.
+     *
+     * @param m the movie
+     * @return true if the movie matches this query
+     */
+    public abstract boolean matches(Movie m);
+
+    /**
+     * Method getKey returns this query in a normal form: two queries that differ only in the order or repetition 
+     * of the parts of an and() or an or(), for example a.or(b) and b.or(a).or(a), have the same key. Queries with 
+     * the same key match the same movies, so the key can be used to find answers that were kept (see QueryCache).
+     *
+     * @return the key of the query
+     */
+    public String getKey(){
+        return toString();
+    }
+
+    /**
+     * Method parse returns the query whose key (see getKey()) is the given string, so that queries can be sent as 
+     * text, for example to the workers of a ShardedCollection.
+     *
+     * @param key the key of a query
+     * @return a query with that key
+     * @throws IllegalArgumentException if the string is not the key of a query
+     */
+    public static MovieQuery parse(String key){
+        int[] pos = {0};
+        MovieQuery query = parse(key, pos);
+        if (pos[0] != key.length()){
+            throw new IllegalArgumentException("Not a query at " + pos[0] + ": " + key);
+        }
+        return query;
+    }
+
+    /**
+     * Method parse reads the key of one query from key, starting at pos[0], and moves pos[0] after it
+     */
+    private static MovieQuery parse(String key, int[] pos){
+        int open = pos[0];
+        while (open < key.length() && key.charAt(open) != '(' && key.charAt(open) != '['){
+            open++;
+        }
+        if (open == key.length()){
+            throw new IllegalArgumentException("Not a query at " + pos[0] + ": " + key);
+        }
+        String name = key.substring(pos[0], open);
+        if (key.charAt(open) == '['){ //and[a, b, ...] or or[a, b, ...]
+            if (!name.equals("and") && !name.equals("or")){
+                throw new IllegalArgumentException("Unknown query " + name + ": " + key);
+            }
+            pos[0] = open + 1;
+            MovieQuery query = parse(key, pos);
+            while (key.startsWith(", ", pos[0])){
+                pos[0] += 2;
+                MovieQuery part = parse(key, pos);
+                query = name.equals("and") ? query.and(part) : query.or(part);
+            }
+            expect(key, pos, ']');
+            return query;
+        }
+        pos[0] = open + 1;
+        if (name.equals("not")){
+            MovieQuery inner = parse(key, pos);
+            expect(key, pos, ')');
+            return inner.not();
+        }
+        int close = key.indexOf(')', pos[0]);
+        if (close < 0){
+            throw new IllegalArgumentException("Missing ) at " + pos[0] + ": " + key);
+        }
+        String value = key.substring(pos[0], close);
+        pos[0] = close + 1;
+        try{
+            if (name.equals("passed")){
+                return passed(Integer.parseInt(value));
+            }
+            else if (name.equals("failed")){
+                return failed(Integer.parseInt(value));
+            }
+            else if (name.equals("femaleShareAbove")){
+                return femaleShareAbove(Double.parseDouble(value));
+            }
+            else if (name.equals("castSizeAtLeast")){
+                return castSizeAtLeast(Integer.parseInt(value));
+            }
+        }
+        catch (NumberFormatException ex){
+            throw new IllegalArgumentException("Not a number: " + value + " in " + key);
+        }
+        throw new IllegalArgumentException("Unknown query " + name + ": " + key);
+    }
+
+    private static void expect(String key, int[] pos, char c){
+        if (pos[0] >= key.length() || key.charAt(pos[0]) != c){
+            throw new IllegalArgumentException("Missing " + c + " at " + pos[0] + ": " + key);
+        }
+        pos[0]++;
+    }
+
+    /**
+     * Method evaluate checks this query against every movie of the index at once.
+     *
+     * @param index the index of the movies
+     * @return a new bitmap with bit i set if the i-th movie of the index matches this query
+     */
+    public long[] evaluate(TestBitmapIndex index){
+        return evaluate(index, 0, index.words());
+    }
+
+    /**
+     * Method evaluate checks this query against the movies of the index whose bits are in the words from
+     * fromWord (inclusive) to toWord (exclusive), that is movies 64 * fromWord to 64 * toWord - 1.
+     *
+     * @param index the index of the movies
+     * @param fromWord first word of the bitmaps
+     * @param toWord last word of the bitmaps (exclusive)
+     * @return a new bitmap of toWord - fromWord words; bit i is about the movie 64 * fromWord + i
+     */
+    public abstract long[] evaluate(TestBitmapIndex index, int fromWord, int toWord);
+
+    /**
+     * Result is true for movies that passed (or failed) one test
+     */
+    private static class Result extends MovieQuery
+    {
+        private int test;
+        private boolean passed;
+
+        Result(int test, boolean passed)
+        {
+            if (test < 0 || test >= 64){
+                throw new IllegalArgumentException("Invalid test number: " + test);
+            }
+            this.test = test;
+            this.passed = passed;
+        }
+
+        public boolean matches(Movie m){
+            long mask = passed ? m.getPassedMask() : m.getFailedMask();
+            return (mask & (1L << test)) != 0;
+        }
+
+        public long[] evaluate(TestBitmapIndex index, int fromWord, int toWord){
+            long[] bits = new long[toWord - fromWord];
+            for (int w = fromWord; w < toWord; w++){
+                bits[w - fromWord] = passed ? index.passedWord(test, w) : index.failedWord(test, w);
+            }
+            return bits;
+        }
+
+        public String toString(){
+            return (passed ? "passed(" : "failed(") + test + ")";
+        }
+    }
+
+    /**
+     * FemaleShare is true for movies whose fraction of female actors is greater than a value
+     */
+    private static class FemaleShare extends MovieQuery
+    {
+        private double share;
+
+        FemaleShare(double share)
+        {
+            this.share = share;
+        }
+
+        public boolean matches(Movie m){
+            return m.femaleActorCount() > share; //false for NaN (no cast)
+        }
+
+        public long[] evaluate(TestBitmapIndex index, int fromWord, int toWord){
+            long[] bits = new long[toWord - fromWord];
+            int last = Math.min(index.size(), toWord << 6);
+            for (int i = fromWord << 6; i < last; i++){
+                if (index.femaleShare(i) > share){
+                    bits[(i >>> 6) - fromWord] |= 1L << i;
+                }
+            }
+            return bits;
+        }
+
+        public String toString(){
+            return "femaleShareAbove(" + share + ")";
+        }
+    }
+
+    /**
+     * CastSize is true for movies with at least a number of actors
+     */
+    private static class CastSize extends MovieQuery
+    {
+        private int size;
+
+        CastSize(int size)
+        {
+            this.size = size;
+        }
+
+        public boolean matches(Movie m){
+            return m.getCastSize() >= size;
+        }
+
+        public long[] evaluate(TestBitmapIndex index, int fromWord, int toWord){
+            long[] bits = new long[toWord - fromWord];
+            int last = Math.min(index.size(), toWord << 6);
+            for (int i = fromWord << 6; i < last; i++){
+                if (index.castSize(i) >= size){
+                    bits[(i >>> 6) - fromWord] |= 1L << i;
+                }
+            }
+            return bits;
+        }
+
+        public String toString(){
+            return "castSizeAtLeast(" + size + ")";
+        }
+    }
+
+    /**
+     * Combination is true when both (op '&') or either (op '|') of two queries are true
+     */
+    private static class Combination extends MovieQuery
+    {
+        private MovieQuery left;
+        private MovieQuery right;
+        private char op;
+
+        Combination(MovieQuery left, MovieQuery right, char op)
+        {
+            this.left = left;
+            this.right = right;
+            this.op = op;
+        }
+
+        public boolean matches(Movie m){
+            if (op == '&'){
+                return left.matches(m) && right.matches(m);
+            }
+            return left.matches(m) || right.matches(m);
+        }
+
+        public long[] evaluate(TestBitmapIndex index, int fromWord, int toWord){
+            long[] bits = left.evaluate(index, fromWord, toWord);
+            long[] other = right.evaluate(index, fromWord, toWord);
+            if (op == '&'){
+                for (int i = 0; i < bits.length; i++){
+                    bits[i] &= other[i];
+                }
+            }
+            else{
+                for (int i = 0; i < bits.length; i++){
+                    bits[i] |= other[i];
+                }
+            }
+            return bits;
+        }
+
+        public String toString(){
+            return "(" + left + (op == '&' ? " and " : " or ") + right + ")";
+        }
+
+        public String getKey(){
+            TreeSet<String> parts = new TreeSet<String>(); //sorted, without repetitions
+            addParts(parts);
+            if (parts.size() == 1){
+                return parts.first();
+            }
+            return (op == '&' ? "and" : "or") + parts;
+        }
+
+        /**
+         * Method addParts adds the keys of the parts of this query, and of the parts of the parts that are
+         * combinations with the same op, so that (a and b) and c has the parts a, b and c
+         */
+        private void addParts(TreeSet<String> parts){
+            for (MovieQuery part : new MovieQuery[]{left, right}){
+                if (part instanceof Combination && ((Combination) part).op == op){
+                    ((Combination) part).addParts(parts);
+                }
+                else{
+                    parts.add(part.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Not is true when a query is false
+     */
+    private static class Not extends MovieQuery
+    {
+        private MovieQuery inner;
+
+        Not(MovieQuery inner)
+        {
+            this.inner = inner;
+        }
+
+        public boolean matches(Movie m){
+            return !inner.matches(m);
+        }
+
+        public long[] evaluate(TestBitmapIndex index, int fromWord, int toWord){
+            long[] bits = inner.evaluate(index, fromWord, toWord);
+            for (int i = 0; i < bits.length; i++){
+                bits[i] = ~bits[i] & index.allWord(fromWord + i);
+            }
+            return bits;
+        }
+
+        public String toString(){
+            return "not " + inner;
+        }
+
+        public String getKey(){
+            return "not(" + inner.getKey() + ")";
+        }
+    }
+}
@@ -0,0 +1,394 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * MovieRanking keeps a list of movies sorted from most to least feminist, together with their feminist scores, so
+ * that rankings can be read without calculating or comparing scores again. Movies with the same score (rounded to
+ * a multiple of 0.0001) are ranked in reverse alphabetical order of their titles, as in rankMovies(). Movies without
+ * a cast have no score and are ranked last.
+ * Movies can be added to and removed from the ranking one at a time. A movie whose score changed must be removed
+ * with its old score and added again.
+ *
+ * The ranking is kept in chunks of at most CHUNK movies, in order, so adding or removing a movie only moves the
+ * movies of its chunk. copy() only copies the array of the chunks, and the copy and the original share the chunks
+ * until one of them changes a chunk, which it copies first, so a copy that moves a few movies costs time and memory
+ * proportional to the number of chunks, not to the size of the ranking.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class MovieRanking
+{
+    private static final double MIN_DIFF = 0.0001; //scores are rounded to a multiple of this, as in Movie.compareTo()
+    private static final int CHUNK = 512; //most movies in a chunk; a full chunk is split in two to add a movie
+    private Chunk[] chunks; //chunks[c] for c < numChunks, in order; none is empty
+    private int[] starts; //starts[c] is the rank of the first movie of chunks[c]
+    private boolean[] owned; //owned[c] is true if chunks[c] is not shared with another ranking
+    private int numChunks;
+    private int size;
+
+    /**
+     * Consecutive movies of the ranking, with their feminist scores
+     */
+    private static class Chunk
+    {
+        private Movie[] order = new Movie[CHUNK]; //order[k] for k < size, best first
+        private double[] scores = new double[CHUNK]; //scores[k] is the feminist score of order[k]
+        private int size;
+
+        /**
+         * Method copy returns a copy of the chunk that can be changed without changing this one
+         */
+        private Chunk copy(){
+            Chunk copy = new Chunk();
+            copy.order = order.clone();
+            copy.scores = scores.clone();
+            copy.size = size;
+            return copy;
+        }
+    }
+
+    /**
+     * Constructor for objects of class MovieRanking
+     *
+     * @param movies the movies to rank
+     */
+    public MovieRanking(List<Movie> movies)
+    {
+        final Movie[] unsorted = movies.toArray(new Movie[movies.size()]);
+        final double[] score = new double[unsorted.length];
+        Integer[] positions = new Integer[unsorted.length];
+        for (int i = 0; i < unsorted.length; i++){
+            score[i] = scoreOf(unsorted[i]);
+            positions[i] = i;
+        }
+        Arrays.sort(positions, new Comparator<Integer>(){
+            public int compare(Integer a, Integer b){
+                return compareRanks(score[a], unsorted[a], score[b], unsorted[b]);
+            }
+        });
+        int capacity = Math.max(1, (unsorted.length + CHUNK - 1) / CHUNK);
+        chunks = new Chunk[capacity];
+        starts = new int[capacity];
+        owned = new boolean[capacity];
+        for (int r = 0; r < positions.length; r++){
+            int c = r / CHUNK;
+            if (c == numChunks){
+                chunks[c] = new Chunk();
+                starts[c] = r;
+                owned[c] = true;
+                numChunks++;
+            }
+            Chunk chunk = chunks[c];
+            chunk.order[chunk.size] = unsorted[positions[r]];
+            chunk.scores[chunk.size++] = score[positions[r]];
+        }
+        size = unsorted.length;
+    }
+
+    /**
+     * Method copy returns a new ranking with the same movies, that can be changed without changing this one. The
+     * chunks are shared until one of the rankings changes them.
+     *
+     * @return the copy
+     */
+    public MovieRanking copy(){
+        MovieRanking copy = new MovieRanking(new LinkedList<Movie>());
+        copy.chunks = chunks.clone();
+        copy.starts = starts.clone();
+        copy.owned = new boolean[chunks.length];
+        Arrays.fill(owned, false);
+        copy.numChunks = numChunks;
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Method own returns the chunk c, after copying it if it is shared with another ranking
+     */
+    private Chunk own(int c){
+        if (!owned[c]){
+            chunks[c] = chunks[c].copy();
+            owned[c] = true;
+        }
+        return chunks[c];
+    }
+
+    /**
+     * Method add adds a movie to the ranking, at the place given by its current score
+     *
+     * @param m the movie
+     */
+    public void add(Movie m){
+        double score = scoreOf(m);
+        int c;
+        if (numChunks == 0){
+            insertChunk(0, new Chunk());
+            starts[0] = 0;
+            c = 0;
+        }
+        else{
+            c = Math.min(findChunk(score, m), numChunks - 1); //after every movie: at the end of the last chunk
+        }
+        if (chunks[c].size == CHUNK){
+            split(c);
+            if (compareRanks(chunks[c + 1].scores[0], chunks[c + 1].order[0], score, m) < 0){
+                c++;
+            }
+        }
+        Chunk chunk = own(c);
+        int k = lowerBound(chunk, score, m);
+        System.arraycopy(chunk.order, k, chunk.order, k + 1, chunk.size - k);
+        System.arraycopy(chunk.scores, k, chunk.scores, k + 1, chunk.size - k);
+        chunk.order[k] = m;
+        chunk.scores[k] = score;
+        chunk.size++;
+        moveStarts(c + 1, 1);
+        size++;
+    }
+
+    /**
+     * Method remove removes a movie from the ranking
+     *
+     * @param m the movie
+     * @param score the score the movie had when it was added (see scoreOf())
+     * @return true if the movie was in the ranking
+     */
+    public boolean remove(Movie m, double score){
+        //movies with the same score and title are next to each other, from the first one found; look for this one
+        for (int c = findChunk(score, m); c < numChunks; c++){
+            Chunk chunk = chunks[c];
+            for (int k = lowerBound(chunk, score, m); k < chunk.size; k++){
+                if (compareRanks(chunk.scores[k], chunk.order[k], score, m) != 0){
+                    return false;
+                }
+                if (chunk.order[k] == m){
+                    chunk = own(c);
+                    System.arraycopy(chunk.order, k + 1, chunk.order, k, chunk.size - k - 1);
+                    System.arraycopy(chunk.scores, k + 1, chunk.scores, k, chunk.size - k - 1);
+                    chunk.size--;
+                    chunk.order[chunk.size] = null;
+                    moveStarts(c + 1, -1);
+                    size--;
+                    if (chunk.size == 0){
+                        removeChunk(c);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method findChunk returns the first chunk whose last movie is not ranked before a movie with the given score,
+     * by binary search, or numChunks if there is none. The chunks before it only have movies ranked before it.
+     */
+    private int findChunk(double score, Movie m){
+        int low = 0;
+        int high = numChunks - 1;
+        while (low <= high){
+            int middle = (low + high) >>> 1;
+            Chunk chunk = chunks[middle];
+            int last = chunk.size - 1;
+            if (compareRanks(chunk.scores[last], chunk.order[last], score, m) < 0){
+                low = middle + 1;
+            }
+            else{
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Method lowerBound returns the first place of a chunk whose movie is not ranked before a movie with the given
+     * score, by binary search, or the size of the chunk if there is none
+     */
+    private static int lowerBound(Chunk chunk, double score, Movie m){
+        int low = 0;
+        int high = chunk.size - 1;
+        while (low <= high){
+            int middle = (low + high) >>> 1;
+            if (compareRanks(chunk.scores[middle], chunk.order[middle], score, m) < 0){
+                low = middle + 1;
+            }
+            else{
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Method split moves the second half of the full chunk c to a new chunk after it
+     */
+    private void split(int c){
+        Chunk full = own(c);
+        Chunk half = new Chunk();
+        half.size = full.size / 2;
+        int kept = full.size - half.size;
+        System.arraycopy(full.order, kept, half.order, 0, half.size);
+        System.arraycopy(full.scores, kept, half.scores, 0, half.size);
+        Arrays.fill(full.order, kept, full.size, null);
+        full.size = kept;
+        insertChunk(c + 1, half);
+        starts[c + 1] = starts[c] + kept;
+    }
+
+    /**
+     * Method insertChunk puts a chunk of this ranking at place c, moving the following ones; its start is set by
+     * the caller
+     */
+    private void insertChunk(int c, Chunk chunk){
+        if (numChunks == chunks.length){
+            chunks = Arrays.copyOf(chunks, numChunks * 2);
+            starts = Arrays.copyOf(starts, numChunks * 2);
+            owned = Arrays.copyOf(owned, numChunks * 2);
+        }
+        System.arraycopy(chunks, c, chunks, c + 1, numChunks - c);
+        System.arraycopy(starts, c, starts, c + 1, numChunks - c);
+        System.arraycopy(owned, c, owned, c + 1, numChunks - c);
+        chunks[c] = chunk;
+        owned[c] = true;
+        numChunks++;
+    }
+
+    /**
+     * Method removeChunk removes the empty chunk c, moving the following ones
+     */
+    private void removeChunk(int c){
+        System.arraycopy(chunks, c + 1, chunks, c, numChunks - c - 1);
+        System.arraycopy(starts, c + 1, starts, c, numChunks - c - 1);
+        System.arraycopy(owned, c + 1, owned, c, numChunks - c - 1);
+        numChunks--;
+        chunks[numChunks] = null;
+    }
+
+    /**
+     * Method moveStarts adds change to the starts of the chunks from c on
+     */
+    private void moveStarts(int c, int change){
+        for (; c < numChunks; c++){
+            starts[c] += change;
+        }
+    }
+
+    /**
+     * Method scoreOf returns the feminist score used to rank a movie, or NaN if it has no cast.
+     *
+     * @param m the movie
+     * @return the score of the movie
+     */
+    public static double scoreOf(Movie m){
+        if (m.getCastSize() == 0){
+            return Double.NaN;
+        }
+        return m.feministScore();
+    }
+
+    /**
+     * Method compareRanks returns a negative number if the first movie is ranked before the second one, a positive
+     * number if it is ranked after it, and 0 if they are the same.
+     */
+    static int compareRanks(double score1, Movie m1, double score2, Movie m2){
+        int byScore = compareScores(score1, score2);
+        return byScore != 0 ? byScore : m2.getTitle().compareTo(m1.getTitle());
+    }
+
+    /**
+     * Method compareScores compares two scores as compareRanks() does, without the titles: it returns 0 if the
+     * scores are the same, and the movies are then ranked by title. Scores are rounded to a multiple of MIN_DIFF
+     * before they are compared; unlike a tolerance, this keeps the order consistent for sorting (with a tolerance,
+     * a could be the same as b and b as c, while a is before c).
+     */
+    static int compareScores(double score1, double score2){
+        if (Double.isNaN(score1) != Double.isNaN(score2)){
+            return Double.isNaN(score1) ? 1 : -1;
+        }
+        if (Double.isNaN(score1)){
+            return 0;
+        }
+        return Long.compare(Math.round(score2 / MIN_DIFF), Math.round(score1 / MIN_DIFF));
+    }
+
+    /**
+     * size() returns the number of ranked movies
+     *
+     * @return number of movies
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Method getMovie returns the movie with the given rank
+     *
+     * @param rank the rank, 0 for the most feminist movie
+     * @return the movie
+     */
+    public Movie getMovie(int rank){
+        checkRank(rank);
+        int c = chunkOf(rank);
+        return chunks[c].order[rank - starts[c]];
+    }
+
+    /**
+     * Method getScore returns the feminist score of the movie with the given rank
+     *
+     * @param rank the rank, 0 for the most feminist movie
+     * @return the score, NaN if the movie has no cast
+     */
+    public double getScore(int rank){
+        checkRank(rank);
+        int c = chunkOf(rank);
+        return chunks[c].scores[rank - starts[c]];
+    }
+
+    /**
+     * Method chunkOf returns the chunk of the movie with the given rank, by binary search on the starts
+     */
+    private int chunkOf(int rank){
+        int low = 0;
+        int high = numChunks - 1;
+        while (low < high){
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= rank){
+                low = middle;
+            }
+            else{
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void checkRank(int rank){
+        if (rank < 0 || rank >= size){
+            throw new IndexOutOfBoundsException("Rank " + rank + ", size " + size);
+        }
+    }
+
+    /**
+     * Method getMovies returns the movies with ranks from first (inclusive) to last (exclusive), in order.
+     * Ranks outside of the ranking are left out.
+     *
+     * @param first the first rank
+     * @param last the rank after the last one
+     * @return a LinkedList of the movies
+     */
+    public LinkedList<Movie> getMovies(int first, int last){
+        LinkedList<Movie> movies = new LinkedList<Movie>();
+        int r = Math.max(0, first);
+        int end = Math.min(last, size);
+        for (int c = r < end ? chunkOf(r) : numChunks; r < end; c++){
+            Chunk chunk = chunks[c];
+            for (int k = r - starts[c]; k < chunk.size && r < end; k++, r++){
+                movies.add(chunk.order[k]);
+            }
+        }
+        return movies;
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MovieReloader watches the test results file and the cast file of a MovieCollection, and reloads the collection
+ * (see MovieCollection.reload()) on a thread of its own when one of them is created, replaced or changed. The
+ * collection keeps answering queries with the old movies while the new ones are read, and switches to them in a
+ * single step, so readers never wait and never see a collection that is half read.
+ *
+ * Files are often written in several steps, so the reload only starts once neither file has changed for a quiet
+ * period. If the files cannot be read, or reload() finds them empty or mostly malformed, the collection keeps its
+ * old movies; the error is printed and kept, and the next change is tried again. The number of reloads and
+ * failures, the time the last reload took and its error can be read at any time (and are also recorded in Metrics).
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class MovieReloader
+{
+    public static final long QUIET_MILLIS = 1000; //time without changes before reloading
+    private static final Metrics.Timer RELOAD = Metrics.timer("reload", "Time to reload the collection from its files");
+    private static final Metrics.Counter FAILURES = Metrics.counter("reload_failures",
+        "Reloads that failed and kept the old movies");
+
+    private MovieCollection collection;
+    private Path testsFile;
+    private Path castsFile;
+    private long quietMillis;
+    private WatchService watcher;
+    private Thread thread;
+    private volatile int reloads; //reloads that replaced the movies
+    private volatile int failures;
+    private volatile long lastDurationNanos;
+    private volatile long lastReloadTime; //System.currentTimeMillis() at the end of the last attempt, 0 if none
+    private volatile String lastError; //null if the last attempt worked
+
+    /**
+     * Constructor for objects of class MovieReloader, which waits QUIET_MILLIS after the last change
+     *
+     * @param collection the collection to reload
+     */
+    public MovieReloader(MovieCollection collection)
+    {
+        this(collection, QUIET_MILLIS);
+    }
+
+    /**
+     * Constructor for objects of class MovieReloader
+     *
+     * @param collection the collection to reload
+     * @param quietMillis the time without changes to the files before the collection is reloaded
+     */
+    public MovieReloader(MovieCollection collection, long quietMillis)
+    {
+        this.collection = collection;
+        this.testsFile = Paths.get(collection.getTestsFileName()).toAbsolutePath();
+        this.castsFile = Paths.get(collection.getCastsFileName()).toAbsolutePath();
+        this.quietMillis = quietMillis;
+    }
+
+    /**
+     * Method start starts watching the files. The directories of both files must exist.
+     */
+    public synchronized void start() throws IOException{
+        if (thread != null){
+            return;
+        }
+        watcher = FileSystems.getDefault().newWatchService();
+        try{
+            register(testsFile.getParent());
+            if (!castsFile.getParent().equals(testsFile.getParent())){
+                register(castsFile.getParent());
+            }
+        }
+        catch (IOException ex){
+            watcher.close();
+            throw ex;
+        }
+        thread = new Thread(() -> watch(), "MovieReloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void register(Path directory) throws IOException{
+        directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Method watch waits for changes to the files and reloads the collection, until stop() is called
+     */
+    private void watch(){
+        try{
+            while (true){
+                if (!changed(watcher.take())){
+                    continue;
+                }
+                //wait until the files have not changed for quietMillis
+                WatchKey key;
+                while ((key = watcher.poll(quietMillis, TimeUnit.MILLISECONDS)) != null){
+                    changed(key);
+                }
+                reloadNow();
+            }
+        }
+        catch (ClosedWatchServiceException | InterruptedException ex){
+            //stopped
+        }
+    }
+
+    /**
+     * Method changed reads the events of a key and tells whether one of them is about the files of the collection
+     */
+    private boolean changed(WatchKey key){
+        boolean changed = false;
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()){
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW){
+                changed = true; //events were lost
+            }
+            else{
+                Path file = directory.resolve((Path) event.context());
+                changed |= file.equals(testsFile) || file.equals(castsFile);
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Method reloadNow reloads the collection at once, on the calling thread, and records how it went
+     *
+     * @return true if the collection was reloaded, false if it kept its old movies
+     */
+    public boolean reloadNow(){
+        long start = System.nanoTime();
+        long metricsStart = Metrics.start();
+        try{
+            collection.reload();
+            reloads++;
+            lastError = null;
+            return true;
+        }
+        catch (IOException | RuntimeException ex){
+            System.out.println("Reload failed, keeping the old movies: " + ex);
+            failures++;
+            FAILURES.increment();
+            lastError = String.valueOf(ex);
+            return false;
+        }
+        finally{
+            lastDurationNanos = System.nanoTime() - start;
+            lastReloadTime = System.currentTimeMillis();
+            RELOAD.stop(metricsStart);
+        }
+    }
+
+    /**
+     * Method stop stops watching the files. A reload that already started is finished.
+     */
+    public synchronized void stop(){
+        if (thread == null){
+            return;
+        }
+        try{
+            watcher.close();
+        }
+        catch (IOException ex){
+            System.out.println(ex);
+        }
+        thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * getReloads() returns the number of reloads that replaced the movies of the collection
+     *
+     * @return number of reloads
+     */
+    public int getReloads(){
+        return reloads;
+    }
+
+    /**
+     * getFailures() returns the number of reloads that failed, after which the collection kept its old movies
+     *
+     * @return number of failed reloads
+     */
+    public int getFailures(){
+        return failures;
+    }
+
+    /**
+     * getLastDurationMillis() returns the time the last reload took, whether it worked or not
+     *
+     * @return time in milliseconds, 0 if there was no reload
+     */
+    public double getLastDurationMillis(){
+        return lastDurationNanos / 1e6;
+    }
+
+    /**
+     * getLastReloadTime() returns when the last reload ended, whether it worked or not
+     *
+     * @return the time, as System.currentTimeMillis(), or 0 if there was no reload
+     */
+    public long getLastReloadTime(){
+        return lastReloadTime;
+    }
+
+    /**
+     * getLastError() returns why the last reload failed
+     *
+     * @return the error, or null if the last reload worked or there was none
+     */
+    public String getLastError(){
+        return lastError;
+    }
+
+    /**
+     * Method toString returns the figures of the reloader
+     *
+     * @return a string with the figures of the reloader
+     */
+    public String toString(){
+        String error = lastError;
+        return "MovieReloader: " + reloads + " reloads, " + failures + " failures, last took "
+            + getLastDurationMillis() + " ms" + (error == null ? "" : ", last error: " + error);
+    }
+
+    /**
+     * Method main for testing. Arguments: tests file, cast file. Loads the collection, reloads it whenever the
+     * files change, and prints the number of movies and the figures of the reloader every second.
+     *
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        MovieCollection collection = new MovieCollection(args[0], args[1]);
+        MovieReloader reloader = new MovieReloader(collection);
+        reloader.start();
+        while (true){
+            System.out.println(collection.getMovies().size() + " movies, passed Bechdel: "
+                               + collection.findAllMoviesPassedBechdel().size() + ". " + reloader);
+            Thread.sleep(1000);
+        }
+    }
+}
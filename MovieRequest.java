@@ -0,0 +1,185 @@
+import java.util.LinkedList;
+
+/**
+ * Represents one question to a collection that can be answered on its own, for example "the movies that passed
+ * Bechdel" or "the 10 most feminist movies", so that many of them can be sent to a QueryExecutor at once. A
+ * MovieRequest is answered from a CatalogSnapshot, the same way the MovieCollection method it is named after
+ * answers it.
+ *
+ * Two requests that ask the same question are equal, whichever way they were built: every request has a key, a
+ * string made from the question (for filters, the key of the MovieQuery, see MovieQuery.getKey()), and equals() and
+ * hashCode() use it.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public abstract class MovieRequest
+{
+    private String key;
+
+    private MovieRequest(String key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * Method filter returns a request for the movies that match a query, as MovieCollection.findAllMovies()
+     *
+     * @param query the query
+     * @return the request
+     */
+    public static MovieRequest filter(final MovieQuery query){
+        return new MovieRequest("filter " + query.getKey()){
+            public LinkedList<Movie> answer(CatalogSnapshot s){
+                return s.getTestIndex().select(query);
+            }
+        };
+    }
+
+    /**
+     * Method passedTest returns a request for the movies that passed the n-th test, as
+     * MovieCollection.findAllMoviesPassedTestNum()
+     *
+     * @param n index of the test, for example Movie.PIERCE
+     * @return the request
+     */
+    public static MovieRequest passedTest(int n){
+        return filter(MovieQuery.passed(n));
+    }
+
+    /**
+     * Method passedBechdel returns a request for the movies that passed the Bechdel test, as
+     * MovieCollection.findAllMoviesPassedBechdel()
+     *
+     * @return the request
+     */
+    public static MovieRequest passedBechdel(){
+        return filter(MovieQuery.passed(Movie.BECHDEL));
+    }
+
+    /**
+     * Method passedPorL returns a request for the movies that passed the Pierce or the Landau test, as
+     * MovieCollection.findAllMoviesPassedPorL()
+     *
+     * @return the request
+     */
+    public static MovieRequest passedPorL(){
+        return filter(MovieQuery.passed(Movie.PIERCE).or(MovieQuery.passed(Movie.LANDAU)));
+    }
+
+    /**
+     * Method passedWnotRD returns a request for the movies that passed the White test and failed the Rees-Davies
+     * test, as MovieCollection.findAllMoviesPassedWnotRD()
+     *
+     * @return the request
+     */
+    public static MovieRequest passedWnotRD(){
+        return filter(MovieQuery.passed(Movie.WHITE).and(MovieQuery.failed(Movie.REES_DAVIES)));
+    }
+
+    /**
+     * Method topK returns a request for the k most feminist movies, as MovieCollection.topK()
+     *
+     * @param k the number of movies
+     * @return the request
+     */
+    public static MovieRequest topK(final int k){
+        return rankPage(0, k);
+    }
+
+    /**
+     * Method bottomK returns a request for the k least feminist movies, from least to most feminist, as
+     * MovieCollection.bottomK()
+     *
+     * @param k the number of movies
+     * @return the request
+     */
+    public static MovieRequest bottomK(final int k){
+        return new MovieRequest("bottomK " + k){
+            public LinkedList<Movie> answer(CatalogSnapshot s){
+                LinkedList<Movie> bottom = new LinkedList<Movie>();
+                MovieRanking ranking = s.getRanking();
+                for (int r = ranking.size() - 1; r >= Math.max(0, ranking.size() - k); r--){
+                    bottom.add(ranking.getMovie(r));
+                }
+                return bottom;
+            }
+        };
+    }
+
+    /**
+     * Method rankPage returns a request for count movies of the ranking starting at rank first, as
+     * MovieCollection.rankPage()
+     *
+     * @param first the rank of the first movie, 0 for the most feminist movie
+     * @param count the number of movies
+     * @return the request
+     */
+    public static MovieRequest rankPage(final int first, final int count){
+        return new MovieRequest("rankPage " + first + " " + count){
+            public LinkedList<Movie> answer(CatalogSnapshot s){
+                return s.getRanking().getMovies(first, first + count);
+            }
+        };
+    }
+
+    /**
+     * Method topK returns a request for the k most feminist movies that match a query, as
+     * MovieCollection.topK(query, k)
+     *
+     * @param query the query
+     * @param k the number of movies
+     * @return the request
+     */
+    public static MovieRequest topK(final MovieQuery query, final int k){
+        return new MovieRequest("topK " + k + " " + query.getKey()){
+            public LinkedList<Movie> answer(CatalogSnapshot s){
+                return TopMovies.top(s.getTestIndex().select(query), k);
+            }
+        };
+    }
+
+    /**
+     * Method answer answers this request from a snapshot
+     *
+     * @param s the snapshot, which is not changed
+     * @return a new LinkedList with the movies
+     */
+    public abstract LinkedList<Movie> answer(CatalogSnapshot s);
+
+    /**
+     * getKey() returns the key of this request: requests with the same key ask the same question
+     *
+     * @return the key
+     */
+    public String getKey(){
+        return key;
+    }
+
+    /**
+     * Tests this request against the input one and determines whether they ask the same question.
+     *
+     * @return true if both objects are requests with the same key
+     */
+    public boolean equals(Object other){
+        return other instanceof MovieRequest && key.equals(((MovieRequest) other).key);
+    }
+
+    /**
+     * Method hashCode returns the hash code of the key, so that equal requests have the same hash code
+     *
+     * @return the hash code
+     */
+    public int hashCode(){
+        return key.hashCode();
+    }
+
+    /**
+     * Method toString returns the key of the request
+     *
+     * @return the key
+     */
+    public String toString(){
+        return key;
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.*;
+import java.util.LinkedList;
+
+/**
+ * MovieStream reads the test results file and the cast file together, one movie at a time, for collections that
+ * are too big to keep in memory. Both files must be sorted by title (in the order of String.compareTo(), which for
+ * plain ASCII titles is the order of "LC_ALL=C sort"), so they can be read side by side like a merge: for every line
+ * of the test results file, the following lines of the cast file with the same title are its cast. Each movie is
+ * complete when the first line of the next title is read; it is then given to a Handler and forgotten.
+ *
+ * Only one movie and its cast are in memory at a time, plus whatever the handler keeps: topK() keeps k movies, and
+ * count() keeps nothing. The actors are interned in a registry that is shared by the movies of one process(), so 
+ * an actor who is in many movies is kept once and no registry is made per movie. When it holds REGISTRY_ACTORS 
+ * actors, the following movies start a new one, so the actors of the whole file are never kept either; movies kept 
+ * by the handler keep their own registry. Movies read this way must not be added to a MovieCollection.
+ *
+ * As with MovieCollection, the first row of each file is a header, and cast rows about movies that are not in the
+ * test results file are skipped (see getSkippedRows()). If a title appears on several rows of the test results
+ * file, the cast goes to the first one. Both files are read with a CsvTokenizer, so quoted fields may contain
+ * commas and new lines; malformed rows, rows with more than 64 test results and cast rows with fewer than six
+ * fields are skipped and handed to a RejectHandler, as by MovieCollection.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class MovieStream
+{
+    public static final int REGISTRY_ACTORS = 1 << 16; //actors interned in one registry before a new one is started
+    private String testsFile;
+    private String castsFile;
+    private CsvTokenizer.RejectHandler rejects; //receives the malformed rows of the files
+    private int skippedRows; //cast lines without a movie in the last process()
+
+    /**
+     * Handler receives the movies of the stream, one at a time, in the order of the test results file
+     */
+    public interface Handler
+    {
+        void movie(Movie m);
+    }
+
+    /**
+     * Constructor for objects of class MovieStream
+     *
+     * @param testsFileName the test results file, sorted by title
+     * @param castsFileName the cast file, sorted by title
+     */
+    public MovieStream(String testsFileName, String castsFileName)
+    {
+        this(testsFileName, castsFileName, CsvTokenizer.PRINT);
+    }
+
+    /**
+     * Constructor for objects of class MovieStream whose malformed rows are handed to rejects instead of printed
+     *
+     * @param testsFileName the test results file, sorted by title
+     * @param castsFileName the cast file, sorted by title
+     * @param rejects receives the rows that could not be read
+     */
+    public MovieStream(String testsFileName, String castsFileName, CsvTokenizer.RejectHandler rejects)
+    {
+        this.testsFile = testsFileName;
+        this.castsFile = castsFileName;
+        this.rejects = rejects;
+    }
+
+    /**
+     * Method process reads both files once, and gives every movie, with its test results and its cast, to the
+     * handler.
+     *
+     * @param handler receives the movies
+     * @throws IOException if a file cannot be read or is not sorted by title
+     */
+    public void process(Handler handler) throws IOException{
+        skippedRows = 0;
+        try (Reader testsIn = new FileReader(testsFile);
+             Reader castsIn = new FileReader(castsFile)){
+            CsvTokenizer tests = new CsvTokenizer(testsIn, testsFile, rejects);
+            CsvTokenizer casts = new CsvTokenizer(castsIn, castsFile, rejects);
+            tests.next(); //discard headers
+            casts.next();
+            String castTitle = nextCast(casts, null);
+            String previous = null; //title of the previous movie
+            ActorRegistry registry = new ActorRegistry();
+            while (tests.next()){
+                String title = tests.getField(0);
+                if (previous != null && title.compareTo(previous) < 0){
+                    throw new IOException(testsFile + " is not sorted by title at line " + tests.getLineNumber());
+                }
+                if (registry.size() >= REGISTRY_ACTORS){
+                    registry = new ActorRegistry(); //the movies already given out keep the old one
+                }
+                Movie m = new Movie(title, registry);
+                try{
+                    m.setTestResults(tests, 0);
+                }
+                catch (IllegalArgumentException ex){
+                    tests.reject(ex.getMessage());
+                    continue;
+                }
+                //cast rows before this title have no movie
+                while (castTitle != null && castTitle.compareTo(title) < 0){
+                    skippedRows++;
+                    castTitle = nextCast(casts, castTitle);
+                }
+                boolean repeated = title.equals(previous); //the cast went to the first movie with this title
+                while (!repeated && castTitle != null && castTitle.equals(title)){
+                    CastRow row = CastRow.parse(casts);
+                    m.addActor(row.getActor(), row.getType());
+                    castTitle = nextCast(casts, castTitle);
+                }
+                handler.movie(m);
+                previous = title;
+            }
+            while (castTitle != null){
+                skippedRows++;
+                castTitle = nextCast(casts, castTitle);
+            }
+        }
+    }
+
+    /**
+     * Method nextCast reads the next cast row with all its fields, rejecting the shorter ones, and returns its 
+     * title, checking that the file is still sorted
+     *
+     * @param casts the rows of the cast file
+     * @param previous the title of the row before, null for the first row
+     * @return the title, or null at the end of the file
+     */
+    private String nextCast(CsvTokenizer casts, String previous) throws IOException{
+        while (casts.next()){
+            if (casts.size() < CastRow.FIELDS){
+                casts.reject("a cast line has " + CastRow.FIELDS + " fields");
+                continue;
+            }
+            String title = casts.getField(0);
+            if (previous != null && title.compareTo(previous) < 0){
+                throw new IOException(castsFile + " is not sorted by title at line " + casts.getLineNumber());
+            }
+            return title;
+        }
+        return null;
+    }
+
+    /**
+     * Method topK returns the k most feminist movies of the files, in the order of MovieCollection.topK(), keeping
+     * only k movies in memory.
+     *
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies, from most to least feminist
+     * @throws IOException if a file cannot be read or is not sorted by title
+     */
+    public LinkedList<Movie> topK(int k) throws IOException{
+        TopMovies top = new TopMovies(k, true);
+        process(m -> top.offer(m));
+        return top.getMovies();
+    }
+
+    /**
+     * Method count returns the number of movies of the files that match the query
+     *
+     * @param query the query
+     * @return the number of movies that match
+     * @throws IOException if a file cannot be read or is not sorted by title
+     */
+    public int count(MovieQuery query) throws IOException{
+        int[] count = new int[1];
+        process(m -> {
+            if (query.matches(m)){
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * getSkippedRows() returns the number of cast lines that were skipped by the last process(), because their
+     * movie is not in the test results file
+     *
+     * @return number of skipped cast lines
+     */
+    public int getSkippedRows(){
+        return skippedRows;
+    }
+
+    /**
+     * Method main for testing. Arguments: tests file, cast file (both sorted by title), [k]. Prints every movie with
+     * its score, then the k most feminist movies.
+     *
+     */
+    public static void main(String[] args) throws IOException{
+        MovieStream stream = new MovieStream(args[0], args[1]);
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        stream.process(m -> System.out.println(m + "   Score: " + m.feministScore()));
+        System.out.println("Skipped cast lines: " + stream.getSkippedRows());
+        System.out.println("Top " + k + ": ");
+        for (Movie m : stream.topK(k)){
+            System.out.println(m.getTitle() + "   Score: " + m.feministScore());
+        }
+        System.out.println("Passed Bechdel: " + stream.count(MovieQuery.passed(Movie.BECHDEL)));
+    }
+}
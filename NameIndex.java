@@ -0,0 +1,604 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * NameIndex finds movies by title, or actors by name, as a search box needs them: the exact name (find()), every
+ * name that starts with what was typed so far, whatever the case (prefix()), and names that are a few typing
+ * mistakes away from it (fuzzy()). suggest() puts the last two together.
+ *
+ * The names are kept in lower case in sorted arrays, which work as a compact trie: the names with a given prefix
+ * are next to each other, and are found with a binary search. For fuzzy(), every name is split into grams of Q
+ * characters, and the index keeps, for every gram, the names that have it. A name at most d edits (insertions,
+ * deletions or changes of one character) away from the text shares all but at most Q * d of the grams of the text,
+ * so only names that share enough grams are compared with the text, and the comparison stops as soon as the
+ * distance is more than d.
+ *
+ * Every entry of the index has an id (for the movies of a CatalogSnapshot their position, for its actors their id
+ * in the registry), and the movie or actor with that id is looked up when it is found, so an index can be shared by
+ * snapshots where movies were replaced by copies with the same title, and actors who are in no movie anymore are
+ * left out without taking their names out. The entries are kept in a few segments, each with its own sorted keys
+ * and grams, and searches put the results of the segments together. add() makes an index with more entries in a
+ * new segment, and merges the last segments while the newest one is more than half as big as the one before it, so
+ * the number of segments stays about the logarithm of the number of entries and every entry is merged again a
+ * logarithmic number of times: adding a few names costs time for those names, not for the whole index.
+ *
+ * An index never changes once it is made, so any number of threads can search it at the same time.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class NameIndex<T>
+{
+    public static final int Q = 3; //length of the grams used by fuzzy()
+    private static final char START = '\u0002'; //marks the start and the end of a name, so short names have grams
+    private static final char END = '\u0003';
+    private static final Metrics.Timer SEARCH = Metrics.timer("search", "Time to look up titles and actor names");
+    //grams shared with the text, for every key, for the searches of each thread in any index; all 0 between searches
+    private static final ThreadLocal<int[]> SHARED = ThreadLocal.withInitial(() -> new int[0]);
+
+    private Segment[] segments; //oldest first; the ids of a segment are higher than those of the ones before it
+    private IntFunction<T> valueOf; //the movie or actor with an id, or null if it is not in the index anymore
+
+    /**
+     * Some entries of the index, with their keys and grams
+     */
+    private static class Segment
+    {
+        private String[] keys; //the different names in lower case, sorted
+        private int[] firstEntry; //the entries of keys[k] are firstEntry[k] to firstEntry[k + 1] - 1
+        private String[] names; //the name of every entry, as it was given, in the order of keys
+        private int[] ids; //the id of every entry
+        private int[] gramTable; //hash table of the different grams of all the keys, as numbers (see gram())
+        private int[] gramNumbers; //number + 1 of the gram in the same slot of gramTable, or 0 for an empty slot
+        private int numGrams;
+        private int[] firstKey; //the keys with gram g are postings[firstKey[g]] to postings[firstKey[g + 1] - 1]
+        private int[] postings;
+
+        /**
+         * Constructor for objects of class Segment
+         *
+         * @param entryIds the ids of the entries, in increasing order
+         * @param entryNames the names of the entries
+         */
+        private Segment(int[] entryIds, String[] entryNames)
+        {
+            int n = entryIds.length;
+            String[] entryKeys = new String[n];
+            for (int i = 0; i < n; i++){
+                entryKeys[i] = normalize(entryNames[i]);
+            }
+            keys = entryKeys.clone();
+            Arrays.sort(keys);
+            Hashtable<String, Integer> keyNumbers = new Hashtable<String, Integer>(); //value = number in keys
+            int numKeys = 0;
+            for (int i = 0; i < n; i++){
+                if (numKeys == 0 || !keys[numKeys - 1].equals(keys[i])){
+                    keyNumbers.put(keys[i], numKeys);
+                    keys[numKeys++] = keys[i];
+                }
+            }
+            keys = Arrays.copyOf(keys, numKeys);
+            //the entries of every key, in the order of the ids
+            int[] entryKeyNumbers = new int[n];
+            firstEntry = new int[numKeys + 1];
+            for (int i = 0; i < n; i++){
+                entryKeyNumbers[i] = keyNumbers.get(entryKeys[i]);
+                firstEntry[entryKeyNumbers[i] + 1]++;
+            }
+            for (int k = 0; k < numKeys; k++){
+                firstEntry[k + 1] += firstEntry[k];
+            }
+            int[] filled = firstEntry.clone();
+            names = new String[n];
+            ids = new int[n];
+            for (int i = 0; i < n; i++){
+                int e = filled[entryKeyNumbers[i]]++;
+                names[e] = entryNames[i];
+                ids[e] = entryIds[i];
+            }
+            buildGrams();
+        }
+
+        /**
+         * Method merge returns a segment with the entries of this one and of a newer one, in the order of the ids
+         */
+        private Segment merge(Segment newer){
+            int[] mergedIds = new int[ids.length + newer.ids.length];
+            String[] mergedNames = new String[mergedIds.length];
+            int n = 0;
+            for (Segment segment : new Segment[]{this, newer}){
+                long[] byId = new long[segment.ids.length]; //id in the high half, entry in the low half
+                for (int e = 0; e < byId.length; e++){
+                    byId[e] = ((long) segment.ids[e] << 32) | e;
+                }
+                Arrays.sort(byId);
+                for (long entry : byId){
+                    mergedIds[n] = segment.ids[(int) entry];
+                    mergedNames[n++] = segment.names[(int) entry];
+                }
+            }
+            return new Segment(mergedIds, mergedNames);
+        }
+
+        /**
+         * Method close returns the keys of the segment that are at most maxEdits edits away from q (see fuzzy())
+         *
+         * @return the matches, with the distance in the high half and the number of the key in the low half
+         */
+        private long[] close(String q, int maxEdits){
+            long[] matches = new long[16];
+            int count = 0;
+            int[] textGrams = gramsOf(q);
+            int needed = textGrams.length - Q * maxEdits; //grams a close key shares with the text at least
+            if (needed <= 0){
+                for (int k = 0; k < keys.length; k++){
+                    int d = distance(q, keys[k], maxEdits);
+                    if (d <= maxEdits){
+                        if (count == matches.length){
+                            matches = Arrays.copyOf(matches, count * 2);
+                        }
+                        matches[count++] = ((long) d << 32) | k;
+                    }
+                }
+            }
+            else{
+                int[] sharedGrams = SHARED.get();
+                if (sharedGrams.length < keys.length){
+                    sharedGrams = new int[keys.length]; //as big as the biggest segment the thread searched
+                    SHARED.set(sharedGrams);
+                }
+                int[] touched = new int[16];
+                int numTouched = 0;
+                for (int gram : textGrams){
+                    int g = gramNumber(gram);
+                    if (g < 0){
+                        continue;
+                    }
+                    for (int p = firstKey[g]; p < firstKey[g + 1]; p++){
+                        int k = postings[p];
+                        if (sharedGrams[k]++ == 0){
+                            if (numTouched == touched.length){
+                                touched = Arrays.copyOf(touched, numTouched * 2);
+                            }
+                            touched[numTouched++] = k;
+                        }
+                    }
+                }
+                for (int t = 0; t < numTouched; t++){
+                    int k = touched[t];
+                    if (sharedGrams[k] >= needed){
+                        int d = distance(q, keys[k], maxEdits);
+                        if (d <= maxEdits){
+                            if (count == matches.length){
+                                matches = Arrays.copyOf(matches, count * 2);
+                            }
+                            matches[count++] = ((long) d << 32) | k;
+                        }
+                    }
+                    sharedGrams[k] = 0;
+                }
+            }
+            return Arrays.copyOf(matches, count);
+        }
+
+        /**
+         * Method buildGrams lists the keys that have every gram. Grams are numbered in the order they are first seen,
+         * the keys of every gram are counted, and then the postings are filled in the order of the keys.
+         */
+        private void buildGrams(){
+            int[][] keyGrams = new int[keys.length][];
+            gramTable = new int[1024];
+            gramNumbers = new int[1024];
+            int[] counts = new int[256];
+            for (int k = 0; k < keys.length; k++){
+                keyGrams[k] = gramsOf(keys[k]);
+                for (int i = 0; i < keyGrams[k].length; i++){
+                    int g = gramNumber(keyGrams[k][i]);
+                    if (g < 0){
+                        g = addGram(keyGrams[k][i]);
+                        if (g == counts.length){
+                            counts = Arrays.copyOf(counts, g * 2);
+                        }
+                    }
+                    keyGrams[k][i] = g;
+                    counts[g]++;
+                }
+            }
+            firstKey = new int[numGrams + 1];
+            for (int g = 0; g < numGrams; g++){
+                firstKey[g + 1] = firstKey[g] + counts[g];
+            }
+            postings = new int[firstKey[numGrams]];
+            int[] filled = Arrays.copyOf(firstKey, numGrams);
+            for (int k = 0; k < keys.length; k++){
+                for (int g : keyGrams[k]){
+                    postings[filled[g]++] = k;
+                }
+            }
+        }
+
+        /**
+         * Method gramNumber returns the number of a gram, or -1 if no key has it
+         */
+        private int gramNumber(int gram){
+            int mask = gramTable.length - 1;
+            for (int slot = (gram * 0x9E3779B1) >>> 7 & mask; gramNumbers[slot] != 0; slot = (slot + 1) & mask){
+                if (gramTable[slot] == gram){
+                    return gramNumbers[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Method addGram gives the next number to a gram that is not in gramTable yet, and makes the table twice as big
+         * when it is half full
+         */
+        private int addGram(int gram){
+            if (2 * (numGrams + 1) > gramTable.length){
+                int[] oldTable = gramTable;
+                int[] oldNumbers = gramNumbers;
+                gramTable = new int[oldTable.length * 2];
+                gramNumbers = new int[oldTable.length * 2];
+                for (int slot = 0; slot < oldTable.length; slot++){
+                    if (oldNumbers[slot] != 0){
+                        put(oldTable[slot], oldNumbers[slot]);
+                    }
+                }
+            }
+            put(gram, ++numGrams);
+            return numGrams - 1;
+        }
+
+        private void put(int gram, int numberPlusOne){
+            int mask = gramTable.length - 1;
+            int slot = (gram * 0x9E3779B1) >>> 7 & mask;
+            while (gramNumbers[slot] != 0){
+                slot = (slot + 1) & mask;
+            }
+            gramTable[slot] = gram;
+            gramNumbers[slot] = numberPlusOne;
+        }
+    }
+
+    /**
+     * Constructor for objects of class NameIndex
+     *
+     * @param items the movies or actors to index; the id of each is its place in the list
+     * @param nameOf gives the name of an item, for example Movie::getTitle
+     */
+    public NameIndex(List<T> items, Function<T, String> nameOf)
+    {
+        List<T> values = new ArrayList<T>(items);
+        int[] itemIds = new int[values.size()];
+        String[] itemNames = new String[values.size()];
+        for (int i = 0; i < itemIds.length; i++){
+            itemIds[i] = i;
+            itemNames[i] = nameOf.apply(values.get(i));
+        }
+        segments = new Segment[]{new Segment(itemIds, itemNames)};
+        valueOf = values::get;
+    }
+
+    /**
+     * Constructor for objects of class NameIndex of the names with the given ids
+     *
+     * @param ids the ids, in increasing order
+     * @param names names[i] is the name with id ids[i]
+     * @param valueOf gives the movie or actor with an id, or null if it is not in the index
+     */
+    NameIndex(int[] ids, String[] names, IntFunction<T> valueOf)
+    {
+        segments = new Segment[]{new Segment(ids, names)};
+        this.valueOf = valueOf;
+    }
+
+    private NameIndex(Segment[] segments, IntFunction<T> valueOf)
+    {
+        this.segments = segments;
+        this.valueOf = valueOf;
+    }
+
+    /**
+     * Method add returns an index with the names of this one and the given ones, where the movies or actors are
+     * looked up with valueOf. The segments of this index are shared, but the newest ones are merged with the new
+     * names while the newest one is more than half as big as the one before it.
+     *
+     * @param ids the new ids, in increasing order and higher than those of this index; may be empty
+     * @param names names[i] is the name with id ids[i]
+     * @param valueOf gives the movie or actor with an id, or null if it is not in the index anymore
+     * @return the new index
+     */
+    NameIndex<T> add(int[] ids, String[] names, IntFunction<T> valueOf){
+        if (ids.length == 0){
+            return new NameIndex<T>(segments, valueOf);
+        }
+        Segment[] next = Arrays.copyOf(segments, segments.length + 1);
+        next[segments.length] = new Segment(ids, names);
+        int count = next.length;
+        while (count > 1 && next[count - 1].names.length * 2 > next[count - 2].names.length){
+            next[count - 2] = next[count - 2].merge(next[count - 1]);
+            count--;
+        }
+        return new NameIndex<T>(Arrays.copyOf(next, count), valueOf);
+    }
+
+    /**
+     * Method gramsOf returns the different grams of a key, sorted. The key is framed by START, START and END, so a
+     * key of n characters has n + 1 grams, some of which may be the same.
+     */
+    private static int[] gramsOf(String key){
+        String framed = "" + START + START + key + END;
+        int[] result = new int[key.length() + 1];
+        for (int i = 0; i < result.length; i++){
+            result[i] = gram(framed.charAt(i), framed.charAt(i + 1), framed.charAt(i + 2));
+        }
+        Arrays.sort(result);
+        int different = 0;
+        for (int i = 0; i < result.length; i++){
+            if (different == 0 || result[different - 1] != result[i]){
+                result[different++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, different);
+    }
+
+    /**
+     * Method gram turns Q characters into a number. Grams of characters below 1024 get different numbers; others
+     * may share one, which only makes fuzzy() compare a few more names.
+     */
+    private static int gram(char a, char b, char c){
+        return (a << 20) ^ (b << 10) ^ c;
+    }
+
+    /**
+     * Method normalize returns the key of a name: the name in lower case
+     */
+    private static String normalize(String name){
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * size() returns the number of movies or actors in the index, counting them one by one
+     *
+     * @return number of entries
+     */
+    public int size(){
+        int size = 0;
+        for (Segment segment : segments){
+            for (int id : segment.ids){
+                if (valueOf.apply(id) != null){
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Method find returns the movies or actors with exactly the given name
+     *
+     * @param name the name
+     * @return the movies or actors, in the order of their ids
+     */
+    public LinkedList<T> find(String name){
+        long start = Metrics.start();
+        LinkedList<T> found = new LinkedList<T>();
+        String key = normalize(name);
+        for (Segment segment : segments){
+            int k = Arrays.binarySearch(segment.keys, key);
+            if (k >= 0){
+                for (int e = segment.firstEntry[k]; e < segment.firstEntry[k + 1]; e++){
+                    T value = valueOf.apply(segment.ids[e]);
+                    if (value != null && segment.names[e].equals(name)){
+                        found.add(value);
+                    }
+                }
+            }
+        }
+        SEARCH.stop(start);
+        return found;
+    }
+
+    /**
+     * Method prefix returns the movies or actors whose name starts with the given text, whatever the case, in
+     * alphabetical order
+     *
+     * @param text the start of the name
+     * @param limit the largest number of movies or actors wanted
+     * @return the movies or actors, at most limit
+     */
+    public LinkedList<T> prefix(String text, int limit){
+        long start = Metrics.start();
+        LinkedList<T> found = new LinkedList<T>();
+        String p = normalize(text);
+        int[] next = new int[segments.length]; //the next key of every segment
+        for (int s = 0; s < segments.length; s++){
+            int k = Arrays.binarySearch(segments[s].keys, p);
+            next[s] = k < 0 ? -k - 1 : k; //first key from p on
+        }
+        while (found.size() < limit){
+            //the smallest next key that starts with p, from the oldest segment if several have it
+            int best = -1;
+            for (int s = 0; s < segments.length; s++){
+                String[] keys = segments[s].keys;
+                if (next[s] < keys.length && keys[next[s]].startsWith(p)
+                    && (best < 0 || keys[next[s]].compareTo(segments[best].keys[next[best]]) < 0)){
+                    best = s;
+                }
+            }
+            if (best < 0){
+                break;
+            }
+            addEntries(segments[best], next[best]++, found, limit);
+        }
+        SEARCH.stop(start);
+        return found;
+    }
+
+    /**
+     * Method fuzzy returns the movies or actors whose name is at most maxEdits edits (insertions, deletions or
+     * changes of one character) away from the given text, whatever the case: first the closest ones, and names at
+     * the same distance in alphabetical order. Texts of at most Q * maxEdits characters share no gram with some of
+     * the names they are close to, so for them every name of about the same length is compared.
+     *
+     * @param text the text
+     * @param maxEdits the largest number of edits
+     * @param limit the largest number of movies or actors wanted
+     * @return the movies or actors, at most limit
+     */
+    public LinkedList<T> fuzzy(String text, int maxEdits, int limit){
+        long start = Metrics.start();
+        String q = normalize(text);
+        long[][] matches = new long[segments.length][];
+        int count = 0;
+        for (int s = 0; s < segments.length; s++){
+            matches[s] = segments[s].close(q, maxEdits);
+            count += matches[s].length;
+        }
+        //every match, as segment and place in matches[segment], by distance, key and segment
+        Integer[] order = new Integer[count];
+        int[] matchSegments = new int[count];
+        int[] matchPlaces = new int[count];
+        int n = 0;
+        for (int s = 0; s < segments.length; s++){
+            for (int i = 0; i < matches[s].length; i++){
+                order[n] = n;
+                matchSegments[n] = s;
+                matchPlaces[n++] = i;
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>(){
+            public int compare(Integer a, Integer b){
+                long matchA = matches[matchSegments[a]][matchPlaces[a]];
+                long matchB = matches[matchSegments[b]][matchPlaces[b]];
+                int byDistance = Long.compare(matchA >>> 32, matchB >>> 32);
+                if (byDistance != 0){
+                    return byDistance;
+                }
+                int byKey = segments[matchSegments[a]].keys[(int) matchA]
+                    .compareTo(segments[matchSegments[b]].keys[(int) matchB]);
+                return byKey != 0 ? byKey : Integer.compare(matchSegments[a], matchSegments[b]);
+            }
+        });
+        LinkedList<T> found = new LinkedList<T>();
+        for (int i = 0; i < count && found.size() < limit; i++){
+            int s = matchSegments[order[i]];
+            addEntries(segments[s], (int) matches[s][matchPlaces[order[i]]], found, limit);
+        }
+        SEARCH.stop(start);
+        return found;
+    }
+
+    /**
+     * Method addEntries adds the movies or actors of the entries of a key of a segment to found, in the order of
+     * their ids, while found has less than limit
+     */
+    private void addEntries(Segment segment, int k, LinkedList<T> found, int limit){
+        for (int e = segment.firstEntry[k]; e < segment.firstEntry[k + 1] && found.size() < limit; e++){
+            T value = valueOf.apply(segment.ids[e]);
+            if (value != null){
+                found.add(value);
+            }
+        }
+    }
+
+    /**
+     * Method suggest returns what a search box should offer for the given text: the names that start with it, then
+     * the names that are close to it (see fuzzy()). Texts of up to 2 characters allow no edit, up to 5 characters
+     * one edit, and longer ones two edits.
+     *
+     * @param text the text typed so far
+     * @param limit the largest number of movies or actors wanted
+     * @return the movies or actors, at most limit, each once
+     */
+    public LinkedList<T> suggest(String text, int limit){
+        LinkedList<T> found = prefix(text, limit);
+        int maxEdits = text.length() <= 2 ? 0 : text.length() <= 5 ? 1 : 2;
+        if (found.size() < limit && maxEdits > 0){
+            for (T item : fuzzy(text, maxEdits, limit)){
+                if (found.size() < limit && !found.contains(item)){
+                    found.add(item);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Method distance returns the edit distance between two strings, or max + 1 if it is more than max. Only the
+     * cells of the table at most max away from its diagonal can hold a distance up to max, so only those are
+     * calculated, one row at a time, and the comparison stops when a whole row is more than max.
+     *
+     * @param a the first string
+     * @param b the second string
+     * @param max the largest distance wanted
+     * @return the distance, at most max + 1
+     */
+    static int distance(String a, String b, int max){
+        int n = a.length();
+        int m = b.length();
+        int far = max + 1; //any distance more than max
+        if (Math.abs(n - m) > max){
+            return far;
+        }
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++){
+            previous[j] = Math.min(j, far);
+        }
+        for (int i = 1; i <= n; i++){
+            int from = Math.max(1, i - max);
+            int to = Math.min(m, i + max);
+            current[from - 1] = from == 1 ? Math.min(i, far) : far;
+            int best = current[from - 1];
+            char c = a.charAt(i - 1);
+            for (int j = from; j <= to; j++){
+                int change = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(far, Math.min(change, Math.min(previous[j], current[j - 1]) + 1));
+                best = Math.min(best, current[j]);
+            }
+            if (to < m){
+                current[to + 1] = far; //outside of the band, read by the next row
+            }
+            if (best > max){
+                return far;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+
+    /**
+     * Method main for testing. Arguments: tests file, cast file, then any number of texts to search for among the
+     * titles and the actor names.
+     *
+     */
+    public static void main(String[] args){
+        MovieCollection collection = new MovieCollection(args[0], args[1]);
+        NameIndex<Movie> titles = collection.getTitleIndex();
+        NameIndex<Actor> actors = collection.getActorNameIndex();
+        System.out.println(titles.size() + " titles, " + actors.size() + " actors");
+        System.out.println("Testing distance() [3]: " + distance("kitten", "sitting", 5));
+        System.out.println("Testing distance() with max 1 [2]: " + distance("kitten", "sitting", 1));
+        for (int i = 2; i < args.length; i++){
+            long start = System.nanoTime();
+            LinkedList<Movie> movies = titles.suggest(args[i], 5);
+            LinkedList<Actor> people = actors.suggest(args[i], 5);
+            long micros = (System.nanoTime() - start) / 1000;
+            System.out.println("\"" + args[i] + "\" (" + micros + " us)");
+            System.out.println("  exact: " + titles.find(args[i]) + " " + actors.find(args[i]));
+            System.out.println("  movies: " + movies);
+            System.out.println("  actors: " + people);
+        }
+    }
+}
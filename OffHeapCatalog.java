@@ -0,0 +1,1200 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.NoSuchElementException;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * OffHeapCatalog keeps the movies of a catalogue outside of the Java heap, in direct ByteBuffers: the titles, names,
+ * genders and types of role as UTF-8 bytes, and the test results, scores, casts and filmographies as fixed size
+ * records of numbers. A catalogue of any size is then a handful of objects for the garbage collector, instead of a
+ * Movie with its arrays and an Actor with its Strings for every movie and person, so heap usage and collection
+ * pauses do not grow with the catalogue. The memory is given back when the catalog is garbage collected.
+ *
+ * Movies and actors are numbered from 0, movies in the order of the file and actors in the order they were first
+ * seen. They are read through views (MovieView and ActorView), small objects that can be moved from one movie or
+ * actor to another and that decode a String only when one is asked for, so a loop over the whole catalogue can use
+ * the same view for every movie. toMovie() and toActor() make an ordinary Movie or Actor when one is needed, for
+ * example to add it to a collection; their ids come from an ActorRegistry of the catalog, which only holds the
+ * actors that were asked for and goes away with the catalog. There is a hash table of the titles (findMovie()) and
+ * the ranking of MovieRanking (getRankedMovie(), topK()).
+ *
+ * A catalog is made from a CatalogSnapshot (of()), loaded from a snapshot file (load(), see SnapshotFile) or read
+ * from the test results file and the cast file (readFiles()). The last two make no Movie or Actor per movie or
+ * person, and keep no String: the data is copied into the buffers as it is read. A catalog cannot be changed, so it
+ * can be read by any number of threads, each with its own views; a view itself must only be used by one thread.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class OffHeapCatalog
+{
+    //a movie: its title (string number), number of results, passed and failed tests as bits, feminist score, its
+    //roles (first role and number of roles), female and male actors, and its other results (first one and number)
+    private static final int MOVIE_BYTES = 56;
+    private static final int TITLE = 0;
+    private static final int RESULTS = 4;
+    private static final int PASSED = 8;
+    private static final int FAILED = 16;
+    private static final int SCORE = 24;
+    private static final int CAST_START = 32;
+    private static final int CAST_SIZE = 36;
+    private static final int FEMALES = 40;
+    private static final int MALES = 44;
+    private static final int OTHERS_START = 48;
+    private static final int OTHERS_COUNT = 52;
+    //a role: the actor (actor number) and type of role (string number); the roles of a movie are next to each other
+    private static final int ROLE_BYTES = 8;
+    //an actor: name and gender (string numbers), and their movies (first entry in filmography and number of movies)
+    private static final int ACTOR_BYTES = 16;
+    private static final int NAME = 0;
+    private static final int GENDER = 4;
+    private static final int FILMS_START = 8;
+    private static final int FILMS_COUNT = 12;
+    //a result that is not "0", "1" or empty: the test and the result (string number)
+    private static final int OTHER_BYTES = 8;
+
+    private long version;
+    private int movieCount;
+    private int actorCount;
+    private int stringCount;
+    private ByteBuffer strings; //UTF-8 bytes of every string, one after the other
+    private ByteBuffer stringIndex; //for every string, where its bytes start and how many there are
+    private ByteBuffer movies;
+    private ByteBuffer roles;
+    private ByteBuffer actors;
+    private ByteBuffer others;
+    private ByteBuffer filmography; //movie numbers, the movies of every actor next to each other
+    private ByteBuffer titleTable; //hash table of the titles: movie number + 1, or 0 for an empty slot
+    private ByteBuffer ranking; //movie numbers, most feminist first
+    private ActorRegistry registry = new ActorRegistry(); //ids of the actors of toMovie() and toActor()
+
+    private OffHeapCatalog()
+    {
+    }
+
+    /**
+     * Method of copies a snapshot into a new catalog. The snapshot is not changed.
+     *
+     * @param snapshot the snapshot
+     * @return the catalog, with the version of the snapshot
+     */
+    public static OffHeapCatalog of(CatalogSnapshot snapshot){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try{
+            SnapshotFile.writePayload(snapshot, new DataOutputStream(bytes));
+        }
+        catch (IOException ex){ //not from memory
+            throw new UncheckedIOException(ex);
+        }
+        return read(ByteBuffer.wrap(bytes.toByteArray()), snapshot.getVersion());
+    }
+
+    /**
+     * Method load reads a snapshot file saved by SnapshotFile.save() into a new catalog. Strings are copied as
+     * bytes, so no Movie, Actor or String is made.
+     *
+     * @param fileName the file
+     * @return the catalog, with the version of the snapshot that was saved
+     * @throws IOException if the file cannot be read, is not a snapshot of this format version or is damaged
+     */
+    public static OffHeapCatalog load(String fileName) throws IOException{
+        ByteBuffer buffer = SnapshotFile.open(fileName);
+        try{
+            return read(buffer, buffer.getLong(8));
+        }
+        catch (RuntimeException ex){ //numbers out of range, or the payload ends too early
+            throw new IOException("Damaged snapshot file: " + fileName, ex);
+        }
+    }
+
+    /**
+     * Method readFiles reads the test results file and the cast file into a new catalog, with the same movies, 
+     * casts and scores as a MovieCollection of the same files. Malformed rows are printed (see CsvTokenizer.PRINT).
+     *
+     * @param testsFileName the test results file
+     * @param castsFileName the cast file
+     * @return the catalog, with version 0
+     * @throws IOException if a file cannot be read
+     */
+    public static OffHeapCatalog readFiles(String testsFileName, String castsFileName) throws IOException{
+        return readFiles(testsFileName, castsFileName, CsvTokenizer.PRINT);
+    }
+
+    /**
+     * Method readFiles reads the test results file and the cast file into a new catalog, with the same movies, 
+     * casts and scores as a MovieCollection of the same files. The rows are read one at a time and copied into 
+     * buffers outside of the heap, which grow as needed, so the heap only holds the row being read; there is no 
+     * CatalogSnapshot and no copy of the catalogue in a byte array, as with of(). The roles are sorted by movie at 
+     * the end, since the cast file need not be.
+     *
+     * @param testsFileName the test results file
+     * @param castsFileName the cast file
+     * @param rejects receives the malformed rows of both files
+     * @return the catalog, with version 0
+     * @throws IOException if a file cannot be read
+     * @throws NoSuchElementException if a file has no lines
+     */
+    public static OffHeapCatalog readFiles(String testsFileName, String castsFileName, 
+                                           CsvTokenizer.RejectHandler rejects) throws IOException{
+        Builder builder = new Builder();
+        try (Reader in = new FileReader(testsFileName)){
+            builder.readMovies(new CsvTokenizer(in, testsFileName, rejects), testsFileName);
+        }
+        try (Reader in = new FileReader(castsFileName)){
+            builder.readCasts(new CsvTokenizer(in, castsFileName, rejects), castsFileName);
+        }
+        return builder.finish();
+    }
+
+    /**
+     * Builder fills a catalog from the rows of the files, for readFiles(). Strings, actors and roles are found 
+     * again through hash tables of numbers, outside of the heap like the rest of the catalog, so that every title, 
+     * name, gender and type is kept once, and a role that is repeated only changes the type of the first one, as 
+     * in Movie.addActor().
+     */
+    private static class Builder
+    {
+        private static final int READ_ROLE_BYTES = 12; //movie, actor and type of a role, in the order read
+
+        private OffHeapCatalog c = new OffHeapCatalog();
+        private int stringBytes; //bytes of c.strings used
+        private ByteBuffer stringTable = allocate(1024 * 4); //string number + 1, or 0 for an empty slot
+        private ByteBuffer actorTable = allocate(1024 * 4); //actor number + 1, by name and gender
+        private ByteBuffer roleTable = allocate(1024 * 4); //role number + 1, by movie and actor
+        private ByteBuffer readRoles = allocate(1024L * READ_ROLE_BYTES);
+        private int roleCount;
+        private int otherCount;
+
+        Builder()
+        {
+            c.strings = allocate(1 << 16);
+            c.stringIndex = allocate(1024 * 8);
+            c.movies = allocate(1024L * MOVIE_BYTES);
+            c.actors = allocate(1024L * ACTOR_BYTES);
+            c.others = allocate(64L * OTHER_BYTES);
+        }
+
+        /**
+         * Method readMovies copies the movies of the test results file, as MovieCollection.readMovies(). The test 
+         * results of every row are read by the same Movie, so no Movie is made per row.
+         */
+        void readMovies(CsvTokenizer row, String fileName) throws IOException{
+            if (!row.next()){ //discard header
+                throw new NoSuchElementException(fileName + " has no lines");
+            }
+            Movie results = new Movie("");
+            while (row.next()){
+                try{
+                    results.replaceTestResults(row, 0); //the other fields are the test results
+                }
+                catch (IllegalArgumentException ex){
+                    row.reject(ex.getMessage());
+                    continue;
+                }
+                c.movies = ensure(c.movies, (c.movieCount + 1L) * MOVIE_BYTES);
+                int m = c.movieCount++ * MOVIE_BYTES;
+                c.movies.putInt(m + TITLE, string(row.getField(0)));
+                c.movies.putInt(m + RESULTS, results.getNumTestResults());
+                c.movies.putLong(m + PASSED, results.getPassedMask());
+                c.movies.putLong(m + FAILED, results.getFailedMask());
+                c.movies.putInt(m + OTHERS_START, otherCount);
+                for (int n = 0; n < results.getNumTestResults(); n++){
+                    if (!results.passedTest(n) && !results.failedTest(n) && results.testResult(n).length() > 0){
+                        c.others = ensure(c.others, (otherCount + 1L) * OTHER_BYTES);
+                        c.others.putInt(otherCount * OTHER_BYTES, n);
+                        c.others.putInt(otherCount * OTHER_BYTES + 4, string(results.testResult(n)));
+                        otherCount++;
+                    }
+                }
+                c.movies.putInt(m + OTHERS_COUNT, otherCount - c.movies.getInt(m + OTHERS_START));
+            }
+            c.buildTitleTable(); //for the titles of the cast file
+        }
+
+        /**
+         * Method readCasts adds the roles of the cast file to the movies, as MovieCollection.readCasts(): rows 
+         * about a title that is not in the test results file are ignored, and actors are numbered in the order 
+         * they are first seen in a row that is kept.
+         */
+        void readCasts(CsvTokenizer row, String fileName) throws IOException{
+            if (!row.next()){ //discard header
+                throw new NoSuchElementException(fileName + " has no lines");
+            }
+            String title = null;
+            String type = null;
+            int movie = -1;
+            int typeString = -1;
+            while (row.next()){
+                if (row.size() < CastRow.FIELDS){
+                    row.reject("a cast line has " + CastRow.FIELDS + " fields");
+                    continue;
+                }
+                if (!row.fieldEquals(0, title)){
+                    title = row.getField(0);
+                    movie = c.findMovie(title);
+                }
+                if (movie < 0){
+                    continue;
+                }
+                if (!row.fieldEquals(3, type)){
+                    type = row.getField(3);
+                    typeString = string(type);
+                }
+                role(movie, actor(string(row.getField(1)), string(row.getField(5))), typeString);
+            }
+        }
+
+        /**
+         * Method string returns the number of a string, adding it if it is new
+         */
+        private int string(String s){
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            int mask = stringTable.capacity() / 4 - 1;
+            int slot = hashBytes(bytes) & mask;
+            int entry;
+            while ((entry = stringTable.getInt(slot * 4)) != 0){
+                if (c.stringEquals(entry - 1, bytes)){
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            c.strings = ensure(c.strings, (long) stringBytes + bytes.length);
+            c.stringIndex = ensure(c.stringIndex, (c.stringCount + 1L) * 8);
+            c.strings.put(stringBytes, bytes);
+            c.stringIndex.putInt(c.stringCount * 8, stringBytes);
+            c.stringIndex.putInt(c.stringCount * 8 + 4, bytes.length);
+            stringBytes += bytes.length;
+            stringTable.putInt(slot * 4, ++c.stringCount);
+            if (2 * c.stringCount > mask + 1){
+                stringTable = rehash(stringTable, c.stringCount, i -> c.hashString(i));
+            }
+            return c.stringCount - 1;
+        }
+
+        /**
+         * Method actor returns the number of the actor with the given name and gender, adding them if they are new
+         */
+        private int actor(int name, int gender){
+            int mask = actorTable.capacity() / 4 - 1;
+            int slot = actorHash(name, gender) & mask;
+            int entry;
+            while ((entry = actorTable.getInt(slot * 4)) != 0){
+                int a = (entry - 1) * ACTOR_BYTES;
+                if (c.actors.getInt(a + NAME) == name && c.actors.getInt(a + GENDER) == gender){
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            c.actors = ensure(c.actors, (c.actorCount + 1L) * ACTOR_BYTES);
+            int a = c.actorCount * ACTOR_BYTES;
+            c.actors.putInt(a + NAME, name);
+            c.actors.putInt(a + GENDER, gender);
+            actorTable.putInt(slot * 4, ++c.actorCount);
+            if (2 * c.actorCount > mask + 1){
+                actorTable = rehash(actorTable, c.actorCount,
+                    i -> actorHash(c.actors.getInt(i * ACTOR_BYTES + NAME), c.actors.getInt(i * ACTOR_BYTES + GENDER)));
+            }
+            return c.actorCount - 1;
+        }
+
+        /**
+         * Method role adds a role, or changes the type of the role the actor already has in the movie
+         */
+        private void role(int movie, int actor, int type){
+            int mask = roleTable.capacity() / 4 - 1;
+            int slot = roleHash(movie, actor) & mask;
+            int entry;
+            while ((entry = roleTable.getInt(slot * 4)) != 0){
+                int r = (entry - 1) * READ_ROLE_BYTES;
+                if (readRoles.getInt(r) == movie && readRoles.getInt(r + 4) == actor){
+                    readRoles.putInt(r + 8, type);
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            readRoles = ensure(readRoles, (roleCount + 1L) * READ_ROLE_BYTES);
+            int r = roleCount * READ_ROLE_BYTES;
+            readRoles.putInt(r, movie);
+            readRoles.putInt(r + 4, actor);
+            readRoles.putInt(r + 8, type);
+            int a = actor * ACTOR_BYTES;
+            c.actors.putInt(a + FILMS_COUNT, c.actors.getInt(a + FILMS_COUNT) + 1);
+            roleTable.putInt(slot * 4, ++roleCount);
+            if (2 * roleCount > mask + 1){
+                roleTable = rehash(roleTable, roleCount, i -> roleHash(readRoles.getInt(i * READ_ROLE_BYTES),
+                                                                     readRoles.getInt(i * READ_ROLE_BYTES + 4)));
+            }
+        }
+
+        private static int actorHash(int name, int gender){
+            return (name * 31 + gender) * 0x9E3779B1 >>> 7;
+        }
+
+        private static int roleHash(int movie, int actor){
+            return (movie * 0x9E3779B1 ^ actor) * 0x9E3779B1 >>> 7;
+        }
+
+        /**
+         * Method finish puts the roles in the order of the movies, with the cast of every movie in the order its 
+         * actors were first seen, fills the filmographies, calculates the scores and the ranking, and returns the 
+         * catalog, whose buffers are cut to the size that is used
+         */
+        OffHeapCatalog finish(){
+            c.strings = trim(c.strings, stringBytes);
+            c.stringIndex = trim(c.stringIndex, c.stringCount * 8L);
+            c.movies = trim(c.movies, (long) c.movieCount * MOVIE_BYTES);
+            c.actors = trim(c.actors, (long) c.actorCount * ACTOR_BYTES);
+            c.others = trim(c.others, (long) otherCount * OTHER_BYTES);
+            byte[] female = Movie.FEMALE.getBytes(StandardCharsets.UTF_8);
+            byte[] male = Movie.MALE.getBytes(StandardCharsets.UTF_8);
+            for (int r = 0; r < roleCount; r++){
+                int m = readRoles.getInt(r * READ_ROLE_BYTES) * MOVIE_BYTES;
+                int gender = c.actors.getInt(readRoles.getInt(r * READ_ROLE_BYTES + 4) * ACTOR_BYTES + GENDER);
+                c.movies.putInt(m + CAST_SIZE, c.movies.getInt(m + CAST_SIZE) + 1);
+                if (c.stringEquals(gender, female)){
+                    c.movies.putInt(m + FEMALES, c.movies.getInt(m + FEMALES) + 1);
+                }
+                else if (c.stringEquals(gender, male)){
+                    c.movies.putInt(m + MALES, c.movies.getInt(m + MALES) + 1);
+                }
+            }
+            int[] filled = new int[c.movieCount]; //roles of every movie put in c.roles so far
+            int start = 0;
+            ScoringModel feminist = ScoringModel.feminist();
+            for (int i = 0; i < c.movieCount; i++){
+                int m = i * MOVIE_BYTES;
+                int castSize = c.movies.getInt(m + CAST_SIZE);
+                c.movies.putInt(m + CAST_START, start);
+                start += castSize;
+                c.movies.putDouble(m + SCORE, feminist.score(c.movies.getLong(m + PASSED), 
+                                   (double) c.movies.getInt(m + FEMALES) / castSize, castSize));
+            }
+            c.roles = allocate((long) roleCount * ROLE_BYTES);
+            for (int r = 0; r < roleCount; r++){
+                int movie = readRoles.getInt(r * READ_ROLE_BYTES);
+                int role = c.movies.getInt(movie * MOVIE_BYTES + CAST_START) + filled[movie]++;
+                c.roles.putInt(role * ROLE_BYTES, readRoles.getInt(r * READ_ROLE_BYTES + 4));
+                c.roles.putInt(role * ROLE_BYTES + 4, readRoles.getInt(r * READ_ROLE_BYTES + 8));
+            }
+            int films = 0;
+            for (int i = 0; i < c.actorCount; i++){
+                c.actors.putInt(i * ACTOR_BYTES + FILMS_START, films);
+                films += c.actors.getInt(i * ACTOR_BYTES + FILMS_COUNT);
+            }
+            c.filmography = allocate(films * 4L);
+            int[] actorFilled = new int[c.actorCount];
+            for (int i = 0; i < c.movieCount; i++){
+                int first = c.movies.getInt(i * MOVIE_BYTES + CAST_START);
+                for (int role = first; role < first + c.movies.getInt(i * MOVIE_BYTES + CAST_SIZE); role++){
+                    int actor = c.roles.getInt(role * ROLE_BYTES);
+                    int a = actor * ACTOR_BYTES;
+                    c.filmography.putInt((c.actors.getInt(a + FILMS_START) + actorFilled[actor]++) * 4, i);
+                }
+            }
+            c.buildRanking();
+            return c;
+        }
+    }
+
+    /**
+     * Method ensure returns a buffer of at least the given number of bytes with the content of the given one: the 
+     * same buffer if it is big enough, or a new one twice as big
+     */
+    private static ByteBuffer ensure(ByteBuffer b, long bytes){
+        if (bytes <= b.capacity()){
+            return b;
+        }
+        ByteBuffer bigger = allocate(Math.max(bytes, Math.min(2L * b.capacity(), Integer.MAX_VALUE)));
+        bigger.put(0, b, 0, b.capacity());
+        return bigger;
+    }
+
+    /**
+     * Method trim returns a buffer of exactly the given number of bytes with the start of the given one
+     */
+    private static ByteBuffer trim(ByteBuffer b, long bytes){
+        if (bytes == b.capacity()){
+            return b;
+        }
+        ByteBuffer trimmed = allocate(bytes);
+        trimmed.put(0, b, 0, (int) bytes);
+        return trimmed;
+    }
+
+    /**
+     * Method rehash returns a hash table of numbers + 1 twice as big as the given one, with the numbers from 0 to 
+     * count - 1 put again by their hash
+     */
+    private static ByteBuffer rehash(ByteBuffer table, int count, IntUnaryOperator hashOf){
+        ByteBuffer bigger = allocate(table.capacity() * 2L);
+        int mask = bigger.capacity() / 4 - 1;
+        for (int i = 0; i < count; i++){
+            int slot = hashOf.applyAsInt(i) & mask;
+            while (bigger.getInt(slot * 4) != 0){
+                slot = (slot + 1) & mask;
+            }
+            bigger.putInt(slot * 4, i + 1);
+        }
+        return bigger;
+    }
+
+    /**
+     * Method read copies the rest of a snapshot file, after its header, into a new catalog
+     */
+    private static OffHeapCatalog read(ByteBuffer in, long version){
+        OffHeapCatalog c = new OffHeapCatalog();
+        c.version = version;
+
+        //the strings: find how many bytes they take, then copy them
+        int start = in.position();
+        c.stringCount = in.getInt();
+        long total = 0;
+        for (int i = 0; i < c.stringCount; i++){
+            int length = in.getInt();
+            total += length;
+            in.position(in.position() + length);
+        }
+        c.strings = allocate(total);
+        c.stringIndex = allocate(c.stringCount * 8L);
+        in.position(start + 4);
+        int offset = 0;
+        for (int i = 0; i < c.stringCount; i++){
+            int length = in.getInt();
+            c.stringIndex.putInt(i * 8, offset);
+            c.stringIndex.putInt(i * 8 + 4, length);
+            c.strings.put(offset, in, in.position(), length);
+            in.position(in.position() + length);
+            offset += length;
+        }
+
+        c.movieCount = in.getInt();
+        c.movies = allocate((long) c.movieCount * MOVIE_BYTES);
+        int[] otherResults = new int[16]; //test and string number of the other results
+        int otherCount = 0;
+        for (int i = 0; i < c.movieCount; i++){
+            int m = i * MOVIE_BYTES;
+            c.movies.putInt(m + TITLE, c.checkString(in.getInt()));
+            c.movies.putInt(m + RESULTS, in.getInt());
+            c.movies.putLong(m + PASSED, in.getLong());
+            c.movies.putLong(m + FAILED, in.getLong());
+            c.movies.putDouble(m + SCORE, in.getDouble());
+            int count = in.getInt();
+            c.movies.putInt(m + OTHERS_START, otherCount);
+            c.movies.putInt(m + OTHERS_COUNT, count);
+            for (int j = 0; j < count; j++){
+                if (2 * otherCount + 2 > otherResults.length){
+                    otherResults = Arrays.copyOf(otherResults, otherResults.length * 2);
+                }
+                otherResults[2 * otherCount] = in.getInt();
+                otherResults[2 * otherCount + 1] = c.checkString(in.getInt());
+                otherCount++;
+            }
+        }
+        c.others = allocate((long) otherCount * OTHER_BYTES);
+        for (int i = 0; i < otherCount; i++){
+            c.others.putInt(i * OTHER_BYTES, otherResults[2 * i]);
+            c.others.putInt(i * OTHER_BYTES + 4, otherResults[2 * i + 1]);
+        }
+
+        c.actorCount = in.getInt();
+        c.actors = allocate((long) c.actorCount * ACTOR_BYTES);
+        byte[] genders = new byte[c.actorCount]; //1 if the actor is female, 2 if male, 0 otherwise
+        byte[] female = Movie.FEMALE.getBytes(StandardCharsets.UTF_8);
+        byte[] male = Movie.MALE.getBytes(StandardCharsets.UTF_8);
+        long films = 0;
+        for (int i = 0; i < c.actorCount; i++){
+            int a = i * ACTOR_BYTES;
+            c.actors.putInt(a + NAME, c.checkString(in.getInt()));
+            int gender = c.checkString(in.getInt());
+            c.actors.putInt(a + GENDER, gender);
+            genders[i] = (byte) (c.stringEquals(gender, female) ? 1 : c.stringEquals(gender, male) ? 2 : 0);
+            int count = in.getInt();
+            c.actors.putInt(a + FILMS_START, (int) films);
+            c.actors.putInt(a + FILMS_COUNT, count);
+            films += count;
+        }
+        c.filmography = allocate(films * 4);
+
+        int roleCount = in.getInt();
+        c.roles = allocate((long) roleCount * ROLE_BYTES);
+        int[] filled = new int[c.actorCount]; //movies of every actor put in the filmography so far
+        int last = -1;
+        for (int r = 0; r < roleCount; r++){
+            int movie = in.getInt();
+            int actor = in.getInt();
+            int type = c.checkString(in.getInt());
+            if (movie < last || movie >= c.movieCount){
+                throw new IllegalArgumentException("Role of movie " + movie + " is out of order");
+            }
+            int m = movie * MOVIE_BYTES;
+            if (movie != last){
+                c.movies.putInt(m + CAST_START, r);
+                last = movie;
+            }
+            c.movies.putInt(m + CAST_SIZE, c.movies.getInt(m + CAST_SIZE) + 1);
+            if (genders[actor] == 1){
+                c.movies.putInt(m + FEMALES, c.movies.getInt(m + FEMALES) + 1);
+            }
+            else if (genders[actor] == 2){
+                c.movies.putInt(m + MALES, c.movies.getInt(m + MALES) + 1);
+            }
+            c.roles.putInt(r * ROLE_BYTES, actor);
+            c.roles.putInt(r * ROLE_BYTES + 4, type);
+            int a = actor * ACTOR_BYTES;
+            if (filled[actor] == c.actors.getInt(a + FILMS_COUNT)){
+                throw new IllegalArgumentException("Actor " + actor + " has more movies than were counted");
+            }
+            c.filmography.putInt((c.actors.getInt(a + FILMS_START) + filled[actor]++) * 4, movie);
+        }
+
+        c.buildTitleTable();
+        c.buildRanking();
+        return c;
+    }
+
+    private static ByteBuffer allocate(long bytes){
+        if (bytes > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Catalog is too big for one buffer: " + bytes + " bytes");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private int checkString(int s){
+        if (s < 0 || s >= stringCount){
+            throw new IllegalArgumentException("No string number " + s);
+        }
+        return s;
+    }
+
+    /**
+     * Method string decodes a string
+     */
+    private String string(int s){
+        byte[] bytes = new byte[stringIndex.getInt(s * 8 + 4)];
+        strings.get(stringIndex.getInt(s * 8), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method stringEquals tells whether a string has the given UTF-8 bytes, without decoding it
+     */
+    private boolean stringEquals(int s, byte[] bytes){
+        int offset = stringIndex.getInt(s * 8);
+        if (stringIndex.getInt(s * 8 + 4) != bytes.length){
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++){
+            if (strings.get(offset + i) != bytes[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hashString(int s){
+        int offset = stringIndex.getInt(s * 8);
+        int h = 0;
+        for (int i = 0; i < stringIndex.getInt(s * 8 + 4); i++){
+            h = 31 * h + strings.get(offset + i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int hashBytes(byte[] bytes){
+        int h = 0;
+        for (byte b : bytes){
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Method buildTitleTable puts every movie in a hash table of at least twice as many slots, found by linear
+     * probing from the hash of the title
+     */
+    private void buildTitleTable(){
+        int slots = Integer.highestOneBit(Math.max(1, movieCount) * 2 - 1) << 1;
+        titleTable = allocate(slots * 4L);
+        for (int i = 0; i < movieCount; i++){
+            int slot = hashString(movies.getInt(i * MOVIE_BYTES + TITLE)) & (slots - 1);
+            while (titleTable.getInt(slot * 4) != 0){
+                slot = (slot + 1) & (slots - 1);
+            }
+            titleTable.putInt(slot * 4, i + 1);
+        }
+    }
+
+    /**
+     * Method buildRanking sorts the movies in the order of MovieRanking. Titles are only decoded for movies with
+     * the same score.
+     */
+    private void buildRanking(){
+        Integer[] order = new Integer[movieCount];
+        for (int i = 0; i < movieCount; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>(){
+            public int compare(Integer a, Integer b){
+                int byScore = MovieRanking.compareScores(rankScore(a), rankScore(b));
+                if (byScore != 0){
+                    return byScore;
+                }
+                return string(movies.getInt(b * MOVIE_BYTES + TITLE))
+                    .compareTo(string(movies.getInt(a * MOVIE_BYTES + TITLE)));
+            }
+        });
+        ranking = allocate(movieCount * 4L);
+        for (int r = 0; r < movieCount; r++){
+            ranking.putInt(r * 4, order[r]);
+        }
+    }
+
+    /**
+     * Method rankScore returns the score a movie is ranked by, as MovieRanking.scoreOf(): NaN if it has no cast
+     */
+    private double rankScore(int i){
+        int m = i * MOVIE_BYTES;
+        return movies.getInt(m + CAST_SIZE) == 0 ? Double.NaN : movies.getDouble(m + SCORE);
+    }
+
+    /**
+     * size() returns the number of movies in the catalog. Movies are numbered from 0 to size() - 1.
+     *
+     * @return number of movies
+     */
+    public int size(){
+        return movieCount;
+    }
+
+    /**
+     * getActorCount() returns the number of actors in the catalog. Actors are numbered from 0 to getActorCount() - 1.
+     *
+     * @return number of actors
+     */
+    public int getActorCount(){
+        return actorCount;
+    }
+
+    /**
+     * getVersion() returns the version of the snapshot the catalog was made from
+     *
+     * @return the version
+     */
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * getOffHeapBytes() returns the memory taken by the catalog outside of the heap
+     *
+     * @return number of bytes
+     */
+    public long getOffHeapBytes(){
+        ByteBuffer[] buffers = {strings, stringIndex, movies, roles, actors, others, filmography, titleTable,
+                                ranking};
+        long bytes = 0;
+        for (ByteBuffer b : buffers){
+            bytes += b.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Method movie returns a new view of the movie with the given number
+     *
+     * @param i the number of the movie, from 0 to size() - 1
+     * @return a view of the movie
+     */
+    public MovieView movie(int i){
+        return new MovieView().moveTo(i);
+    }
+
+    /**
+     * Method actor returns a new view of the actor with the given number
+     *
+     * @param i the number of the actor, from 0 to getActorCount() - 1
+     * @return a view of the actor
+     */
+    public ActorView actor(int i){
+        return new ActorView().moveTo(i);
+    }
+
+    /**
+     * Method findMovie returns the number of the movie with the given title
+     *
+     * @param title the title
+     * @return the number of the movie, or -1 if there is no movie with this title
+     */
+    public int findMovie(String title){
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        int slots = titleTable.capacity() / 4;
+        int slot = hashBytes(bytes) & (slots - 1);
+        int entry;
+        while ((entry = titleTable.getInt(slot * 4)) != 0){
+            if (stringEquals(movies.getInt((entry - 1) * MOVIE_BYTES + TITLE), bytes)){
+                return entry - 1;
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Method select returns the movies that passed all the tests of one mask and failed all the tests of another,
+     * in the order of the file. For example select(1L << Movie.BECHDEL, 0) returns the movies that passed the
+     * Bechdel test.
+     *
+     * @param passedAll the tests that must be passed, as bits
+     * @param failedAll the tests that must be failed, as bits
+     * @return the numbers of the movies
+     */
+    public int[] select(long passedAll, long failedAll){
+        int[] selected = new int[16];
+        int count = 0;
+        for (int i = 0; i < movieCount; i++){
+            int m = i * MOVIE_BYTES;
+            if ((movies.getLong(m + PASSED) & passedAll) == passedAll
+                && (movies.getLong(m + FAILED) & failedAll) == failedAll){
+                if (count == selected.length){
+                    selected = Arrays.copyOf(selected, count * 2);
+                }
+                selected[count++] = i;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Method getRankedMovie returns the movie with the given rank, in the order of MovieRanking
+     *
+     * @param rank the rank, 0 for the most feminist movie
+     * @return the number of the movie
+     */
+    public int getRankedMovie(int rank){
+        checkIndex(rank, movieCount);
+        return ranking.getInt(rank * 4);
+    }
+
+    /**
+     * Method topK returns the k most feminist movies, best first
+     *
+     * @param k the number of movies wanted
+     * @return the numbers of the movies, at most k
+     */
+    public int[] topK(int k){
+        int[] top = new int[Math.max(0, Math.min(k, movieCount))];
+        for (int r = 0; r < top.length; r++){
+            top[r] = ranking.getInt(r * 4);
+        }
+        return top;
+    }
+
+    /**
+     * Method getFilmography returns the movies of an actor, in the order of the file
+     *
+     * @param actor the number of the actor
+     * @return the numbers of the movies
+     */
+    public int[] getFilmography(int actor){
+        checkIndex(actor, actorCount);
+        int start = actors.getInt(actor * ACTOR_BYTES + FILMS_START);
+        int[] films = new int[actors.getInt(actor * ACTOR_BYTES + FILMS_COUNT)];
+        for (int j = 0; j < films.length; j++){
+            films[j] = filmography.getInt((start + j) * 4);
+        }
+        return films;
+    }
+
+    private static void checkIndex(int i, int size){
+        if (i < 0 || i >= size){
+            throw new ArrayIndexOutOfBoundsException(i + " >= " + size);
+        }
+    }
+
+    /**
+     * MovieView reads one movie of the catalog at a time. It has the getters of Movie, and moveTo() to go to another
+     * movie.
+     */
+    public class MovieView
+    {
+        private int index;
+        private int base; //where the record of the movie starts
+
+        /**
+         * Method moveTo makes this view show another movie
+         *
+         * @param i the number of the movie
+         * @return this view
+         */
+        public MovieView moveTo(int i){
+            checkIndex(i, movieCount);
+            index = i;
+            base = i * MOVIE_BYTES;
+            return this;
+        }
+
+        /**
+         * getIndex() returns the number of the movie
+         *
+         * @return the number of the movie
+         */
+        public int getIndex(){
+            return index;
+        }
+
+        /**
+         * getTitle() returns the title of the movie, decoded into a new String
+         *
+         * @return title of movie
+         */
+        public String getTitle(){
+            return string(movies.getInt(base + TITLE));
+        }
+
+        /**
+         * Method hasTitle tells whether the movie has the given title, without decoding its title
+         *
+         * @param title the title
+         * @return true if the movie has this title
+         */
+        public boolean hasTitle(String title){
+            return stringEquals(movies.getInt(base + TITLE), title.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * getNumTestResults() returns the number of test results of the movie
+         *
+         * @return number of test results
+         */
+        public int getNumTestResults(){
+            return movies.getInt(base + RESULTS);
+        }
+
+        /**
+         * getPassedMask() returns the tests passed by the movie as bits, as Movie.getPassedMask()
+         *
+         * @return the passed tests as a bit mask
+         */
+        public long getPassedMask(){
+            return movies.getLong(base + PASSED);
+        }
+
+        /**
+         * getFailedMask() returns the tests failed by the movie as bits, as Movie.getFailedMask()
+         *
+         * @return the failed tests as a bit mask
+         */
+        public long getFailedMask(){
+            return movies.getLong(base + FAILED);
+        }
+
+        /**
+         * Method passedTest returns whether the movie passed the n-th test (its result is "0")
+         *
+         * @param n index of the test
+         * @return true if the n-th test was passed
+         */
+        public boolean passedTest(int n){
+            checkIndex(n, getNumTestResults());
+            return (getPassedMask() & (1L << n)) != 0;
+        }
+
+        /**
+         * Method failedTest returns whether the movie failed the n-th test (its result is "1")
+         *
+         * @param n index of the test
+         * @return true if the n-th test was failed
+         */
+        public boolean failedTest(int n){
+            checkIndex(n, getNumTestResults());
+            return (getFailedMask() & (1L << n)) != 0;
+        }
+
+        /**
+         * Method testResult returns the result of the n-th test, as Movie.testResult()
+         *
+         * @param n index of the test
+         * @return the result of the n-th test
+         */
+        public String testResult(int n){
+            if (passedTest(n)){
+                return "0";
+            }
+            if (failedTest(n)){
+                return "1";
+            }
+            int start = movies.getInt(base + OTHERS_START);
+            for (int j = start; j < start + movies.getInt(base + OTHERS_COUNT); j++){
+                if (others.getInt(j * OTHER_BYTES) == n){
+                    return string(others.getInt(j * OTHER_BYTES + 4));
+                }
+            }
+            return "";
+        }
+
+        /**
+         * feministScore() returns the feminist score of the movie, as it was calculated by Movie.feministScore()
+         *
+         * @return the feminist score
+         */
+        public double feministScore(){
+            return movies.getDouble(base + SCORE);
+        }
+
+        /**
+         * getCastSize() returns the number of actors in the cast of the movie
+         *
+         * @return number of actors
+         */
+        public int getCastSize(){
+            return movies.getInt(base + CAST_SIZE);
+        }
+
+        /**
+         * getFemaleCount() returns the number of actors in the cast whose gender is Movie.FEMALE
+         *
+         * @return number of female actors
+         */
+        public int getFemaleCount(){
+            return movies.getInt(base + FEMALES);
+        }
+
+        /**
+         * getMaleCount() returns the number of actors in the cast whose gender is Movie.MALE
+         *
+         * @return number of male actors
+         */
+        public int getMaleCount(){
+            return movies.getInt(base + MALES);
+        }
+
+        /**
+         * Method getActorNumber returns the number of the i-th actor of the cast
+         *
+         * @param i index in the cast, from 0 to getCastSize() - 1
+         * @return the number of the actor in the catalog
+         */
+        public int getActorNumber(int i){
+            checkIndex(i, getCastSize());
+            return roles.getInt((movies.getInt(base + CAST_START) + i) * ROLE_BYTES);
+        }
+
+        /**
+         * Method getCastMember moves a view to the i-th actor of the cast
+         *
+         * @param i index in the cast, from 0 to getCastSize() - 1
+         * @param actor the view to move
+         * @return the view
+         */
+        public ActorView getCastMember(int i, ActorView actor){
+            return actor.moveTo(getActorNumber(i));
+        }
+
+        /**
+         * Method getRoleType returns the type of role of the i-th actor of the cast
+         *
+         * @param i index in the cast, from 0 to getCastSize() - 1
+         * @return the type of role
+         */
+        public String getRoleType(int i){
+            checkIndex(i, getCastSize());
+            return string(roles.getInt((movies.getInt(base + CAST_START) + i) * ROLE_BYTES + 4));
+        }
+
+        /**
+         * Method toMovie makes a Movie with the title, test results, cast and score of this movie. Its actors are
+         * interned in the registry of the catalog.
+         *
+         * @return a new Movie
+         */
+        public Movie toMovie(){
+            Movie m = new Movie(getTitle(), registry);
+            Hashtable<Integer, String> otherResults = null;
+            int start = movies.getInt(base + OTHERS_START);
+            for (int j = start; j < start + movies.getInt(base + OTHERS_COUNT); j++){
+                if (otherResults == null){
+                    otherResults = new Hashtable<Integer, String>();
+                }
+                otherResults.put(others.getInt(j * OTHER_BYTES), string(others.getInt(j * OTHER_BYTES + 4)));
+            }
+            m.restoreTestResults(getPassedMask(), getFailedMask(), getNumTestResults(), otherResults);
+            ActorView actor = new ActorView();
+            for (int i = 0; i < getCastSize(); i++){
+                getCastMember(i, actor);
+                m.addActor(registry.intern(actor.getName(), actor.getGender()), getRoleType(i));
+            }
+            m.restoreScore(feministScore());
+            return m;
+        }
+
+        /**
+         * Method toString returns a string representation of the movie, as Movie.toString()
+         *
+         * @return a string representation of the movie
+         */
+        public String toString(){
+            return "Movie: " + getTitle() + "\t" + "Number of actors: " + getCastSize();
+        }
+    }
+
+    /**
+     * ActorView reads one actor of the catalog at a time. It has the getters of Actor, and moveTo() to go to another
+     * actor.
+     */
+    public class ActorView
+    {
+        private int index;
+        private int base; //where the record of the actor starts
+
+        /**
+         * Method moveTo makes this view show another actor
+         *
+         * @param i the number of the actor
+         * @return this view
+         */
+        public ActorView moveTo(int i){
+            checkIndex(i, actorCount);
+            index = i;
+            base = i * ACTOR_BYTES;
+            return this;
+        }
+
+        /**
+         * getIndex() returns the number of the actor
+         *
+         * @return the number of the actor
+         */
+        public int getIndex(){
+            return index;
+        }
+
+        /**
+         * getName() returns the name of the actor, decoded into a new String
+         *
+         * @return name of actor
+         */
+        public String getName(){
+            return string(actors.getInt(base + NAME));
+        }
+
+        /**
+         * getGender() returns the gender of the actor, decoded into a new String
+         *
+         * @return gender of actor
+         */
+        public String getGender(){
+            return string(actors.getInt(base + GENDER));
+        }
+
+        /**
+         * getMovieCount() returns the number of movies of the actor
+         *
+         * @return number of movies
+         */
+        public int getMovieCount(){
+            return actors.getInt(base + FILMS_COUNT);
+        }
+
+        /**
+         * Method getMovie moves a view to the j-th movie of the actor, in the order of the file
+         *
+         * @param j index in the movies of the actor, from 0 to getMovieCount() - 1
+         * @param movie the view to move
+         * @return the view
+         */
+        public MovieView getMovie(int j, MovieView movie){
+            checkIndex(j, getMovieCount());
+            return movie.moveTo(filmography.getInt((actors.getInt(base + FILMS_START) + j) * 4));
+        }
+
+        /**
+         * Method toActor returns the Actor of the registry of the catalog with the name and gender of this actor
+         *
+         * @return the actor
+         */
+        public Actor toActor(){
+            return registry.getActor(registry.intern(getName(), getGender()));
+        }
+
+        /**
+         * Method toString returns a string representation of the actor, as Actor.toString()
+         *
+         * @return a string representation of the actor
+         */
+        public String toString(){
+            return "Actor " + getName() + " is " + getGender();
+        }
+    }
+
+    /**
+     * Method main for testing. Arguments: tests file, cast file. Saves the movies to a snapshot file, and compares
+     * the heap used by a CatalogSnapshot and by an OffHeapCatalog loaded from it, and their rankings.
+     *
+     */
+    public static void main(String[] args) throws IOException{
+        MovieCollection collection = new MovieCollection(args[0], args[1]);
+        File file = File.createTempFile("catalog", ".snapshot");
+        file.deleteOnExit();
+        SnapshotFile.save(collection.getSnapshot(), file.getPath());
+        MovieRanking expected = collection.getSnapshot().getRanking();
+
+        long before = heapUsed();
+        CatalogSnapshot snapshot = SnapshotFile.load(file.getPath());
+        long snapshotHeap = heapUsed() - before;
+        before = heapUsed();
+        OffHeapCatalog catalog = OffHeapCatalog.load(file.getPath());
+        long catalogHeap = heapUsed() - before;
+        System.out.println(snapshot.getMovies().size() + " movies, " + catalog.getActorCount() + " actors");
+        System.out.println("CatalogSnapshot: " + snapshotHeap / 1024 + " KB of heap");
+        System.out.println("OffHeapCatalog: " + catalogHeap / 1024 + " KB of heap, "
+                           + catalog.getOffHeapBytes() / 1024 + " KB off the heap");
+
+        boolean same = catalog.size() == expected.size();
+        MovieView view = catalog.movie(0);
+        for (int r = 0; same && r < expected.size(); r++){
+            view.moveTo(catalog.getRankedMovie(r));
+            same = view.hasTitle(expected.getMovie(r).getTitle())
+                && catalog.findMovie(expected.getMovie(r).getTitle()) == view.getIndex();
+        }
+        System.out.println("Same ranking and titles: " + same);
+        before = heapUsed();
+        OffHeapCatalog fromFiles = OffHeapCatalog.readFiles(args[0], args[1]);
+        long filesHeap = heapUsed() - before;
+        boolean sameFromFiles = fromFiles.size() == catalog.size()
+            && fromFiles.getActorCount() == catalog.getActorCount();
+        MovieView fileView = fromFiles.movie(0);
+        for (int r = 0; sameFromFiles && r < catalog.size(); r++){
+            view.moveTo(catalog.getRankedMovie(r));
+            fileView.moveTo(fromFiles.getRankedMovie(r));
+            sameFromFiles = fileView.hasTitle(view.getTitle()) && fileView.getCastSize() == view.getCastSize();
+        }
+        System.out.println("readFiles(): " + filesHeap / 1024 + " KB of heap, same ranking and casts: "
+                           + sameFromFiles);
+        System.out.println("Top 5:");
+        for (int i : catalog.topK(5)){
+            view.moveTo(i);
+            System.out.println(view + "\t" + view.feministScore());
+        }
+        Movie first = catalog.movie(catalog.getRankedMovie(0)).toMovie();
+        Movie original = collection.getSnapshot().getMovie(first.getTitle());
+        System.out.println("toMovie() has the same results, cast and score: "
+                           + (first.getAllTestResults().equals(original.getAllTestResults())
+                              && first.getAllActors().equals(original.getAllActors())
+                              && first.feministScore() == original.feministScore()));
+        System.out.println("Passed Bechdel: " + catalog.select(1L << Movie.BECHDEL, 0).length + " ["
+                           + collection.findAllMoviesPassedBechdel().size() + "]");
+    }
+
+    private static long heapUsed(){
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++){
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,365 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * ParallelLoader reads the test results file and the cast file in parallel. Each file is cut into chunks of bytes
+ * that start and end on row boundaries, the chunks are parsed at the same time on a ForkJoinPool, and the results
+ * are joined back in the order of the file, so the output is the same as reading the file row by row.
+ * As with the sequential readers, the first row of each file is a header and is skipped.
+ *
+ * A quoted field may contain new lines (see CsvTokenizer), so a new line is not always the end of a row. The
+ * boundaries are found by one pass over the bytes of the file that follows the quotes the same way CsvTokenizer
+ * does; this only looks at quotes, commas and new lines, which are single bytes in UTF-8 and in the other encodings
+ * that extend ASCII. Each chunk is then parsed by a CsvTokenizer of its own. Malformed rows, and rows that a parser
+ * rejects, are handed to the RejectHandler on the calling thread once all the chunks are parsed, in the order of the
+ * file and with their line numbers in the whole file.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class ParallelLoader
+{
+    private static final int CHUNK_SIZE = 1 << 20; //bytes per chunk
+    private static final int SCAN_SIZE = 1 << 16; //bytes read at a time when looking for the boundaries
+    //states of the scan for the boundaries, as in CsvTokenizer.readRecord()
+    private static final int FIELD_START = 0; //at the start of a field
+    private static final int UNQUOTED = 1; //inside a field without quotes
+    private static final int QUOTED = 2; //inside a quoted field
+    private static final int QUOTE = 3; //at a quote inside a quoted field: closing or escaped
+    private static final int CLOSED = 4; //right after the closing quote of a field
+    private static final int CLOSED_CR = 5; //at a \r right after a closing quote
+    private static final int MALFORMED = 6; //in a malformed row, skipped up to the end of the line
+
+    private ForkJoinPool pool;
+    private int records; //rows of the last read, without the header
+    private int rejected; //rows of the last read handed to the RejectHandler
+
+    /**
+     * Constructor for objects of class ParallelLoader, using the common ForkJoinPool
+     */
+    public ParallelLoader()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for objects of class ParallelLoader
+     *
+     * @param pool the ForkJoinPool that parses the chunks
+     */
+    public ParallelLoader(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Method readMovies reads the test results file and creates a Movie, with its test results, for every row.
+     * Rejected rows are printed.
+     *
+     * @param testsFile the test results file
+     * @return the movies, in the order of the file
+     */
+    public List<Movie> readMovies(String testsFile) throws IOException{
+        return readMovies(testsFile, CsvTokenizer.PRINT);
+    }
+
+    /**
+     * Method readMovies reads the test results file and creates a Movie, with its test results, for every row.
+     * Malformed rows, and rows with more than 64 test results, are skipped and handed to rejects. The actors of the
+     * movies are interned in a new registry, shared only by the movies of this call.
+     *
+     * @param testsFile the test results file
+     * @param rejects receives the rows that could not be read
+     * @return the movies, in the order of the file
+     */
+    public List<Movie> readMovies(String testsFile, CsvTokenizer.RejectHandler rejects) throws IOException{
+        return readMovies(testsFile, new ActorRegistry(), rejects);
+    }
+
+    /**
+     * Method readMovies reads the test results file and creates a Movie for every row, whose actors will be
+     * interned in the given registry (see CatalogSnapshot.getRegistry()).
+     *
+     * @param testsFile the test results file
+     * @param registry the registry of the movies
+     * @param rejects receives the rows that could not be read
+     * @return the movies, in the order of the file
+     */
+    public List<Movie> readMovies(String testsFile, ActorRegistry registry, CsvTokenizer.RejectHandler rejects)
+    throws IOException{
+        return read(testsFile, rejects, row -> {
+            Movie m = new Movie(row.getField(0), registry); //getting title
+            try{
+                m.setTestResults(row, 0); //the other fields are the test results
+            }
+            catch (IllegalArgumentException ex){
+                row.reject(ex.getMessage());
+                return null;
+            }
+            return m;
+        });
+    }
+
+    /**
+     * Method readCasts reads the cast file and creates a CastRow for every row. Rejected rows are printed.
+     *
+     * @param castsFile the cast file
+     * @return the cast rows, in the order of the file
+     */
+    public List<CastRow> readCasts(String castsFile) throws IOException{
+        return readCasts(castsFile, CsvTokenizer.PRINT);
+    }
+
+    /**
+     * Method readCasts reads the cast file and creates a CastRow for every row. Malformed rows, and rows with fewer
+     * than six fields, are skipped and handed to rejects.
+     *
+     * @param castsFile the cast file
+     * @param rejects receives the rows that could not be read
+     * @return the cast rows, in the order of the file
+     */
+    public List<CastRow> readCasts(String castsFile, CsvTokenizer.RejectHandler rejects) throws IOException{
+        return read(castsFile, rejects, row -> {
+            if (row.size() < CastRow.FIELDS){
+                row.reject("a cast line has " + CastRow.FIELDS + " fields");
+                return null;
+            }
+            return CastRow.parse(row);
+        });
+    }
+
+    /**
+     * getRecords() returns the number of rows of the file read last, without the header and blank lines,
+     * including the rejected ones (as CsvTokenizer.getRecords())
+     *
+     * @return number of rows
+     */
+    public int getRecords(){
+        return records;
+    }
+
+    /**
+     * getRejected() returns the number of rows of the file read last that were handed to the RejectHandler
+     *
+     * @return number of rejected rows
+     */
+    public int getRejected(){
+        return rejected;
+    }
+
+    /**
+     * Method read parses every row of a file (except the header) on the pool.
+     *
+     * @param fileName the file to read
+     * @param rejects receives the rows that could not be read
+     * @param parser turns one row into one result, or rejects it (see CsvTokenizer.reject()) and returns null
+     * @return the results, in the order of the file
+     * @throws NoSuchElementException if the file has no rows, as MovieCollection.readMovies()
+     */
+    private <T> List<T> read(String fileName, CsvTokenizer.RejectHandler rejects, Function<CsvTokenizer, T> parser)
+    throws IOException{
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        Chunk<T> chunk;
+        try{
+            List<long[]> bounds = chunkBounds(channel);
+            chunk = pool.invoke(new ChunkTask<T>(channel, fileName, rejects, bounds, 0, bounds.size() - 1, parser));
+        }
+        catch(UncheckedIOException ex){
+            throw ex.getCause();
+        }
+        finally{
+            channel.close();
+        }
+        for (Runnable reject : chunk.rejects){
+            reject.run();
+        }
+        records = chunk.records;
+        rejected = chunk.rejects.size();
+        if (!chunk.header){
+            throw new NoSuchElementException(fileName + " has no lines");
+        }
+        return chunk.results;
+    }
+
+    /**
+     * Method chunkBounds finds where each chunk begins: at the start of the file, and then at the start of the first
+     * row that begins CHUNK_SIZE bytes or more after the start of the previous chunk. The last entry is the end of the
+     * file.
+     *
+     * @param channel the file
+     * @return for every chunk, its first byte and the number of lines of the file before it, followed by the size
+     *         of the file and its number of lines
+     */
+    private static List<long[]> chunkBounds(FileChannel channel) throws IOException{
+        List<long[]> bounds = new ArrayList<long[]>();
+        bounds.add(new long[] {0, 0});
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        byte[] bytes = buffer.array();
+        long position = 0;
+        long chunkStart = 0;
+        long lines = 0;
+        int state = FIELD_START;
+        int n;
+        while ((n = channel.read(buffer, position)) > 0){
+            for (int i = 0; i < n; i++){
+                byte b = bytes[i];
+                if (state == QUOTE){
+                    state = b == '"' ? QUOTED : CLOSED; //an escaped quote, or the closing quote
+                    if (state == QUOTED){
+                        continue;
+                    }
+                }
+                else if (state == CLOSED_CR){
+                    state = b == '\n' ? CLOSED : MALFORMED; //a \r that does not end the line is malformed
+                }
+                if (b == '\n'){
+                    lines++;
+                    if (state == QUOTED){
+                        continue; //a new line inside a quoted field
+                    }
+                    state = FIELD_START; //the end of a row, malformed or not
+                    long next = position + i + 1;
+                    if (next - chunkStart >= CHUNK_SIZE){
+                        bounds.add(new long[] {next, lines});
+                        chunkStart = next;
+                    }
+                    continue;
+                }
+                switch (state){
+                    case FIELD_START:
+                        state = b == '"' ? QUOTED : b == ',' ? FIELD_START : UNQUOTED;
+                        break;
+                    case UNQUOTED:
+                        state = b == ',' ? FIELD_START : UNQUOTED; //a quote inside a field is kept as it is
+                        break;
+                    case QUOTED:
+                        state = b == '"' ? QUOTE : QUOTED;
+                        break;
+                    case CLOSED:
+                        state = b == ',' ? FIELD_START : b == '\r' ? CLOSED_CR : MALFORMED;
+                        break;
+                    default: //MALFORMED
+                        break;
+                }
+            }
+            position += n;
+            buffer.clear();
+        }
+        if (chunkStart < position || bounds.size() == 1){
+            bounds.add(new long[] {position, lines});
+        }
+        //otherwise the file ends where the last chunk would begin, which is already the last entry
+        return bounds;
+    }
+
+    /**
+     * Chunk holds what the chunks from one position of the file to another gave: the results, the rejected rows (to
+     * hand to the RejectHandler later) and the number of rows
+     */
+    private static class Chunk<T>
+    {
+        private List<T> results = new ArrayList<T>();
+        private List<Runnable> rejects = new ArrayList<Runnable>();
+        private int records;
+        private boolean header; //the header of the file was read in these chunks
+
+        /**
+         * Method add appends the chunks that follow this one
+         */
+        private void add(Chunk<T> next){
+            results.addAll(next.results);
+            rejects.addAll(next.rejects);
+            records += next.records;
+            header |= next.header;
+        }
+    }
+
+    /**
+     * ChunkTask parses the chunks from first (inclusive) to last (exclusive), splitting itself in two while it has
+     * more than one chunk.
+     */
+    private static class ChunkTask<T> extends RecursiveTask<Chunk<T>>
+    {
+        private static final long serialVersionUID = 1L;
+        private FileChannel channel;
+        private String fileName;
+        private CsvTokenizer.RejectHandler rejects;
+        private List<long[]> bounds;
+        private int first;
+        private int last;
+        private Function<CsvTokenizer, T> parser;
+
+        ChunkTask(FileChannel channel, String fileName, CsvTokenizer.RejectHandler rejects, List<long[]> bounds,
+                  int first, int last, Function<CsvTokenizer, T> parser)
+        {
+            this.channel = channel;
+            this.fileName = fileName;
+            this.rejects = rejects;
+            this.bounds = bounds;
+            this.first = first;
+            this.last = last;
+            this.parser = parser;
+        }
+
+        protected Chunk<T> compute(){
+            if (last - first > 1){
+                int middle = (first + last) / 2;
+                ChunkTask<T> left = new ChunkTask<T>(channel, fileName, rejects, bounds, first, middle, parser);
+                ChunkTask<T> right = new ChunkTask<T>(channel, fileName, rejects, bounds, middle, last, parser);
+                left.fork();
+                Chunk<T> rightChunk = right.compute();
+                Chunk<T> chunk = left.join();
+                chunk.add(rightChunk);
+                return chunk;
+            }
+            Chunk<T> chunk = new Chunk<T>();
+            if (last == first){
+                return chunk;
+            }
+            long start = bounds.get(first)[0];
+            int lines = (int) bounds.get(first)[1]; //lines of the file before the chunk
+            try (Reader in = read(start, bounds.get(last)[0])){
+                CsvTokenizer row = new CsvTokenizer(in, fileName, (source, line, text, reason) ->
+                    chunk.rejects.add(() -> rejects.reject(source, lines + line, text, reason)));
+                if (first == 0){
+                    chunk.header = row.next(); //discard header
+                }
+                while (row.next()){
+                    T result = parser.apply(row);
+                    if (result != null){
+                        chunk.results.add(result);
+                    }
+                }
+                chunk.records = row.getRecords() - (chunk.header ? 1 : 0);
+            }
+            catch(IOException ex){
+                throw new UncheckedIOException(ex);
+            }
+            return chunk;
+        }
+
+        /**
+         * Method read reads the bytes from start to end
+         */
+        private Reader read(long start, long end) throws IOException{
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+            while (buffer.hasRemaining()){
+                if (channel.read(buffer, start + buffer.position()) < 0){
+                    break;
+                }
+            }
+            return new InputStreamReader(new ByteArrayInputStream(buffer.array(), 0, buffer.position()),
+                                         Charset.defaultCharset());
+        }
+    }
+}
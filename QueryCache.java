@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * QueryCache keeps the answers to the most recently asked MovieRequests of a collection, so that a request that is
+ * asked again is answered without looking at the movies. Requests are found by their key, which is the same for
+ * requests that ask the same question in different ways (see MovieRequest and MovieQuery.getKey()).
+ *
+ * The answers belong to one snapshot of the collection and are kept in a ConcurrentHashMap of their own: when a
+ * request is asked about a newer snapshot, because the collection was changed, a new map is started and the old one
+ * is dropped with its answers (answers about a snapshot older than the kept ones are not kept at all). A request
+ * that finds its answer takes no lock; it only writes in the answer the number of misses so far, as the time of its
+ * use. At most maxEntries answers are kept; when there are more, a few of them are looked at and the one among them
+ * that was used least recently is removed, which is close enough to removing the one used least recently of all.
+ * Answers are shared by everyone who asks the same request, so they are lists that cannot be changed.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class QueryCache
+{
+    private static final Metrics.Timer REQUEST = Metrics.timer("request",
+        "Time to answer a request, from the kept answers or from the movies");
+    private static final Metrics.Counter HITS = Metrics.counter("cache_hits", "Requests answered from the kept answers");
+    private static final Metrics.Counter MISSES = Metrics.counter("cache_misses", "Requests answered from the movies");
+    private static final int SAMPLE = 8; //answers looked at to choose the one to remove
+    private int maxEntries;
+    private volatile Answers current; //the answers about the newest snapshot asked about, null if there are none
+    private AtomicLong clock = new AtomicLong(); //counts the misses; an answer keeps the count of its last use
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+    private LongAdder evictions = new LongAdder(); //answers removed because there were more than maxEntries
+    private LongAdder invalidations = new LongAdder(); //times all the answers were removed because the snapshot changed
+
+    /**
+     * The answers kept about one snapshot
+     */
+    private static class Answers
+    {
+        private CatalogSnapshot snapshot;
+        private ConcurrentHashMap<String, Answer> answers = new ConcurrentHashMap<String, Answer>();
+
+        private Answers(CatalogSnapshot snapshot)
+        {
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * One kept answer, with the last time it was used
+     */
+    private static class Answer
+    {
+        private List<Movie> movies;
+        private long used; //written without a lock by hits: other threads may see it late, which only blurs LRU
+
+        private Answer(List<Movie> movies, long used)
+        {
+            this.movies = movies;
+            this.used = used;
+        }
+    }
+
+    /**
+     * Constructor for objects of class QueryCache
+     *
+     * @param maxEntries the largest number of answers kept
+     */
+    public QueryCache(int maxEntries)
+    {
+        if (maxEntries < 1){
+            throw new IllegalArgumentException("A QueryCache needs room for at least one answer: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Method get returns the answer to a request about a snapshot, from the kept answers if it is there, and
+     * otherwise by answering it and keeping the answer. Neither takes a lock of the cache, so slow requests do not
+     * hold up the others; two threads that miss the same request at the same time may both answer it, and the
+     * answer of the first one is kept.
+     *
+     * @param s the snapshot
+     * @param request the request
+     * @return the answer, as a list that cannot be changed
+     */
+    public List<Movie> get(CatalogSnapshot s, MovieRequest request){
+        long start = Metrics.start();
+        String key = request.getKey();
+        Answers kept = current;
+        if (kept != null && kept.snapshot == s){
+            Answer answer = kept.answers.get(key);
+            if (answer != null){
+                answer.used = clock.get();
+                hits.increment();
+                HITS.increment();
+                REQUEST.stop(start);
+                return answer.movies;
+            }
+        }
+        misses.increment();
+        MISSES.increment();
+        List<Movie> movies = Collections.unmodifiableList(new ArrayList<Movie>(request.answer(s)));
+        kept = answersAbout(s);
+        if (kept != null){
+            Answer answer = kept.answers.putIfAbsent(key, new Answer(movies, clock.getAndIncrement()));
+            if (answer != null){
+                movies = answer.movies;
+            }
+            else if (kept.answers.size() > maxEntries){
+                evict(kept);
+            }
+        }
+        REQUEST.stop(start);
+        return movies;
+    }
+
+    /**
+     * Method answersAbout returns the kept answers about a snapshot, starting them if the snapshot is newer than the
+     * one of the kept answers
+     *
+     * @param s the snapshot
+     * @return the answers, or null if s is older than the snapshot of the kept answers
+     */
+    private synchronized Answers answersAbout(CatalogSnapshot s){
+        Answers kept = current;
+        if (kept != null && kept.snapshot == s){
+            return kept;
+        }
+        if (kept != null && s.getVersion() < kept.snapshot.getVersion()){
+            return null; //an old snapshot: its answers are not kept
+        }
+        if (kept != null){
+            invalidations.increment();
+        }
+        kept = new Answers(s);
+        current = kept;
+        return kept;
+    }
+
+    /**
+     * Method evict removes answers until there are at most maxEntries. Each time, it looks at SAMPLE answers and
+     * removes the one that was used least recently among them.
+     *
+     * @param kept the answers
+     */
+    private void evict(Answers kept){
+        while (kept.answers.size() > maxEntries){
+            Map.Entry<String, Answer> oldest = null;
+            Iterator<Map.Entry<String, Answer>> entries = kept.answers.entrySet().iterator();
+            for (int i = 0; i < SAMPLE && entries.hasNext(); i++){
+                Map.Entry<String, Answer> entry = entries.next();
+                if (oldest == null || entry.getValue().used < oldest.getValue().used){
+                    oldest = entry;
+                }
+            }
+            if (oldest != null && kept.answers.remove(oldest.getKey(), oldest.getValue())){
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Method clear removes all the kept answers
+     */
+    public synchronized void clear(){
+        current = null;
+    }
+
+    /**
+     * size() returns the number of answers kept
+     *
+     * @return number of answers
+     */
+    public int size(){
+        Answers kept = current;
+        return kept == null ? 0 : kept.answers.size();
+    }
+
+    /**
+     * getMaxEntries() returns the largest number of answers kept
+     *
+     * @return the largest number of answers
+     */
+    public int getMaxEntries(){
+        return maxEntries;
+    }
+
+    /**
+     * getHits() returns the number of requests that were answered from the kept answers
+     *
+     * @return number of hits
+     */
+    public long getHits(){
+        return hits.sum();
+    }
+
+    /**
+     * getMisses() returns the number of requests that had to be answered from the movies
+     *
+     * @return number of misses
+     */
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    /**
+     * getEvictions() returns the number of answers that were removed to make room for others
+     *
+     * @return number of evictions
+     */
+    public long getEvictions(){
+        return evictions.sum();
+    }
+
+    /**
+     * getInvalidations() returns the number of times all the answers were removed because the collection changed
+     *
+     * @return number of invalidations
+     */
+    public long getInvalidations(){
+        return invalidations.sum();
+    }
+
+    /**
+     * getHitRate() returns the fraction of requests that were answered from the kept answers
+     *
+     * @return hits / (hits + misses), NaN if there were no requests
+     */
+    public double getHitRate(){
+        long h = hits.sum();
+        return (double) h / (h + misses.sum());
+    }
+
+    /**
+     * Method toString returns the figures of the cache
+     *
+     * @return a string with the figures of the cache
+     */
+    public String toString(){
+        return "QueryCache: " + size() + "/" + maxEntries + " answers, " + getHits() + " hits, " + getMisses()
+            + " misses, " + getEvictions() + " evictions, " + getInvalidations() + " invalidations";
+    }
+}
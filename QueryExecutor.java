@@ -0,0 +1,199 @@
+import java.lang.reflect.InvocationTargetException;
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * QueryExecutor answers batches of MovieRequests on a MovieCollection at the same time, and gives back a future for
+ * every request. All the requests of a batch are answered from the same snapshot of the collection (see
+ * CatalogSnapshot), so they see the same movies even if the collection is changed in the meantime, and no locks are
+ * taken while they run.
+ *
+ * Requests are run one per thread. On Java 21 or later the threads are virtual threads, which are cheap enough for
+ * one per request whatever the number of requests; on older versions a pool with one thread per processor is used
+ * instead (see usesVirtualThreads()).
+ *
+ * If a request is sent while an equal request (see MovieRequest.equals()) on the same snapshot is still running, it
+ * is not run again: both get the same answer (see getCoalesced()). Requests that were answered before are answered
+ * from the QueryCache of the collection (see MovieCollection.answer()). Answers can therefore be shared, and are
+ * lists that cannot be changed.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class QueryExecutor
+{
+    private MovieCollection collection;
+    private ExecutorService executor;
+    private boolean virtualThreads;
+    private Hashtable<Running, CompletableFuture<List<Movie>>> running; //requests that are not answered yet
+    private AtomicLong submitted = new AtomicLong();
+    private AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Running is a request on one snapshot. Two are equal if the requests are equal and the snapshot is the same.
+     */
+    private static class Running
+    {
+        private CatalogSnapshot snapshot;
+        private MovieRequest request;
+
+        Running(CatalogSnapshot snapshot, MovieRequest request)
+        {
+            this.snapshot = snapshot;
+            this.request = request;
+        }
+
+        public boolean equals(Object other){
+            return other instanceof Running && snapshot == ((Running) other).snapshot
+                && request.equals(((Running) other).request);
+        }
+
+        public int hashCode(){
+            return System.identityHashCode(snapshot) * 31 + request.hashCode();
+        }
+    }
+
+    /**
+     * Constructor for objects of class QueryExecutor
+     *
+     * @param collection the collection the requests are about
+     */
+    public QueryExecutor(MovieCollection collection)
+    {
+        this.collection = collection;
+        this.running = new Hashtable<Running, CompletableFuture<List<Movie>>>();
+        try{
+            //Executors.newVirtualThreadPerTaskExecutor() is only there from Java 21
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtualThreads = true;
+        }
+        catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex){
+            ThreadFactory daemons = r -> {
+                Thread t = new Thread(r, "QueryExecutor");
+                t.setDaemon(true);
+                return t;
+            };
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemons);
+            virtualThreads = false;
+        }
+    }
+
+    /**
+     * Method submit answers one request from the current snapshot of the collection
+     *
+     * @param request the request
+     * @return a future with the movies, as a list that cannot be changed
+     */
+    public CompletableFuture<List<Movie>> submit(MovieRequest request){
+        return submit(collection.getSnapshot(), request);
+    }
+
+    /**
+     * Method submitAll answers a batch of requests, all from the same snapshot of the collection
+     *
+     * @param requests the requests
+     * @return a future for every request, in the same order
+     */
+    public LinkedList<CompletableFuture<List<Movie>>> submitAll(List<MovieRequest> requests){
+        CatalogSnapshot snapshot = collection.getSnapshot();
+        LinkedList<CompletableFuture<List<Movie>>> futures = new LinkedList<CompletableFuture<List<Movie>>>();
+        for (MovieRequest request : requests){
+            futures.add(submit(snapshot, request));
+        }
+        return futures;
+    }
+
+    private CompletableFuture<List<Movie>> submit(final CatalogSnapshot snapshot, final MovieRequest request){
+        submitted.incrementAndGet();
+        final Running key = new Running(snapshot, request);
+        final CompletableFuture<List<Movie>> answer;
+        synchronized (running){
+            CompletableFuture<List<Movie>> same = running.get(key);
+            if (same != null){
+                coalesced.incrementAndGet();
+                return same.copy();
+            }
+            answer = new CompletableFuture<List<Movie>>();
+            running.put(key, answer);
+        }
+        answer.whenComplete((movies, ex) -> running.remove(key, answer));
+        try{
+            executor.execute(() -> {
+                try{
+                    answer.complete(collection.getQueryCache().get(snapshot, request));
+                }
+                catch (Throwable ex){
+                    answer.completeExceptionally(ex);
+                }
+            });
+        }
+        catch (RuntimeException ex){ //the executor was shut down
+            answer.completeExceptionally(ex);
+        }
+        return answer.copy();
+    }
+
+    /**
+     * usesVirtualThreads() returns whether the requests run on virtual threads (Java 21 or later) or on a pool of
+     * platform threads
+     *
+     * @return true for virtual threads
+     */
+    public boolean usesVirtualThreads(){
+        return virtualThreads;
+    }
+
+    /**
+     * getSubmitted() returns the number of requests sent to this executor
+     *
+     * @return number of requests
+     */
+    public long getSubmitted(){
+        return submitted.get();
+    }
+
+    /**
+     * getCoalesced() returns the number of requests that were not run because an equal request was running
+     *
+     * @return number of coalesced requests
+     */
+    public long getCoalesced(){
+        return coalesced.get();
+    }
+
+    /**
+     * Method shutdown stops the threads of this executor once the requests already sent are answered. Requests sent
+     * afterwards fail.
+     */
+    public void shutdown(){
+        executor.shutdown();
+    }
+
+    /**
+     * Method main for testing
+     *
+     */
+    public static void main(String[] args) throws Exception{
+        MovieCollection collection = new MovieCollection("data/nextBechdel_allTests.txt", "data/nextBechdel_castGender.txt");
+        QueryExecutor executor = new QueryExecutor(collection);
+        System.out.println("Virtual threads: " + executor.usesVirtualThreads());
+        LinkedList<MovieRequest> batch = new LinkedList<MovieRequest>();
+        for (int i = 0; i < 100; i++){
+            batch.add(MovieRequest.passedBechdel());
+            batch.add(MovieRequest.passedTest(i % 13 + 1));
+            batch.add(MovieRequest.topK(10));
+        }
+        LinkedList<CompletableFuture<List<Movie>>> answers = executor.submitAll(batch);
+        System.out.println("Passed Bechdel [" + collection.findAllMoviesPassedBechdel().size() + "]: "
+                           + answers.get(0).get().size());
+        System.out.println("Top 10 [" + collection.topK(10) + "]: " + answers.get(2).get());
+        System.out.println("Requests: " + executor.getSubmitted() + ", coalesced: " + executor.getCoalesced());
+        executor.shutdown();
+    }
+}
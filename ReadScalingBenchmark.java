@@ -0,0 +1,127 @@
+import java.io.*;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReadScalingBenchmark checks how queries scale with the number of reading threads while the collection is being
+ * changed. It generates a collection (see MovieDataGenerator) and two delta files that move movies back and forth
+ * between two sets of test results, then runs 1, 2, 4, ... reading threads, up to the number of processors, for a
+ * few seconds each. Readers run queries and topK() in a loop while one writer applies the deltas one after the
+ * other, and the number of reads per second is printed. Readers never wait for the writer, so the reads per second
+ * should grow with the number of threads until the processors are all busy.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class ReadScalingBenchmark
+{
+    private static final int CAST_SIZE = 10;
+    private static final long RUN_MILLIS = 3000;
+
+    private static volatile boolean running;
+    private static volatile Object sink; //results are stored here so that the reads are not optimised away
+
+    /**
+     * Method writeDelta writes a delta file that gives every changed-th movie the same test results
+     *
+     * @param file the delta file
+     * @param size the number of movies
+     * @param changed one movie out of changed is changed
+     * @param results the test results, as in the tests file (starting with a comma)
+     */
+    private static void writeDelta(File file, int size, int changed, String results) throws IOException{
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        writer.println("CHANGE,DATA");
+        for (int i = 0; i < size; i += changed){
+            writer.println("TESTS," + MovieDataGenerator.title(i) + results);
+        }
+        writer.close();
+    }
+
+    /**
+     * Method run runs the given number of reading threads and one writing thread for RUN_MILLIS
+     *
+     * @param collection the collection
+     * @param readers the number of reading threads
+     * @param deltas the delta files the writer applies in turn
+     * @return the number of reads per second
+     */
+    private static double run(final MovieCollection collection, int readers, final String[] deltas)
+            throws InterruptedException{
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+        running = true;
+        LinkedList<Thread> threads = new LinkedList<Thread>();
+        for (int t = 0; t < readers; t++){
+            final int first = t;
+            threads.add(new Thread(() -> {
+                long count = 0;
+                int i = first;
+                while (running){
+                    switch (i++ % 4){
+                        case 0: sink = collection.findAllMoviesPassedPorL(); break;
+                        case 1: sink = collection.findAllMoviesPassedWnotRD(); break;
+                        case 2: sink = collection.topK(100); break;
+                        default: sink = collection.findAllMovies(MovieQuery.passed(Movie.KO)
+                                                                 .and(MovieQuery.femaleShareAbove(0.5)));
+                    }
+                    count++;
+                }
+                reads.addAndGet(count);
+            }));
+        }
+        threads.add(new Thread(() -> {
+            int i = 0;
+            while (running){
+                collection.applyDelta(deltas[i++ % deltas.length]);
+                writes.incrementAndGet();
+            }
+        }));
+        long start = System.nanoTime();
+        for (Thread thread : threads){
+            thread.start();
+        }
+        Thread.sleep(RUN_MILLIS);
+        running = false;
+        for (Thread thread : threads){
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double perSecond = reads.get() / seconds;
+        System.out.println(readers + "\t" + Math.round(perSecond) + "\t" + writes.get());
+        return perSecond;
+    }
+
+    /**
+     * Method main runs the benchmark. Arguments: [directory for the generated files] [number of movies]
+     * By default the files go to the temporary directory, with 20000 movies.
+     *
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        File dir = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        File tests = new File(dir, "scaling_allTests_" + size + ".txt");
+        File casts = new File(dir, "scaling_castGender_" + size + ".txt");
+        File[] deltas = {new File(dir, "scaling_delta1_" + size + ".txt"),
+                         new File(dir, "scaling_delta2_" + size + ".txt")};
+        MovieDataGenerator g = new MovieDataGenerator(size, CAST_SIZE, 42);
+        g.writeTests(tests.getPath());
+        g.writeCasts(casts.getPath());
+        writeDelta(deltas[0], size, 100, ",0,1,0,1,0,1,0,1,0,1,0,1,0");
+        writeDelta(deltas[1], size, 100, ",1,0,1,0,1,0,1,0,1,0,1,0,1");
+        String[] deltaFiles = {deltas[0].getPath(), deltas[1].getPath()};
+
+        MovieCollection collection = new MovieCollection(tests.getPath(), casts.getPath());
+        System.out.println("readers\treads/s\tdeltas applied");
+        run(collection, 1, deltaFiles); //warm up
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int readers = 1; readers <= processors; readers *= 2){
+            run(collection, readers, deltaFiles);
+        }
+
+        tests.delete();
+        casts.delete();
+        deltas[0].delete();
+        deltas[1].delete();
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * ScoringEngine scores a whole list of movies at once with one or more ScoringModels. It reads what the models need
+ * from every movie (tests passed, fraction of female actors and cast size) from the arrays of a TestBitmapIndex, so
+ * scoring is a simple loop over those arrays, and many models can be tried without visiting the movies again.
+ * The engine follows the changes made to its index.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class ScoringEngine
+{
+    private static final Metrics.Timer SCORE = Metrics.timer("score", "Time to score every movie with a model");
+    private TestBitmapIndex index;
+
+    /**
+     * Constructor for objects of class ScoringEngine
+     *
+     * @param movies the movies to score, in order
+     */
+    public ScoringEngine(List<Movie> movies)
+    {
+        this(new TestBitmapIndex(movies));
+    }
+
+    /**
+     * Constructor for objects of class ScoringEngine, for the movies of an index
+     *
+     * @param index the index of the movies to score
+     */
+    public ScoringEngine(TestBitmapIndex index)
+    {
+        this.index = index;
+    }
+
+    /**
+     * size() returns the number of movies
+     *
+     * @return number of movies
+     */
+    public int size(){
+        return index.size();
+    }
+
+    /**
+     * Method score scores every movie with the model
+     *
+     * @param model the scoring model
+     * @return the scores, in the order of the movies
+     */
+    public double[] score(ScoringModel model){
+        long start = Metrics.start();
+        double[] scores = new double[index.size()];
+        for (int i = 0; i < scores.length; i++){
+            scores[i] = model.score(index.passedMask(i), index.femaleShare(i), index.castSize(i));
+        }
+        SCORE.stop(start);
+        return scores;
+    }
+
+    /**
+     * Method scoreAll scores every movie with every model. The models are scored at the same time on the common
+     * ForkJoinPool.
+     *
+     * @param models the scoring models
+     * @return scores[j][i] is the score of movie i with models.get(j)
+     */
+    public double[][] scoreAll(List<ScoringModel> models){
+        return IntStream.range(0, models.size()).parallel()
+            .mapToObj(j -> score(models.get(j)))
+            .toArray(double[][]::new);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Represents a way of calculating the feminist score of a movie. A ScoringModel gives every test a weight that
+ * is added when the movie passed it and another one that is added when it did not, and weights for the fraction
+ * of tests passed, the fraction of female actors and the size of the cast:
+ *
+ *   score = sum of the test weights + passedFractionWeight * (tests passed / testCount)
+ *           + femaleShareWeight * (female actors / actors) + castSizeWeight * actors
+ *
+ * feminist() returns the model used by Movie.feministScore(). Other models can be built with the setters and
+ * compared over a whole collection with ScoringEngine.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class ScoringModel
+{
+    private String name;
+    private double[] passedWeights = new double[64]; //added when test n was passed
+    private double[] notPassedWeights = new double[64]; //added when test n was not passed
+    private int[] weightedTests = new int[0]; //tests with a weight that is not 0, in increasing order
+    private double passedFractionWeight;
+    private int testCount = 13;
+    private double femaleShareWeight;
+    private double castSizeWeight;
+
+    /**
+     * Constructor for objects of class ScoringModel. All weights start at 0.
+     *
+     * @param name a name for the model, used by toString()
+     */
+    public ScoringModel(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Method feminist returns a new ScoringModel with the weights of Movie.feministScore(): Pierce +2, Feldman +4,
+     * Ko +1 (or -0.5 if not passed), White +3, plus the fraction of the 13 tests passed and the fraction of female
+     * actors.
+     *
+     * @return the model
+     */
+    public static ScoringModel feminist(){
+        ScoringModel model = new ScoringModel("feminist");
+        model.setTestWeights(Movie.PIERCE, 2, 0);
+        model.setTestWeights(Movie.FELDMAN, 4, 0);
+        model.setTestWeights(Movie.KO, 1, -0.5);
+        model.setTestWeights(Movie.WHITE, 3, 0);
+        model.setPassedFractionWeight(1, 13);
+        model.setFemaleShareWeight(1);
+        return model;
+    }
+
+    /**
+     * Method setTestWeights sets the weights of the n-th test
+     *
+     * @param n index of the test, for example Movie.PIERCE
+     * @param passed weight added when the test was passed
+     * @param notPassed weight added when the test was not passed
+     */
+    public void setTestWeights(int n, double passed, double notPassed){
+        if (n < 0 || n >= 64){
+            throw new IllegalArgumentException("Invalid test number: " + n);
+        }
+        passedWeights[n] = passed;
+        notPassedWeights[n] = notPassed;
+        int count = 0;
+        for (int i = 0; i < 64; i++){
+            if (passedWeights[i] != 0 || notPassedWeights[i] != 0){
+                count++;
+            }
+        }
+        weightedTests = new int[count];
+        count = 0;
+        for (int i = 0; i < 64; i++){
+            if (passedWeights[i] != 0 || notPassedWeights[i] != 0){
+                weightedTests[count++] = i;
+            }
+        }
+    }
+
+    /**
+     * Method setPassedFractionWeight sets the weight of the number of tests passed divided by testCount
+     *
+     * @param weight the weight
+     * @param testCount the number of tests the count is divided by
+     */
+    public void setPassedFractionWeight(double weight, int testCount){
+        this.passedFractionWeight = weight;
+        this.testCount = testCount;
+    }
+
+    /**
+     * Method setFemaleShareWeight sets the weight of the fraction of female actors in the cast
+     *
+     * @param weight the weight
+     */
+    public void setFemaleShareWeight(double weight){
+        this.femaleShareWeight = weight;
+    }
+
+    /**
+     * Method setCastSizeWeight sets the weight of the number of actors in the cast
+     *
+     * @param weight the weight
+     */
+    public void setCastSizeWeight(double weight){
+        this.castSizeWeight = weight;
+    }
+
+    /**
+     * Method score calculates the score of one movie
+     *
+     * @param m the movie
+     * @return the score of the movie, NaN if the movie has no cast and femaleShareWeight is used
+     */
+    public double score(Movie m){
+        return score(m.getPassedMask(), m.femaleActorCount(), m.getCastSize());
+    }
+
+    /**
+     * Method score calculates the score of a movie from its figures
+     *
+     * @param passed the tests passed as bits (see Movie.getPassedMask())
+     * @param femaleShare the fraction of female actors (see Movie.femaleActorCount())
+     * @param castSize the number of actors
+     * @return the score
+     */
+    public double score(long passed, double femaleShare, int castSize){
+        double count = 0;
+        for (int i = 0; i < weightedTests.length; i++){
+            int n = weightedTests[i];
+            count += ((passed >>> n) & 1) != 0 ? passedWeights[n] : notPassedWeights[n];
+        }
+        double fraction = (double) Long.bitCount(passed) / testCount;
+        double features = passedFractionWeight * fraction;
+        if (femaleShareWeight != 0){ //a movie without a cast has a NaN share, which only matters if it is used
+            features += femaleShareWeight * femaleShare;
+        }
+        if (castSizeWeight != 0){
+            features += castSizeWeight * castSize;
+        }
+        count += features;
+        return count;
+    }
+
+    /**
+     * Method toString returns the name of the model
+     *
+     * @return the name of the model
+     */
+    public String toString(){
+        return "ScoringModel " + name;
+    }
+}
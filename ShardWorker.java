@@ -0,0 +1,242 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+
+/**
+ * ShardWorker holds one shard of a ShardedCollection in its own JVM and answers the requests of the collection over
+ * a socket on the loopback address. A shard is the part of the movies whose title hash gives that shard (see
+ * MovieCollection.loadShard()); the worker reads both files, but only keeps the movies of its shard and their casts.
+ *
+ * Requests and answers are written with DataOutputStream. A request is one byte saying what is asked, followed by
+ * its arguments; the answer starts with OK and the data, or ERROR and a message. Movies are sent with their
+ * position among all the movies of the file, so the answers of the shards can be put back in the order of the
+ * whole collection, and with their test results, cast and score (see writeMovie()). Queries are sent as their key
+ * (see MovieQuery.getKey() and MovieQuery.parse()).
+ *   SIZE                       number of movies of the shard
+ *   SELECT key                 the movies that match the query, in the order of the file
+ *   TOP key k                  the k most feminist movies that match the query ("" for all movies), best first
+ *   BOTTOM k                   the k least feminist movies, worst first
+ *   CLOSE                      stops the worker
+ *
+ * The worker is started by ShardedCollection.start(), and prints "READY port" once it is listening. It stops when
+ * it receives CLOSE, or when its standard input is closed, that is when the JVM that started it ends.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class ShardWorker
+{
+    static final byte SIZE = 1; //requests
+    static final byte SELECT = 2;
+    static final byte TOP = 3;
+    static final byte BOTTOM = 4;
+    static final byte CLOSE = 5;
+    static final byte OK = 0; //answers
+    static final byte ERROR = 1;
+    static final String READY = "READY ";
+
+    private MovieCollection shard;
+    private IdentityHashMap<Movie, Integer> positions; //key = movie of the shard, value = its position in the file
+
+    /**
+     * Constructor for objects of class ShardWorker
+     *
+     * @param testsFileName the test results file
+     * @param castsFileName the cast file
+     * @param shard the shard to keep, from 0 to shards - 1
+     * @param shards the number of shards
+     */
+    public ShardWorker(String testsFileName, String castsFileName, int shard, int shards)
+    {
+        this.shard = MovieCollection.loadShard(testsFileName, castsFileName, shard, shards);
+        this.positions = new IdentityHashMap<Movie, Integer>();
+        int[] filePositions = this.shard.getShardPositions();
+        int i = 0;
+        for (Movie m : this.shard.getSnapshot().getMovies()){
+            positions.put(m, filePositions[i++]);
+        }
+    }
+
+    /**
+     * Method serve answers the requests of one connection until it is closed
+     *
+     * @param socket the connection
+     * @return true if the worker was asked to stop
+     */
+    public boolean serve(Socket socket) throws IOException{
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))){
+            while (true){
+                int request = in.read();
+                if (request < 0 || request == CLOSE){
+                    return request == CLOSE;
+                }
+                try{
+                    answer((byte) request, in, out);
+                }
+                catch (RuntimeException ex){
+                    out.writeByte(ERROR);
+                    out.writeUTF(String.valueOf(ex));
+                }
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Method answer reads the arguments of one request and writes its answer
+     */
+    private void answer(byte request, DataInputStream in, DataOutputStream out) throws IOException{
+        CatalogSnapshot s = shard.getSnapshot();
+        if (request == SIZE){
+            out.writeByte(OK);
+            out.writeInt(s.getMovies().size());
+        }
+        else if (request == SELECT){
+            MovieQuery query = MovieQuery.parse(in.readUTF());
+            writeMovies(s.getTestIndex().select(query), out);
+        }
+        else if (request == TOP){
+            String key = in.readUTF();
+            int k = in.readInt();
+            if (key.length() == 0){
+                writeMovies(s.getRanking().getMovies(0, k), out);
+            }
+            else{
+                writeMovies(TopMovies.top(s.getTestIndex().select(MovieQuery.parse(key)), k), out);
+            }
+        }
+        else if (request == BOTTOM){
+            int k = in.readInt();
+            LinkedList<Movie> bottom = new LinkedList<Movie>();
+            MovieRanking ranking = s.getRanking();
+            for (int r = ranking.size() - 1; r >= Math.max(0, ranking.size() - k); r--){
+                bottom.add(ranking.getMovie(r));
+            }
+            writeMovies(bottom, out);
+        }
+        else{
+            throw new IllegalArgumentException("Unknown request: " + request);
+        }
+    }
+
+    private void writeMovies(LinkedList<Movie> movies, DataOutputStream out) throws IOException{
+        out.writeByte(OK);
+        out.writeInt(movies.size());
+        for (Movie m : movies){
+            out.writeInt(positions.get(m));
+            writeMovie(m, out);
+        }
+    }
+
+    /**
+     * Method writeMovie writes a movie with its test results, its cast and its feminist score
+     *
+     * @param m the movie
+     * @param out where it is written
+     */
+    static void writeMovie(Movie m, DataOutputStream out) throws IOException{
+        out.writeUTF(m.getTitle());
+        out.writeInt(m.getNumTestResults());
+        out.writeLong(m.getPassedMask());
+        out.writeLong(m.getFailedMask());
+        int others = 0; //results that are not "0", "1" or empty
+        for (int n = 0; n < m.getNumTestResults(); n++){
+            if (!m.passedTest(n) && !m.failedTest(n) && m.testResult(n).length() > 0){
+                others++;
+            }
+        }
+        out.writeInt(others);
+        for (int n = 0; n < m.getNumTestResults(); n++){
+            if (!m.passedTest(n) && !m.failedTest(n) && m.testResult(n).length() > 0){
+                out.writeInt(n);
+                out.writeUTF(m.testResult(n));
+            }
+        }
+        out.writeInt(m.getCastSize());
+        for (int i = 0; i < m.getCastSize(); i++){
+            Actor a = m.getCastMember(i);
+            out.writeUTF(a.getName());
+            out.writeUTF(a.getGender());
+            out.writeUTF(m.getRoleType(i));
+        }
+        out.writeDouble(m.feministScore());
+    }
+
+    /**
+     * Method readMovie reads a movie written by writeMovie(). Its actors are interned in the given registry, which
+     * should be one for the answer it is part of, so answers do not keep adding actors to a registry that lives on.
+     *
+     * @param in where it is read from
+     * @param registry the registry of the ids of the actors of the movie
+     * @return the movie
+     */
+    static Movie readMovie(DataInputStream in, ActorRegistry registry) throws IOException{
+        Movie m = new Movie(in.readUTF(), registry);
+        int numResults = in.readInt();
+        long passed = in.readLong();
+        long failed = in.readLong();
+        Hashtable<Integer, String> otherResults = null;
+        int others = in.readInt();
+        for (int j = 0; j < others; j++){
+            if (otherResults == null){
+                otherResults = new Hashtable<Integer, String>();
+            }
+            int n = in.readInt();
+            otherResults.put(n, in.readUTF());
+        }
+        m.restoreTestResults(passed, failed, numResults, otherResults);
+        int castSize = in.readInt();
+        for (int i = 0; i < castSize; i++){
+            int id = registry.intern(in.readUTF(), in.readUTF());
+            m.addActor(id, in.readUTF());
+        }
+        m.restoreScore(in.readDouble());
+        return m;
+    }
+
+    /**
+     * Method main starts a worker. Arguments: tests file, cast file, shard, number of shards, [port]. The port is
+     * chosen by the system if it is 0 or missing.
+     *
+     */
+    public static void main(String[] args) throws IOException{
+        ShardWorker worker = new ShardWorker(args[0], args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        int port = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread parent = new Thread(() -> {
+            try{
+                while (System.in.read() >= 0){
+                    //wait for the end of the input
+                }
+            }
+            catch (IOException ex){
+                //stop as well
+            }
+            System.exit(0);
+        });
+        parent.setDaemon(true);
+        parent.start();
+        System.out.println(READY + server.getLocalPort());
+        System.out.flush();
+        while (true){
+            Socket socket = server.accept();
+            Thread connection = new Thread(() -> {
+                try{
+                    if (worker.serve(socket)){
+                        System.exit(0);
+                    }
+                }
+                catch (IOException ex){
+                    System.out.println(ex);
+                }
+            });
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+}
@@ -0,0 +1,531 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ShardedCollection answers the same questions as a MovieCollection, with the same answers, for collections that do
+ * not fit in one JVM. The movies are split into shards by the hash of their title (see MovieCollection.shardOf()),
+ * and every shard is kept by a ShardWorker in a JVM of its own; the collection talks to the workers over sockets on
+ * the loopback address, so all the shards can run on one machine.
+ *
+ * Every request is sent to all the shards at the same time and their answers are merged:
+ *   - filters (findAllMovies*) return the matching movies of each shard in the order of the file, with their
+ *     position in it, and the lists are merged by position;
+ *   - rankings (topK, bottomK, rankPage, getRanking) take the best (or worst) movies of each shard, already in the
+ *     order of MovieRanking, and merge them k ways, keeping the first ones.
+ * The movies of the answers are copies sent by the workers, with their test results, cast and feminist score; the
+ * actors of each answer get their ids from a registry of its own, which is dropped with the answer.
+ * Changes (applyDelta()) are not supported; start the workers again to read new files.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class ShardedCollection
+{
+    private Shard[] shards;
+    private Process[] workers; //the JVMs started by start(), or null
+    private ExecutorService executor;
+
+    /**
+     * Shard is the connection to one worker. Requests on one connection are sent one at a time.
+     */
+    private static class Shard
+    {
+        private int port;
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        Shard(int port) throws IOException
+        {
+            this.port = port;
+            connect();
+        }
+
+        private void connect() throws IOException{
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Method reconnect closes the connection after a request failed part way, since the rest of the request or
+         * of its answer may still be in it, and opens a new one. If the worker cannot be reached, the connection
+         * stays closed and the next request fails and tries again.
+         */
+        void reconnect(){
+            try{
+                socket.close();
+            }
+            catch (IOException ex){
+                //already closed
+            }
+            try{
+                connect();
+            }
+            catch (IOException ex){
+                System.out.println("Shard on port " + port + " cannot be reached: " + ex);
+            }
+        }
+    }
+
+    /**
+     * Ranked is a movie of an answer with its position in the file
+     */
+    private static class Ranked
+    {
+        private int position;
+        private Movie movie;
+        private double score;
+
+        Ranked(int position, Movie movie)
+        {
+            this.position = position;
+            this.movie = movie;
+            this.score = MovieRanking.scoreOf(movie);
+        }
+    }
+
+    //the order of MovieRanking: best first
+    private static final Comparator<Ranked> BEST_FIRST = new Comparator<Ranked>(){
+        public int compare(Ranked a, Ranked b){
+            return MovieRanking.compareRanks(a.score, a.movie, b.score, b.movie);
+        }
+    };
+    private static final Comparator<Ranked> FILE_ORDER = new Comparator<Ranked>(){
+        public int compare(Ranked a, Ranked b){
+            return Integer.compare(a.position, b.position);
+        }
+    };
+
+    /**
+     * Constructor for objects of class ShardedCollection, for workers that are already running. Shard i must be
+     * listening on ports[i], and all the workers must have been started with the same files and ports.length
+     * shards.
+     *
+     * @param ports the ports of the workers, in the order of their shards
+     */
+    public ShardedCollection(int[] ports) throws IOException
+    {
+        this.shards = new Shard[ports.length];
+        try{
+            for (int i = 0; i < ports.length; i++){
+                shards[i] = new Shard(ports[i]);
+            }
+        }
+        catch (IOException ex){
+            closeConnections();
+            throw ex;
+        }
+        this.executor = Executors.newFixedThreadPool(ports.length, r -> {
+            Thread t = new Thread(r, "ShardedCollection");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Method start starts one ShardWorker JVM per shard on this machine, with the same Java and class path as this
+     * one, and returns a collection connected to them. The workers stop when close() is called or when this JVM
+     * ends.
+     *
+     * @param testsFileName the test results file
+     * @param castsFileName the cast file
+     * @param shardCount the number of shards
+     * @param jvmOptions options for the JVMs of the workers, for example "-Xmx2g"
+     * @return the collection
+     */
+    public static ShardedCollection start(String testsFileName, String castsFileName, int shardCount,
+                                          String... jvmOptions) throws IOException{
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process[] workers = new Process[shardCount];
+        int[] ports = new int[shardCount];
+        try{
+            for (int i = 0; i < shardCount; i++){
+                List<String> command = new ArrayList<String>();
+                command.add(java);
+                for (String option : jvmOptions){
+                    command.add(option);
+                }
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add("ShardWorker");
+                command.add(testsFileName);
+                command.add(castsFileName);
+                command.add(String.valueOf(i));
+                command.add(String.valueOf(shardCount));
+                workers[i] = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            }
+            for (int i = 0; i < shardCount; i++){
+                ports[i] = waitUntilReady(workers[i], i);
+            }
+            ShardedCollection collection = new ShardedCollection(ports);
+            collection.workers = workers;
+            return collection;
+        }
+        catch (IOException ex){
+            for (Process worker : workers){
+                if (worker != null){
+                    worker.destroy();
+                }
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Method waitUntilReady reads what a worker prints until it says on which port it listens, and then keeps
+     * printing what it prints on a thread of its own
+     *
+     * @return the port
+     */
+    private static int waitUntilReady(Process worker, int shard) throws IOException{
+        BufferedReader output = new BufferedReader(new InputStreamReader(worker.getInputStream()));
+        String line;
+        while ((line = output.readLine()) != null){
+            if (line.startsWith(ShardWorker.READY)){
+                Thread printer = new Thread(() -> {
+                    try{
+                        String more;
+                        while ((more = output.readLine()) != null){
+                            System.out.println("Shard " + shard + ": " + more);
+                        }
+                    }
+                    catch (IOException ex){
+                        //the worker ended
+                    }
+                });
+                printer.setDaemon(true);
+                printer.start();
+                return Integer.parseInt(line.substring(ShardWorker.READY.length()).trim());
+            }
+            System.out.println("Shard " + shard + ": " + line);
+        }
+        throw new IOException("Shard " + shard + " ended before it was ready");
+    }
+
+    /**
+     * Method ask sends a request to every shard at the same time and returns their answers, in the order of the
+     * shards
+     *
+     * @param request the request, for example ShardWorker.SELECT
+     * @param key the key of a query, or null if the request has none
+     * @param k the number of movies, or -1 if the request has none
+     * @return the movies of every shard
+     */
+    private List<List<Ranked>> ask(final byte request, final String key, final int k){
+        List<CompletableFuture<List<Ranked>>> futures = new ArrayList<CompletableFuture<List<Ranked>>>();
+        for (final Shard shard : shards){
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try{
+                    return askShard(shard, request, key, k);
+                }
+                catch (IOException ex){
+                    throw new UncheckedIOException(ex);
+                }
+            }, executor));
+        }
+        List<List<Ranked>> answers = new ArrayList<List<Ranked>>();
+        try{
+            for (CompletableFuture<List<Ranked>> future : futures){
+                answers.add(future.join());
+            }
+        }
+        catch (CompletionException ex){
+            if (ex.getCause() instanceof RuntimeException){
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+        return answers;
+    }
+
+    /**
+     * Method askShard sends a request to one shard and reads its answer. If the connection fails, it is opened again
+     * for the next request (see Shard.reconnect()).
+     */
+    private static List<Ranked> askShard(Shard shard, byte request, String key, int k) throws IOException{
+        synchronized (shard){
+            try{
+                shard.out.writeByte(request);
+                if (key != null){
+                    shard.out.writeUTF(key);
+                }
+                if (k >= 0){
+                    shard.out.writeInt(k);
+                }
+                shard.out.flush();
+                if (shard.in.readByte() != ShardWorker.OK){
+                    throw new IllegalStateException(shard.in.readUTF());
+                }
+                int count = shard.in.readInt();
+                List<Ranked> movies = new ArrayList<Ranked>(count);
+                ActorRegistry registry = new ActorRegistry(); //for this answer only
+                for (int i = 0; i < count; i++){
+                    int position = shard.in.readInt();
+                    movies.add(new Ranked(position, ShardWorker.readMovie(shard.in, registry)));
+                }
+                return movies;
+            }
+            catch (IOException ex){
+                shard.reconnect();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Method merge merges lists that are each sorted in the given order, taking at most limit movies
+     *
+     * @param lists the sorted lists
+     * @param order the order of the lists
+     * @param limit the largest number of movies wanted
+     * @return the first limit movies of all the lists, in order
+     */
+    private static LinkedList<Movie> merge(List<List<Ranked>> lists, final Comparator<Ranked> order, int limit){
+        //heads of the lists: {list, index}, with the first of all the heads on top
+        PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Math.max(1, lists.size()), (a, b) ->
+            order.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+        for (int i = 0; i < lists.size(); i++){
+            if (lists.get(i).size() > 0){
+                heads.add(new int[]{i, 0});
+            }
+        }
+        LinkedList<Movie> merged = new LinkedList<Movie>();
+        while (!heads.isEmpty() && merged.size() < limit){
+            int[] head = heads.poll();
+            List<Ranked> list = lists.get(head[0]);
+            merged.add(list.get(head[1]).movie);
+            if (++head[1] < list.size()){
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * size() returns the number of movies of all the shards
+     *
+     * @return number of movies
+     */
+    public int size(){
+        int size = 0;
+        try{
+            for (Shard shard : shards){
+                synchronized (shard){
+                    try{
+                        shard.out.writeByte(ShardWorker.SIZE);
+                        shard.out.flush();
+                        if (shard.in.readByte() != ShardWorker.OK){
+                            throw new IllegalStateException(shard.in.readUTF());
+                        }
+                        size += shard.in.readInt();
+                    }
+                    catch (IOException ex){
+                        shard.reconnect();
+                        throw ex;
+                    }
+                }
+            }
+        }
+        catch (IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+        return size;
+    }
+
+    /**
+     * findAllMovies() returns the movies that match the query, in the order of the file, as
+     * MovieCollection.findAllMovies()
+     *
+     * @param query the query
+     * @return a linked list of the movies that match the query
+     */
+    public LinkedList<Movie> findAllMovies(MovieQuery query){
+        return merge(ask(ShardWorker.SELECT, query.getKey(), -1), FILE_ORDER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * findAllMoviesPassedTestNum() returns the movies that pass the n-th test, as
+     * MovieCollection.findAllMoviesPassedTestNum()
+     *
+     * @param n index of the test, for example Movie.PIERCE
+     * @return a linked list of the movies that passed the test
+     */
+    public LinkedList<Movie> findAllMoviesPassedTestNum(int n){
+        return findAllMovies(MovieQuery.passed(n));
+    }
+
+    /**
+     * findAllMoviesPassedBechdel() returns the movies that pass the Bechdel test
+     *
+     * @return a linked list of the movies that passed the Bechdel test
+     */
+    public LinkedList<Movie> findAllMoviesPassedBechdel(){
+        return findAllMovies(MovieQuery.passed(Movie.BECHDEL));
+    }
+
+    /**
+     * findAllMoviesPassedPorL() returns the movies that pass the Pierce test or the Landau test
+     *
+     * @return a linked list of the movies that passed the Pierce or the Landau test
+     */
+    public LinkedList<Movie> findAllMoviesPassedPorL(){
+        return findAllMovies(MovieQuery.passed(Movie.PIERCE).or(MovieQuery.passed(Movie.LANDAU)));
+    }
+
+    /**
+     * findAllMoviesPassedWnotRD() returns the movies that pass the White test but not the Rees-Davies test
+     *
+     * @return a linked list of the movies that passed White and failed Rees-Davies
+     */
+    public LinkedList<Movie> findAllMoviesPassedWnotRD(){
+        return findAllMovies(MovieQuery.passed(Movie.WHITE).and(MovieQuery.failed(Movie.REES_DAVIES)));
+    }
+
+    /**
+     * Method topK returns the k most feminist movies, from most to least feminist, as MovieCollection.topK()
+     *
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies
+     */
+    public LinkedList<Movie> topK(int k){
+        return merge(ask(ShardWorker.TOP, "", k), BEST_FIRST, k);
+    }
+
+    /**
+     * Method topK returns the k most feminist movies among the ones that match the query, as
+     * MovieCollection.topK(query, k)
+     *
+     * @param query the query the movies must match
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies
+     */
+    public LinkedList<Movie> topK(MovieQuery query, int k){
+        return merge(ask(ShardWorker.TOP, query.getKey(), k), BEST_FIRST, k);
+    }
+
+    /**
+     * Method bottomK returns the k least feminist movies, from least to most feminist, as MovieCollection.bottomK()
+     *
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies
+     */
+    public LinkedList<Movie> bottomK(int k){
+        return merge(ask(ShardWorker.BOTTOM, null, k), BEST_FIRST.reversed(), k);
+    }
+
+    /**
+     * Method rankPage returns the movies with ranks from first to first + count - 1, as MovieCollection.rankPage().
+     * Every shard sends its first + count best movies, so deep pages cost more than the first ones.
+     *
+     * @param first the first rank of the page
+     * @param count the number of movies in the page
+     * @return a LinkedList with the movies of the page
+     */
+    public LinkedList<Movie> rankPage(int first, int count){
+        LinkedList<Movie> page = merge(ask(ShardWorker.TOP, "", first + count), BEST_FIRST, first + count);
+        for (int i = 0; i < first && !page.isEmpty(); i++){
+            page.removeFirst();
+        }
+        return page;
+    }
+
+    /**
+     * Method getRanking returns all the movies from most to least feminist, as MovieCollection.getRanking(). Every
+     * shard sends all its movies with their casts, and all of them are kept in this JVM at once, so this needs as
+     * much memory as the whole collection, which is what sharding avoids; use rankPage() or topK() for large
+     * collections.
+     *
+     * @return a LinkedList of the movies in order of most to least feminist
+     */
+    public LinkedList<Movie> getRanking(){
+        return topK(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Method close stops the workers started by start(), or only closes the connections to workers that were
+     * already running
+     */
+    public void close(){
+        for (Shard shard : shards){
+            if (shard != null && workers != null){
+                synchronized (shard){
+                    try{
+                        shard.out.writeByte(ShardWorker.CLOSE);
+                        shard.out.flush();
+                    }
+                    catch (IOException ex){
+                        //the worker already ended
+                    }
+                }
+            }
+        }
+        closeConnections();
+        if (workers != null){
+            for (Process worker : workers){
+                try{
+                    worker.getOutputStream().close();
+                    worker.waitFor();
+                }
+                catch (IOException | InterruptedException ex){
+                    worker.destroy();
+                }
+            }
+        }
+        executor.shutdown();
+    }
+
+    private void closeConnections(){
+        for (Shard shard : shards){
+            if (shard != null){
+                try{
+                    shard.socket.close();
+                }
+                catch (IOException ex){
+                    //already closed
+                }
+            }
+        }
+    }
+
+    /**
+     * Method main for testing. Arguments: tests file, cast file, [number of shards]. Compares the answers of a
+     * ShardedCollection with the ones of a MovieCollection of the same files.
+     *
+     */
+    public static void main(String[] args) throws IOException{
+        int shardCount = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        MovieCollection single = new MovieCollection(args[0], args[1]);
+        ShardedCollection sharded = ShardedCollection.start(args[0], args[1], shardCount);
+        try{
+            System.out.println("Movies [" + single.getMovies().size() + "]: " + sharded.size());
+            System.out.println("Passed Bechdel: " + single.findAllMoviesPassedBechdel().equals(
+                                   sharded.findAllMoviesPassedBechdel()));
+            System.out.println("Passed Pierce or Landau: " + single.findAllMoviesPassedPorL().equals(
+                                   sharded.findAllMoviesPassedPorL()));
+            System.out.println("Passed White not Rees-Davies: " + single.findAllMoviesPassedWnotRD().equals(
+                                   sharded.findAllMoviesPassedWnotRD()));
+            MovieQuery query = MovieQuery.passed(Movie.KO).and(MovieQuery.femaleShareAbove(0.5).not());
+            System.out.println(query + ": " + single.findAllMovies(query).equals(sharded.findAllMovies(query)));
+            System.out.println("Top 10: " + single.topK(10).equals(sharded.topK(10)) + " " + sharded.topK(10));
+            System.out.println("Bottom 10: " + single.bottomK(10).equals(sharded.bottomK(10)));
+            System.out.println("Top 10 of " + query + ": " + single.topK(query, 10).equals(sharded.topK(query, 10)));
+            System.out.println("Ranks 100 to 149: " + single.rankPage(100, 50).equals(sharded.rankPage(100, 50)));
+            System.out.println("Ranking: " + single.getRanking().equals(sharded.getRanking()));
+        }
+        finally{
+            sharded.close();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * SnapshotFile saves a CatalogSnapshot to a compact binary file and loads it back, so a collection can be started
+ * again without reading the text files. Loading maps the file into memory and only decodes numbers and strings: no
+ * lines are split, every title, name, gender and role type is decoded once, and the feminist scores are saved with
+ * the movies, so they are not calculated again.
+ *
+ * The file starts with a header of HEADER_SIZE bytes: the MAGIC number, the FORMAT_VERSION of the file, the version
+ * of the snapshot, the length of the rest of the file and its CRC32 checksum. The rest of the file holds
+ *   the strings:  count, then for each one its length in bytes and its UTF-8 bytes
+ *   the movies:   count, then for each one its title (a string number), number of results, passed and failed tests
+ *                 as bits, feminist score, and the number of other results followed by (test, string number) pairs
+ *   the actors:   count, then for each one its name and gender (string numbers) and the number of its movies
+ *   the roles:    count, then for each one its movie, its actor (numbers in the lists above) and its type
+ * All numbers are big-endian. A file with another magic number or format version, a wrong length or a wrong
+ * checksum is not loaded.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class SnapshotFile
+{
+    public static final int MAGIC = 0x42444353; //"BDCS"
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * Method save writes a snapshot to a file. The file is written under another name first and then renamed, so
+     * a file that is being loaded is never half written.
+     *
+     * @param snapshot the snapshot, which is not changed
+     * @param fileName the file
+     */
+    public static void save(CatalogSnapshot snapshot, String fileName) throws IOException{
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        long length;
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())){
+            file.write(new byte[HEADER_SIZE]); //written at the end, when the checksum is known
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc);
+            DataOutputStream out = new DataOutputStream(checked);
+            writePayload(snapshot, out);
+            out.flush();
+            length = out.size();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")){
+            file.writeInt(MAGIC);
+            file.writeInt(FORMAT_VERSION);
+            file.writeLong(snapshot.getVersion());
+            file.writeLong(length);
+            file.writeLong(crc.getValue());
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Method writePayload writes the rest of the file, after the header, as described above. Also used by
+     * OffHeapCatalog, which reads the same layout.
+     */
+    static void writePayload(CatalogSnapshot snapshot, DataOutputStream out) throws IOException{
+        LinkedList<Movie> movies = snapshot.getMovies();
+        LinkedList<Actor> actors = snapshot.getActors();
+        Hashtable<String, Integer> strings = new Hashtable<String, Integer>(); //key = string, value = its number
+        LinkedList<String> stringList = new LinkedList<String>();
+        ActorRegistry registry = snapshot.getRegistry();
+        int[] actorNumbers = new int[registry.size()]; //actorNumbers[id] = number of the actor in the file
+        int roleCount = 0;
+        for (Movie m : movies){
+            number(m.getTitle(), strings, stringList);
+            for (int n = 0; n < m.getNumTestResults(); n++){
+                if (!m.passedTest(n) && !m.failedTest(n) && m.testResult(n).length() > 0){
+                    number(m.testResult(n), strings, stringList);
+                }
+            }
+            for (int i = 0; i < m.getCastSize(); i++){
+                number(m.getRoleType(i), strings, stringList);
+            }
+            roleCount += m.getCastSize();
+        }
+        int actorCount = 0;
+        for (Actor a : actors){
+            actorNumbers[registry.getId(a)] = actorCount++;
+            number(a.getName(), strings, stringList);
+            number(a.getGender(), strings, stringList);
+        }
+
+        out.writeInt(stringList.size());
+        for (String s : stringList){
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(movies.size());
+        for (Movie m : movies){
+            out.writeInt(strings.get(m.getTitle()));
+            out.writeInt(m.getNumTestResults());
+            out.writeLong(m.getPassedMask());
+            out.writeLong(m.getFailedMask());
+            out.writeDouble(m.feministScore());
+            int others = 0; //results that are not "0", "1" or empty
+            for (int n = 0; n < m.getNumTestResults(); n++){
+                if (!m.passedTest(n) && !m.failedTest(n) && m.testResult(n).length() > 0){
+                    others++;
+                }
+            }
+            out.writeInt(others);
+            for (int n = 0; n < m.getNumTestResults(); n++){
+                if (!m.passedTest(n) && !m.failedTest(n) && m.testResult(n).length() > 0){
+                    out.writeInt(n);
+                    out.writeInt(strings.get(m.testResult(n)));
+                }
+            }
+        }
+
+        out.writeInt(actors.size());
+        int[] roles = new int[actors.size()]; //number of movies of every actor
+        for (Movie m : movies){
+            for (int j = 0; j < m.getCastSize(); j++){
+                roles[actorNumbers[m.getActorId(j)]]++;
+            }
+        }
+        int i = 0;
+        for (Actor a : actors){
+            out.writeInt(strings.get(a.getName()));
+            out.writeInt(strings.get(a.getGender()));
+            out.writeInt(roles[i++]);
+        }
+
+        out.writeInt(roleCount);
+        int movie = 0;
+        for (Movie m : movies){
+            for (int j = 0; j < m.getCastSize(); j++){
+                out.writeInt(movie);
+                out.writeInt(actorNumbers[m.getActorId(j)]);
+                out.writeInt(strings.get(m.getRoleType(j)));
+            }
+            movie++;
+        }
+    }
+
+    private static void number(String s, Hashtable<String, Integer> strings, LinkedList<String> stringList){
+        if (!strings.containsKey(s)){
+            strings.put(s, stringList.size());
+            stringList.add(s);
+        }
+    }
+
+    /**
+     * Method load reads a snapshot saved by save(). The file is mapped into memory and its checksum is checked
+     * before anything is decoded. The indexes of the snapshot are built, and it is ready to be published.
+     *
+     * @param fileName the file
+     * @return the snapshot, with the version it had when it was saved
+     * @throws IOException if the file cannot be read, is not a snapshot of this format version or is damaged
+     */
+    public static CatalogSnapshot load(String fileName) throws IOException{
+        ByteBuffer buffer = open(fileName);
+        try{
+            return readPayload(buffer, buffer.getLong(8));
+        }
+        catch (RuntimeException ex){ //numbers out of range, or the payload ends too early
+            throw new IOException("Damaged snapshot file: " + fileName, ex);
+        }
+    }
+
+    /**
+     * Method open maps a file saved by save() into memory and checks its header and checksum
+     *
+     * @param fileName the file
+     * @return the file, positioned at the start of the rest of the file; the version of the snapshot is the long
+     *         at position 8
+     * @throws IOException if the file cannot be read, is not a snapshot of this format version or is damaged
+     */
+    static ByteBuffer open(String fileName) throws IOException{
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)){
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE){
+                throw new IOException("Not a snapshot file: " + fileName);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC){
+            throw new IOException("Not a snapshot file: " + fileName);
+        }
+        int format = buffer.getInt();
+        if (format != FORMAT_VERSION){
+            throw new IOException("Unsupported snapshot format version " + format + ": " + fileName);
+        }
+        buffer.getLong(); //version
+        long length = buffer.getLong();
+        long checksum = buffer.getLong();
+        if (length != buffer.remaining()){
+            throw new IOException("Snapshot file has the wrong length: " + fileName);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if (crc.getValue() != checksum){
+            throw new IOException("Snapshot file checksum does not match: " + fileName);
+        }
+        return buffer;
+    }
+
+    private static CatalogSnapshot readPayload(ByteBuffer in, long version){
+        String[] strings = new String[in.getInt()];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < strings.length; i++){
+            int length = in.getInt();
+            if (length > bytes.length){
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            in.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        CatalogSnapshot snapshot = new CatalogSnapshot(version);
+        Movie[] movies = new Movie[in.getInt()];
+        double[] scores = new double[movies.length];
+        for (int i = 0; i < movies.length; i++){
+            Movie m = new Movie(strings[in.getInt()], snapshot.getRegistry());
+            int numResults = in.getInt();
+            long passed = in.getLong();
+            long failed = in.getLong();
+            scores[i] = in.getDouble();
+            Hashtable<Integer, String> otherResults = null;
+            int others = in.getInt();
+            for (int j = 0; j < others; j++){
+                int n = in.getInt();
+                if (otherResults == null){
+                    otherResults = new Hashtable<Integer, String>();
+                }
+                otherResults.put(n, strings[in.getInt()]);
+            }
+            m.restoreTestResults(passed, failed, numResults, otherResults);
+            movies[i] = m;
+            snapshot.addMovie(m);
+        }
+
+        int[] actorIds = new int[in.getInt()]; //actorIds[i] = id in the registry of the snapshot of the i-th actor
+        ActorRegistry registry = snapshot.getRegistry();
+        for (int i = 0; i < actorIds.length; i++){
+            actorIds[i] = registry.intern(strings[in.getInt()], strings[in.getInt()]);
+            snapshot.addActor(actorIds[i], in.getInt());
+        }
+
+        int roles = in.getInt();
+        for (int i = 0; i < roles; i++){
+            Movie m = movies[in.getInt()];
+            m.addActor(actorIds[in.getInt()], strings[in.getInt()]);
+        }
+        for (int i = 0; i < movies.length; i++){
+            movies[i].restoreScore(scores[i]);
+        }
+        snapshot.buildIndexes();
+        return snapshot;
+    }
+}
@@ -0,0 +1,349 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * TestBitmapIndex stores the Bechdel test results of a list of movies by column: for every test there is a bitmap
+ * with one bit per movie, set if that movie passed the test (and another one for failed). It also keeps the passed
+ * mask of every movie and the size and the fraction of female actors of every cast. A MovieQuery is answered by
+ * combining whole bitmaps 64 movies at a time, and only the matching movies are visited.
+ * The index is a picture of the movies at the time it was built or last updated: movies can be added with add(),
+ * and update() must be called when the results or the cast of an indexed movie change.
+ *
+ * The movies are kept in chunks of CHUNK movies, each with its part of the bitmaps and arrays. copy() only copies
+ * the array of the chunks, and the copy and the original share the chunks until one of them changes a chunk, which
+ * it copies first. So a copy that changes a few movies costs time and memory proportional to the number of chunks
+ * and the changed chunks, not to the size of every bitmap.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class TestBitmapIndex
+{
+    private static final int WORDS_PER_TASK = 1024; //words of the bitmaps evaluated by each task of a parallel query
+    private static final int CHUNK_BITS = 9;
+    private static final int CHUNK = 1 << CHUNK_BITS; //movies in a chunk
+    private static final int CHUNK_WORDS = CHUNK / 64; //longs of each bitmap in a chunk
+    private static final int WORD_BITS = CHUNK_BITS - 6; //a word w of a bitmap is in chunk w >>> WORD_BITS
+    private static final Metrics.Timer QUERY = Metrics.timer("query", "Time to select the movies that match a query");
+    private Chunk[] chunks; //chunks[c] has the movies c * CHUNK to (c + 1) * CHUNK - 1, for the chunks in use
+    private boolean[] owned; //owned[c] is true if chunks[c] is not shared with another index
+    private int size;
+    private int words; //number of longs of each bitmap in use
+
+    /**
+     * CHUNK movies of the index, with their bits and figures. Bit i % 64 of word i / 64 is about movie i of the chunk.
+     */
+    private static class Chunk
+    {
+        private Movie[] movies = new Movie[CHUNK];
+        private long[][] passedColumns = new long[0][]; //passedColumns[n] for the tests a movie of the chunk has
+        private long[][] failedColumns = new long[0][];
+        private long[] all = new long[CHUNK_WORDS]; //bit set for every movie
+        private double[] femaleShares = new double[CHUNK]; //fraction of female actors (NaN if no cast)
+        private int[] castSizes = new int[CHUNK]; //number of actors
+        private long[] passedMasks = new long[CHUNK];
+
+        /**
+         * Method copy returns a copy of the chunk that can be changed without changing this one
+         */
+        private Chunk copy(){
+            Chunk copy = new Chunk();
+            copy.movies = movies.clone();
+            copy.passedColumns = copyColumns(passedColumns, passedColumns.length);
+            copy.failedColumns = copyColumns(failedColumns, failedColumns.length);
+            copy.all = all.clone();
+            copy.femaleShares = femaleShares.clone();
+            copy.castSizes = castSizes.clone();
+            copy.passedMasks = passedMasks.clone();
+            return copy;
+        }
+    }
+
+    /**
+     * Constructor for objects of class TestBitmapIndex
+     *
+     * @param movieList the movies to index, in order
+     */
+    public TestBitmapIndex(List<Movie> movieList)
+    {
+        chunks = new Chunk[Math.max(1, (movieList.size() + CHUNK - 1) / CHUNK)];
+        owned = new boolean[chunks.length];
+        for (Movie m : movieList){
+            add(m);
+        }
+    }
+
+    /**
+     * Method add adds a movie at the end of the index
+     *
+     * @param m the movie
+     */
+    public void add(Movie m){
+        int i = size;
+        int c = i >>> CHUNK_BITS;
+        if (c == chunks.length){
+            chunks = Arrays.copyOf(chunks, c * 2);
+            owned = Arrays.copyOf(owned, c * 2);
+        }
+        if (chunks[c] == null){
+            chunks[c] = new Chunk();
+            owned[c] = true;
+        }
+        Chunk chunk = own(c);
+        size++;
+        words = (size + 63) / 64;
+        chunk.movies[i & (CHUNK - 1)] = m;
+        chunk.all[(i >>> 6) & (CHUNK_WORDS - 1)] |= 1L << i; //shifts only use the lowest 6 bits, so bit i % 64
+        setBits(chunk, i);
+    }
+
+    /**
+     * Method replace puts a changed copy of a movie in the place of the movie at the given position, and reads its
+     * test results and cast
+     *
+     * @param i the position of the movie in the index
+     * @param updated the movie that takes its place
+     */
+    public void replace(int i, Movie updated){
+        checkPosition(i);
+        own(i >>> CHUNK_BITS).movies[i & (CHUNK - 1)] = updated;
+        update(i);
+    }
+
+    /**
+     * Method copy returns a new index with the same movies, that can be changed without changing this one. The
+     * chunks are shared until one of the indexes changes them.
+     *
+     * @return the copy
+     */
+    public TestBitmapIndex copy(){
+        TestBitmapIndex copy = new TestBitmapIndex(new LinkedList<Movie>());
+        copy.chunks = chunks.clone();
+        copy.owned = new boolean[chunks.length];
+        Arrays.fill(owned, false);
+        copy.size = size;
+        copy.words = words;
+        return copy;
+    }
+
+    /**
+     * Method own returns the chunk c, after copying it if it is shared with another index
+     */
+    private Chunk own(int c){
+        if (!owned[c]){
+            chunks[c] = chunks[c].copy();
+            owned[c] = true;
+        }
+        return chunks[c];
+    }
+
+    /**
+     * Method update reads again the test results and the cast of the movie at the given position, after they
+     * changed
+     *
+     * @param i the position of the movie in the index
+     */
+    public void update(int i){
+        checkPosition(i);
+        Chunk chunk = own(i >>> CHUNK_BITS);
+        long bit = 1L << i;
+        int word = (i >>> 6) & (CHUNK_WORDS - 1);
+        for (int n = 0; n < chunk.passedColumns.length; n++){
+            chunk.passedColumns[n][word] &= ~bit;
+            chunk.failedColumns[n][word] &= ~bit;
+        }
+        setBits(chunk, i);
+    }
+
+    private void checkPosition(int i){
+        if (i < 0 || i >= size){
+            throw new IndexOutOfBoundsException("Position " + i + ", size " + size);
+        }
+    }
+
+    /**
+     * Method setBits sets the bits and cast figures of the movie at position i, in its chunk, from its current
+     * results and cast. A chunk only has the columns of the tests its movies have.
+     */
+    private static void setBits(Chunk chunk, int i){
+        int k = i & (CHUNK - 1);
+        Movie m = chunk.movies[k];
+        if (m.getNumTestResults() > chunk.passedColumns.length){
+            chunk.passedColumns = copyColumns(chunk.passedColumns, m.getNumTestResults());
+            chunk.failedColumns = copyColumns(chunk.failedColumns, m.getNumTestResults());
+        }
+        chunk.femaleShares[k] = m.femaleActorCount();
+        chunk.castSizes[k] = m.getCastSize();
+        chunk.passedMasks[k] = m.getPassedMask();
+        long bit = 1L << i;
+        int word = k >>> 6;
+        long passed = m.getPassedMask();
+        long failed = m.getFailedMask();
+        while (passed != 0){
+            chunk.passedColumns[Long.numberOfTrailingZeros(passed)][word] |= bit;
+            passed &= passed - 1;
+        }
+        while (failed != 0){
+            chunk.failedColumns[Long.numberOfTrailingZeros(failed)][word] |= bit;
+            failed &= failed - 1;
+        }
+    }
+
+    /**
+     * Method copyColumns returns a copy of the columns of a chunk, with room for numTests tests
+     */
+    private static long[][] copyColumns(long[][] columns, int numTests){
+        long[][] newColumns = new long[numTests][];
+        for (int n = 0; n < numTests; n++){
+            newColumns[n] = n < columns.length ? columns[n].clone() : new long[CHUNK_WORDS];
+        }
+        return newColumns;
+    }
+
+    /**
+     * size() returns the number of movies in the index
+     *
+     * @return number of movies
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Method getMovie returns the i-th movie of the index
+     *
+     * @param i position of the movie
+     * @return the movie
+     */
+    public Movie getMovie(int i){
+        return chunks[i >>> CHUNK_BITS].movies[i & (CHUNK - 1)];
+    }
+
+    /**
+     * Method getMovies returns the movies of the index, in order
+     *
+     * @return a new LinkedList with the movies
+     */
+    public LinkedList<Movie> getMovies(){
+        LinkedList<Movie> movies = new LinkedList<Movie>();
+        for (int i = 0; i < size; i++){
+            movies.add(getMovie(i));
+        }
+        return movies;
+    }
+
+    /**
+     * Method select returns the movies that match the query, in the order of the index
+     *
+     * @param query the query
+     * @return a LinkedList with the matching movies
+     */
+    public LinkedList<Movie> select(MovieQuery query){
+        return select(query, false);
+    }
+
+    /**
+     * Method select returns the movies that match the query, in the order of the index. If parallel is true, parts
+     * of the bitmaps are evaluated at the same time on the common ForkJoinPool.
+     *
+     * @param query the query
+     * @param parallel whether to evaluate the query on several threads
+     * @return a LinkedList with the matching movies
+     */
+    public LinkedList<Movie> select(MovieQuery query, boolean parallel){
+        long start = Metrics.start();
+        long[] bits;
+        int words = this.words;
+        if (parallel && words > WORDS_PER_TASK){
+            int tasks = (words + WORDS_PER_TASK - 1) / WORDS_PER_TASK;
+            long[][] parts = IntStream.range(0, tasks).parallel()
+                .mapToObj(t -> query.evaluate(this, t * WORDS_PER_TASK, Math.min(words, (t + 1) * WORDS_PER_TASK)))
+                .toArray(long[][]::new);
+            bits = new long[words];
+            for (int t = 0; t < tasks; t++){
+                System.arraycopy(parts[t], 0, bits, t * WORDS_PER_TASK, parts[t].length);
+            }
+        }
+        else{
+            bits = query.evaluate(this);
+        }
+        LinkedList<Movie> selected = new LinkedList<Movie>();
+        for (int w = 0; w < bits.length; w++){
+            long word = bits[w];
+            while (word != 0){
+                selected.add(getMovie((w << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        QUERY.stop(start);
+        return selected;
+    }
+
+    /**
+     * Method count returns the number of movies that match the query
+     *
+     * @param query the query
+     * @return number of matching movies
+     */
+    public int count(MovieQuery query){
+        long[] bits = query.evaluate(this);
+        int count = 0;
+        for (int w = 0; w < bits.length; w++){
+            count += Long.bitCount(bits[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Method words returns the number of longs in each bitmap
+     */
+    int words(){
+        return words;
+    }
+
+    /**
+     * Method femaleShare returns the fraction of female actors of the movie at position i (NaN if it has no cast)
+     */
+    double femaleShare(int i){
+        return chunks[i >>> CHUNK_BITS].femaleShares[i & (CHUNK - 1)];
+    }
+
+    /**
+     * Method castSize returns the number of actors of the movie at position i
+     */
+    int castSize(int i){
+        return chunks[i >>> CHUNK_BITS].castSizes[i & (CHUNK - 1)];
+    }
+
+    /**
+     * Method passedMask returns the passed mask of the movie at position i (see Movie.getPassedMask())
+     */
+    long passedMask(int i){
+        return chunks[i >>> CHUNK_BITS].passedMasks[i & (CHUNK - 1)];
+    }
+
+    /**
+     * Method passedWord returns the word w of the bitmap of the movies that passed the n-th test
+     */
+    long passedWord(int n, int w){
+        long[][] columns = chunks[w >>> WORD_BITS].passedColumns;
+        return n < columns.length ? columns[n][w & (CHUNK_WORDS - 1)] : 0;
+    }
+
+    /**
+     * Method failedWord returns the word w of the bitmap of the movies that failed the n-th test
+     */
+    long failedWord(int n, int w){
+        long[][] columns = chunks[w >>> WORD_BITS].failedColumns;
+        return n < columns.length ? columns[n][w & (CHUNK_WORDS - 1)] : 0;
+    }
+
+    /**
+     * Method allWord returns the word w of the bitmap with a bit set for every movie
+     */
+    long allWord(int w){
+        return chunks[w >>> WORD_BITS].all[w & (CHUNK_WORDS - 1)];
+    }
+}
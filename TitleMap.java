@@ -0,0 +1,234 @@
+/**
+ * TitleMap finds the movies of a CatalogSnapshot by title, with the position of each movie in the snapshot (the
+ * order of CatalogSnapshot.getMovies()). It does what the Hashtable of the titles did, but a copy of it is made in
+ * constant time: the map is a tree of nodes of 32 slots, chosen 5 bits of the hash of the title at a time, and
+ * copy() shares all the nodes with the original. A copy only copies the nodes on the way to the titles it changes,
+ * the first time it changes them, so a snapshot made by copyForChanges() costs time and memory proportional to the
+ * number of titles that changed, not to the size of the collection.
+ *
+ * Every map has an owner, and only changes in place the nodes it made itself since its last copy(); the entries
+ * are never changed. A map that was copied must not be changed anymore by anybody who still reads the copy; a
+ * snapshot is not changed once it is published, so its map can be read by any number of threads.
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class TitleMap
+{
+    private static final int BITS = 5; //bits of the hash used at each level of the tree
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int LAST_SHIFT = 30; //the last level has only the 2 highest bits of the hash left
+    private Node root;
+    private Object owner; //the nodes with this owner were made by this map, and can be changed in place
+    private int size;
+
+    /**
+     * A node of the tree: a slot holds nothing, a Node, or the Entries whose hashes lead to it
+     */
+    private static class Node
+    {
+        private Object owner;
+        private Object[] slots = new Object[MASK + 1];
+
+        private Node(Object owner)
+        {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * A title, with its movie and position. Titles with the same hash (or the same highest bits, on the last
+     * level) are chained with next.
+     */
+    private static class Entry
+    {
+        private String title;
+        private int hash;
+        private Movie movie;
+        private int position;
+        private Entry next;
+
+        private Entry(String title, int hash, Movie movie, int position, Entry next)
+        {
+            this.title = title;
+            this.hash = hash;
+            this.movie = movie;
+            this.position = position;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Constructor for objects of class TitleMap
+     */
+    public TitleMap()
+    {
+        owner = new Object();
+        root = new Node(owner);
+    }
+
+    /**
+     * Method copy returns a new map with the same titles, that can be changed without changing this one. The nodes
+     * are shared until one of the maps changes them, so the copy takes constant time; this map cannot change the
+     * shared nodes in place anymore either.
+     *
+     * @return the copy
+     */
+    public TitleMap copy(){
+        owner = new Object();
+        TitleMap copy = new TitleMap();
+        copy.root = root;
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Method get returns the movie with the given title
+     *
+     * @param title the title
+     * @return the movie, or null if there is none
+     */
+    public Movie get(String title){
+        Entry e = find(title);
+        return e == null ? null : e.movie;
+    }
+
+    /**
+     * Method getPosition returns the position of the movie with the given title
+     *
+     * @param title the title
+     * @return the position, or -1 if there is no movie with that title
+     */
+    public int getPosition(String title){
+        Entry e = find(title);
+        return e == null ? -1 : e.position;
+    }
+
+    /**
+     * Method containsKey returns whether there is a movie with the given title
+     *
+     * @param title the title
+     * @return true if there is one
+     */
+    public boolean containsKey(String title){
+        return find(title) != null;
+    }
+
+    private Entry find(String title){
+        int hash = hash(title);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS){
+            Object slot = node.slots[(hash >>> shift) & MASK];
+            if (slot instanceof Node){
+                node = (Node) slot;
+            }
+            else{
+                for (Entry e = (Entry) slot; e != null; e = e.next){
+                    if (e.hash == hash && e.title.equals(title)){
+                        return e;
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Method put sets the movie with the given title, and its position, replacing the one that had that title
+     *
+     * @param title the title
+     * @param movie the movie
+     * @param position the position of the movie in the snapshot
+     */
+    public void put(String title, Movie movie, int position){
+        root = put(root, 0, new Entry(title, hash(title), movie, position, null));
+    }
+
+    /**
+     * Method put puts an entry in the tree under a node, and returns the node, or the copy of it that was changed
+     * if this map does not own it
+     */
+    private Node put(Node node, int shift, Entry entry){
+        if (node.owner != owner){
+            Node copy = new Node(owner);
+            System.arraycopy(node.slots, 0, copy.slots, 0, node.slots.length);
+            node = copy;
+        }
+        int s = (entry.hash >>> shift) & MASK;
+        Object slot = node.slots[s];
+        if (slot == null){
+            node.slots[s] = entry;
+            size++;
+        }
+        else if (slot instanceof Node){
+            node.slots[s] = put((Node) slot, shift + BITS, entry);
+        }
+        else if (((Entry) slot).hash == entry.hash || shift >= LAST_SHIFT){
+            node.slots[s] = chain((Entry) slot, entry);
+        }
+        else{
+            //a different hash: both go one level down, where their bits may differ
+            Node child = new Node(owner);
+            child.slots[(((Entry) slot).hash >>> (shift + BITS)) & MASK] = slot;
+            node.slots[s] = put(child, shift + BITS, entry);
+        }
+        return node;
+    }
+
+    /**
+     * Method chain returns the chain of entries with the given entry in it, in the place of the entry with the
+     * same title if there is one. The entries before it are copied, since entries are shared and never changed.
+     */
+    private Entry chain(Entry first, Entry entry){
+        for (Entry e = first; e != null; e = e.next){
+            if (e.hash == entry.hash && e.title.equals(entry.title)){
+                Entry replaced = new Entry(entry.title, entry.hash, entry.movie, entry.position, e.next);
+                return copyBefore(first, e, replaced);
+            }
+        }
+        size++;
+        entry.next = first;
+        return entry;
+    }
+
+    private static Entry copyBefore(Entry e, Entry stop, Entry rest){
+        if (e == stop){
+            return rest;
+        }
+        return new Entry(e.title, e.hash, e.movie, e.position, copyBefore(e.next, stop, rest));
+    }
+
+    /**
+     * Method putIfAbsent sets the movie with the given title, and its position, unless there is one already
+     *
+     * @param title the title
+     * @param movie the movie
+     * @param position the position of the movie in the snapshot
+     * @return true if the movie was put
+     */
+    public boolean putIfAbsent(String title, Movie movie, int position){
+        if (containsKey(title)){
+            return false;
+        }
+        put(title, movie, position);
+        return true;
+    }
+
+    /**
+     * size() returns the number of titles in the map
+     *
+     * @return number of titles
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Method hash spreads the high bits of the hash code of a title over the low ones, which choose the slot of the
+     * first levels
+     */
+    private static int hash(String title){
+        int h = title.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+/**
+ * TopMovies picks the k most (or least) feminist movies out of any group of movies, in the order of MovieRanking,
+ * without sorting or queueing the whole group. It keeps a heap of at most k movies, so it takes O(n log k) time and
+ * O(k) memory for n movies. The movies can be given all at once (top() and bottom()) or one at a time (offer()).
+ *
+ * @author Miraya and Natasha
+ * @version 15/12/22
+ */
+public class TopMovies
+{
+    /**
+     * Entry is a movie with its score
+     */
+    private static class Entry
+    {
+        private Movie movie;
+        private double score;
+
+        Entry(Movie movie, double score)
+        {
+            this.movie = movie;
+            this.score = score;
+        }
+    }
+
+    //ranks entries in the order of MovieRanking: best first
+    private static final Comparator<Entry> BEST_FIRST = new Comparator<Entry>(){
+        public int compare(Entry a, Entry b){
+            return MovieRanking.compareRanks(a.score, a.movie, b.score, b.movie);
+        }
+    };
+
+    private int k;
+    private Comparator<Entry> order;
+    private PriorityQueue<Entry> heap; //the kept movies, with the worst one on top
+
+    /**
+     * Constructor for objects of class TopMovies, which keeps the k best (or worst) of the movies it is offered,
+     * one at a time. This is how movies are chosen when they are not all in memory at once (see MovieStream).
+     *
+     * @param k the number of movies wanted
+     * @param best true to keep the most feminist movies, false to keep the least feminist ones
+     */
+    public TopMovies(int k, boolean best)
+    {
+        this.k = k;
+        this.order = best ? BEST_FIRST : BEST_FIRST.reversed();
+        this.heap = new PriorityQueue<Entry>(Math.max(1, k), order.reversed());
+    }
+
+    /**
+     * Method offer keeps the movie if it is one of the k best (or worst) movies offered so far. A new movie only 
+     * goes in if it is better than the worst kept movie, which is on top of the heap.
+     *
+     * @param m the movie
+     */
+    public void offer(Movie m){
+        if (k <= 0){
+            return;
+        }
+        Entry e = new Entry(m, MovieRanking.scoreOf(m));
+        if (heap.size() < k){
+            heap.add(e);
+        }
+        else if (order.compare(e, heap.peek()) < 0){
+            heap.poll();
+            heap.add(e);
+        }
+    }
+
+    /**
+     * getMovies() returns the kept movies, from the best to the worst one in the order they were chosen by
+     *
+     * @return a new LinkedList with at most k movies
+     */
+    public LinkedList<Movie> getMovies(){
+        PriorityQueue<Entry> copy = new PriorityQueue<Entry>(heap);
+        LinkedList<Movie> selected = new LinkedList<Movie>();
+        while (!copy.isEmpty()){
+            selected.addFirst(copy.poll().movie);
+        }
+        return selected;
+    }
+
+    /**
+     * Method top returns the k most feminist movies, from most to least feminist.
+     *
+     * @param movies the movies to choose from
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies
+     */
+    public static LinkedList<Movie> top(Iterable<Movie> movies, int k){
+        return select(movies, new TopMovies(k, true));
+    }
+
+    /**
+     * Method bottom returns the k least feminist movies, from least to most feminist. Movies without a cast are
+     * ranked last, so they come first here.
+     *
+     * @param movies the movies to choose from
+     * @param k the number of movies wanted
+     * @return a LinkedList with at most k movies
+     */
+    public static LinkedList<Movie> bottom(Iterable<Movie> movies, int k){
+        return select(movies, new TopMovies(k, false));
+    }
+
+    private static LinkedList<Movie> select(Iterable<Movie> movies, TopMovies selection){
+        for (Movie m : movies){
+            selection.offer(m);
+        }
+        return selection.getMovies();
+    }
+}